@@ -0,0 +1,310 @@
+package com.github.leifoolsen.simplejaxrs2.cluster;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepositoryListener;
+import com.github.leifoolsen.simplejaxrs2.rest.provider.BookJsonProvider;
+import com.github.leifoolsen.simplejaxrs2.rest.provider.BookListJsonProvider;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.glassfish.jersey.client.ClientProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Partitions the catalog across nodes by ISBN, see HashRing. Each node holds the books it owns.
+ * PartitionRoutingFilter sends single book requests to the owner and scatters list queries to every node.
+ *
+ * A node starts with SELF, the base URI of its own API, and joins the cluster through SEED, any node
+ * already in it. The seed sends the new member list to every node, and each node then hands the books it
+ * no longer owns over to their new owner. Until the hand over is done, a read the owner cannot answer is
+ * tried on the previous owner.
+ *
+ * A node joining through a seed drops its copy of the seed catalog first, the cluster holds the current books.
+ * The new owner only stores a handed over book if it has no book with the ISBN, and has not written or deleted
+ * one since the ring changed, so writes it accepted meanwhile are never overwritten by older copies.
+ *
+ * A book handed over is evicted from the node it left, not removed: that is no change, so it is neither in the
+ * change log nor in the history of that node.
+ *
+ * Requests between nodes carry INTERNAL_HEADER with SECRET, which every node must be started with. Membership
+ * changes, hand overs and requests that bypass routing are only taken from nodes that know it.
+ *
+ * Nodes never leave: there is no failure detection, and a node that is down makes its books unavailable.
+ */
+public class Cluster {
+    public static final String SELF = "simplejaxrs2.cluster.self";
+    public static final String SEED = "simplejaxrs2.cluster.seed";
+    public static final String SECRET = "simplejaxrs2.cluster.secret";
+
+    // Set to the secret on requests between nodes; they are served by the node they are sent to
+    public static final String INTERNAL_HEADER = "X-Cluster-Internal";
+
+    static final String NODES_PATH = "cluster/nodes";
+    public static final String LOCAL_BOOKS_PATH = "cluster/local/books";
+
+    private static final Logger logger = LoggerFactory.getLogger(Cluster.class);
+
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private static final Comparator<Book> byIsbn = new Comparator<Book>() {
+        @Override
+        public int compare(final Book a, final Book b) {
+            return a.getIsbn().compareTo(b.getIsbn());
+        }
+    };
+
+    private static volatile URI self;
+    private static volatile String secret;
+    private static volatile HashRing ring;
+    private static volatile HashRing previousRing;  // while books are handed over
+
+    // ISBNs written or deleted on this node since the ring last changed, handed over copies of them are stale
+    private static final Set<String> writtenSinceChange = Sets.newConcurrentHashSet();
+
+    private Cluster() {}
+
+    /**
+     * Joins the cluster given by the SELF and SEED system properties, if SELF is set.
+     * Call when the server is started, the seed sends the member list back to this node.
+     */
+    public static void start() {
+        final String selfUri = System.getProperty(SELF);
+        if (selfUri == null) {
+            return;
+        }
+        final String clusterSecret = System.getProperty(SECRET);
+        if (Strings.isNullOrEmpty(clusterSecret)) {
+            throw new IllegalStateException(SECRET + " must be set on every node of a cluster");
+        }
+        secret = clusterSecret;
+        self = URI.create(selfUri);
+        ring = HashRing.of(Sets.newHashSet(self));
+
+        BookRepository.addListener(new BookRepositoryListener() {
+            @Override
+            public void bookAdded(final Book book) {
+                writtenSinceChange.add(book.getIsbn());
+            }
+
+            @Override
+            public void bookUpdated(final Book previous, final Book book) {
+                writtenSinceChange.add(book.getIsbn());
+            }
+
+            @Override
+            public void bookRemoved(final Book book) {
+                writtenSinceChange.add(book.getIsbn());
+            }
+        });
+
+        final String seed = System.getProperty(SEED);
+        if (seed != null) {
+            // Stale copies of books the cluster has, nothing to hand over
+            for (Book book : BookRepository.getAllBooks(null, null)) {
+                BookRepository.evictBook(book.getIsbn());
+            }
+
+            final Response response = ClientHolder.client.target(seed).path(NODES_PATH)
+                    .request()
+                    .header(INTERNAL_HEADER, secret)
+                    .post(Entity.text(self.toString()));
+            response.close();
+            if (response.getStatus() != Response.Status.NO_CONTENT.getStatusCode()) {
+                throw new IllegalStateException("Could not join cluster through " + seed + ": " + response.getStatus());
+            }
+        }
+        logger.info("Node {} started, cluster: {}", self, ring.getNodes());
+    }
+
+    public static boolean isClustered() {
+        return ring != null;
+    }
+
+    public static URI getSelf() {
+        return self;
+    }
+
+    /**
+     * The value of INTERNAL_HEADER on requests to other nodes
+     */
+    public static String internalHeader() {
+        return secret;
+    }
+
+    /**
+     * @param internalHeader value of INTERNAL_HEADER on a request, may be null
+     * @return whether the request is from a node of this cluster
+     */
+    public static boolean isMember(final String internalHeader) {
+        final String s = secret;
+        // Compared in constant time, so the secret can not be guessed a character at a time
+        return s != null && internalHeader != null
+                && MessageDigest.isEqual(s.getBytes(Charsets.UTF_8), internalHeader.getBytes(Charsets.UTF_8));
+    }
+
+    public static Set<URI> getNodes() {
+        return ring.getNodes();
+    }
+
+    public static URI owner(final String isbn) {
+        return ring.owner(isbn);
+    }
+
+    /**
+     * @return the node that owned the ISBN before the last membership change, while books are handed over,
+     * otherwise null
+     */
+    public static URI previousOwner(final String isbn) {
+        final HashRing previous = previousRing;
+        return previous != null ? previous.owner(isbn) : null;
+    }
+
+    /**
+     * Adds a node and sends the new member list to every node, this one last.
+     */
+    public static synchronized void join(final URI node) {
+        final Set<URI> nodes = Sets.newHashSet(ring.getNodes());
+        if (!nodes.add(node)) {
+            return;
+        }
+        final String members = Joiner.on('\n').join(nodes);
+        for (URI member : nodes) {
+            if (!member.equals(self)) {
+                final Response response = ClientHolder.client.target(member).path(NODES_PATH)
+                        .request()
+                        .header(INTERNAL_HEADER, secret)
+                        .put(Entity.text(members));
+                response.close();
+                if (response.getStatus() != Response.Status.NO_CONTENT.getStatusCode()) {
+                    logger.warn("Node {} did not accept the member list: {}", member, response.getStatus());
+                }
+            }
+        }
+        setNodes(nodes);
+    }
+
+    public static List<URI> parseNodes(final String members) {
+        final List<URI> nodes = Lists.newArrayList();
+        for (String node : Splitter.on('\n').trimResults().omitEmptyStrings().split(members)) {
+            nodes.add(URI.create(node));
+        }
+        return nodes;
+    }
+
+    public static synchronized void setNodes(final Collection<URI> nodes) {
+        final HashRing next = HashRing.of(nodes);
+        if (next.getNodes().equals(ring.getNodes())) {
+            return;
+        }
+        previousRing = ring;
+        ring = next;
+        writtenSinceChange.clear();
+        logger.info("Cluster changed: {}", next.getNodes());
+
+        final Thread handOver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                handOver(next);
+            }
+        }, "cluster-hand-over");
+        handOver.setDaemon(true);
+        handOver.start();
+    }
+
+    /**
+     * @return up to limit of this node's books, by ISBN, optionally only those of one publisher
+     */
+    public static List<Book> localBooks(final String publisher, final int limit) {
+        // Both lists are by ISBN already
+        final List<Book> books = publisher != null
+                ? BookRepository.getBooksByPublisher(publisher)
+                : BookRepository.getAllBooks(null, null);
+        return books.subList(0, Math.min(limit, books.size()));
+    }
+
+    /**
+     * Stores a book handed over by its previous owner, unless this node has a book with the ISBN or has written
+     * or deleted one since the ring changed
+     * @return whether the book was stored
+     */
+    public static boolean receive(final Book book) {
+        return !writtenSinceChange.contains(book.getIsbn()) && BookRepository.addBook(book);
+    }
+
+    public static Comparator<Book> byIsbn() {
+        return byIsbn;
+    }
+
+    public static Client client() {
+        return ClientHolder.client;
+    }
+
+    /**
+     * For requests to other nodes that run in parallel. Daemon threads, unlike those of Jersey's async client,
+     * so they do not keep the JVM alive
+     */
+    public static ExecutorService executor() {
+        return ClientHolder.executor;
+    }
+
+    private static void handOver(final HashRing to) {
+        int moved = 0;
+        for (Book book : BookRepository.getAllBooks(null, null)) {
+            final URI owner = to.owner(book.getIsbn());
+            if (owner.equals(self)) {
+                continue;
+            }
+            final Response response = ClientHolder.client.target(owner).path(LOCAL_BOOKS_PATH)
+                    .request()
+                    .header(INTERNAL_HEADER, secret)
+                    .put(Entity.entity(book, MediaType.APPLICATION_JSON_TYPE));
+            response.close();
+            if (response.getStatus() == Response.Status.NO_CONTENT.getStatusCode()) {
+                BookRepository.evictBook(book.getIsbn());
+                moved++;
+            }
+            else {
+                logger.warn("Could not hand book {} over to {}: {}", book.getIsbn(), owner, response.getStatus());
+            }
+        }
+        synchronized (Cluster.class) {
+            if (ring == to) {
+                previousRing = null;
+            }
+        }
+        logger.info("Handed {} books over to other nodes", moved);
+    }
+
+    // Built on first use, standalone nodes never need it
+    private static class ClientHolder {
+        static final Client client = ClientBuilder.newClient()
+                .property(ClientProperties.CONNECT_TIMEOUT, TIMEOUT_MILLIS)
+                .property(ClientProperties.READ_TIMEOUT, TIMEOUT_MILLIS)
+                .property(ClientProperties.FOLLOW_REDIRECTS, false)
+                .register(BookJsonProvider.class)
+                .register(BookListJsonProvider.class);
+
+        static final ExecutorService executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("cluster-client-%d").setDaemon(true).build());
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.leifoolsen.simplejaxrs2.cluster;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Set;
+
+/**
+ * Consistent hash ring. Each node is placed on the ring at VIRTUAL_NODES points, and a key belongs to the
+ * node at the first point at or after the hash of the key. Adding a node moves about 1/N of the keys,
+ * all of them to the new node. Immutable; membership changes make a new ring.
+ */
+public class HashRing {
+    static final int VIRTUAL_NODES = 128;
+
+    private static final HashFunction hash = Hashing.murmur3_128();
+
+    private final Set<URI> nodes;
+    private final long[] points;
+    private final URI[] owners;
+
+    private HashRing(final Set<URI> nodes) {
+        this.nodes = nodes;
+        final int n = nodes.size() * VIRTUAL_NODES;
+        final Point[] ring = new Point[n];
+        int i = 0;
+        for (URI node : nodes) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                ring[i++] = new Point(hash(node + "#" + v), node);
+            }
+        }
+        Arrays.sort(ring, new Comparator<Point>() {
+            @Override
+            public int compare(final Point a, final Point b) {
+                return a.hash < b.hash ? -1 : a.hash > b.hash ? 1 : a.node.compareTo(b.node);
+            }
+        });
+        points = new long[n];
+        owners = new URI[n];
+        for (i = 0; i < n; i++) {
+            points[i] = ring[i].hash;
+            owners[i] = ring[i].node;
+        }
+    }
+
+    public static HashRing of(final Collection<URI> nodes) {
+        Preconditions.checkArgument(!nodes.isEmpty(), "A ring needs at least one node");
+        return new HashRing(ImmutableSortedSet.copyOf(Ordering.<URI>natural(), nodes));
+    }
+
+    public Set<URI> getNodes() {
+        return nodes;
+    }
+
+    public URI owner(final String key) {
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i < points.length ? i : 0];
+    }
+
+    private static long hash(final String s) {
+        return hash.hashString(s, Charsets.UTF_8).asLong();
+    }
+
+    private static class Point {
+        final long hash;
+        final URI node;
+
+        Point(final long hash, final URI node) {
+            this.hash = hash;
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.github.leifoolsen.simplejaxrs2.codec;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Hand written JSON codec for Book and lists of books. No reflection and no intermediate tree.
+ * Produces the same bytes as MOXy configured by Jersey: members in field order, null members left out,
+ * dates as local xsd:dateTime, and lists as a plain JSON array.
+ */
+public class BookJson {
+    private static final int FLUSH_THRESHOLD = 8192;
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    // One buffer per thread, reused across requests
+    private static final ThreadLocal<JsonOutput> buffers = new ThreadLocal<JsonOutput>() {
+        @Override
+        protected JsonOutput initialValue() {
+            return new JsonOutput(FLUSH_THRESHOLD * 2);
+        }
+    };
+
+    private BookJson() {}
+
+    public static void write(final Book book, final OutputStream out) throws IOException {
+        final JsonOutput buffer = buffer();
+        writeBook(book, buffer);
+        buffer.writeTo(out);
+        release(buffer);
+    }
+
+    public static void writeList(final Iterable<Book> books, final OutputStream out) throws IOException {
+        final JsonOutput buffer = buffer();
+        boolean first = true;
+        buffer.writeByte('[');
+        for (Book book : books) {
+            if (!first) {
+                buffer.writeByte(',');
+            }
+            first = false;
+            writeBook(book, buffer);
+            if (buffer.size() >= FLUSH_THRESHOLD) {
+                buffer.writeTo(out);
+                buffer.reset();
+            }
+        }
+        buffer.writeByte(']');
+        buffer.writeTo(out);
+        release(buffer);
+    }
+
+    /**
+     * Writes the result of a batch lookup as {"books":[...],"missing":[...]}.
+     * @param books the book found for each ISBN, in the same order, null if not found
+     */
+    public static void writeBatch(final List<String> isbns, final List<Book> books, final OutputStream out)
+            throws IOException {
+
+        final JsonOutput buffer = buffer();
+        buffer.writeByte('{');
+        buffer.writeName("books", true);
+        buffer.writeByte('[');
+        boolean first = true;
+        for (Book book : books) {
+            if (book != null) {
+                if (!first) {
+                    buffer.writeByte(',');
+                }
+                first = false;
+                writeBook(book, buffer);
+                if (buffer.size() >= FLUSH_THRESHOLD) {
+                    buffer.writeTo(out);
+                    buffer.reset();
+                }
+            }
+        }
+        buffer.writeByte(']');
+        buffer.writeName("missing", false);
+        buffer.writeByte('[');
+        first = true;
+        for (int i = 0; i < isbns.size(); i++) {
+            if (books.get(i) == null) {
+                if (!first) {
+                    buffer.writeByte(',');
+                }
+                first = false;
+                buffer.writeString(isbns.get(i));
+            }
+        }
+        buffer.writeByte(']');
+        buffer.writeByte('}');
+        buffer.writeTo(out);
+        release(buffer);
+    }
+
+    public static Book read(final InputStream in) throws IOException {
+        return read(new JsonInput(in));
+    }
+
+    public static Book read(final byte[] bytes, final int offset, final int length) throws IOException {
+        return read(new JsonInput(bytes, offset, length));
+    }
+
+    /**
+     * Reads a JSON array of strings, e.g. ["9788202148683","9781846883668"]
+     */
+    public static List<String> readStrings(final InputStream in, final int max) throws IOException {
+        final JsonInput input = new JsonInput(in);
+        final List<String> strings = Lists.newArrayList();
+        input.beginArray();
+        while (input.hasNext()) {
+            if (strings.size() == max) {
+                throw new JsonParseException("more than " + max + " elements");
+            }
+            strings.add(input.nextText());
+        }
+        input.endArray();
+        if (!input.isAtEnd()) {
+            throw new JsonParseException("unexpected content after list");
+        }
+        return strings;
+    }
+
+    public static List<Book> readList(final InputStream in) throws IOException {
+        final JsonInput input = new JsonInput(in);
+        final List<Book> books = Lists.newArrayList();
+        input.beginArray();
+        while (input.hasNext()) {
+            books.add(readBook(input));
+        }
+        input.endArray();
+        if (!input.isAtEnd()) {
+            throw new JsonParseException("unexpected content after list");
+        }
+        return books;
+    }
+
+    private static Book read(final JsonInput input) throws IOException {
+        final Book book = readBook(input);
+        if (!input.isAtEnd()) {
+            throw new JsonParseException("unexpected content after book");
+        }
+        return book;
+    }
+
+    private static void writeBook(final Book book, final JsonOutput out) {
+        out.writeByte('{');
+        boolean first = writeString("isbn", book.getIsbn(), true, out);
+        first = writeString("title", book.getTitle(), first, out);
+        first = writeString("author", book.getAuthor(), first, out);
+        if (book.getPublished() != null) {
+            out.writeName("published", first);
+            out.writeDate(book.getPublished());
+            first = false;
+        }
+        first = writeString("translator", book.getTranslator(), first, out);
+        writeString("summary", book.getSummary(), first, out);
+        out.writeByte('}');
+    }
+
+    private static boolean writeString(final String name, final String value, final boolean first,
+                                       final JsonOutput out) {
+        if (value == null) {
+            return first;
+        }
+        out.writeName(name, first);
+        out.writeString(value);
+        return false;
+    }
+
+    private static Book readBook(final JsonInput in) throws IOException {
+        String isbn = null;
+        String title = null;
+        String author = null;
+        Date published = null;
+        String translator = null;
+        String summary = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "isbn":
+                    isbn = in.nextText();
+                    break;
+                case "title":
+                    title = in.nextText();
+                    break;
+                case "author":
+                    author = in.nextText();
+                    break;
+                case "published":
+                    published = JsonInput.parseDate(in.nextText());
+                    break;
+                case "translator":
+                    translator = in.nextText();
+                    break;
+                case "summary":
+                    summary = in.nextText();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return Book.with(isbn)
+                .title(title)
+                .author(author)
+                .published(published)
+                .translator(translator)
+                .summary(summary)
+                .build();
+    }
+
+    private static JsonOutput buffer() {
+        final JsonOutput buffer = buffers.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    private static void release(final JsonOutput buffer) {
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffers.remove();  // don't keep a huge buffer for the lifetime of a pool thread
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.leifoolsen.simplejaxrs2.codec;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Hand written Protocol Buffers codec for Book and lists of books, see src/main/proto/book.proto.
+ * No reflection and no generated classes.
+ */
+public class BookProtobuf {
+    public static final String APPLICATION_PROTOBUF = "application/x-protobuf";
+
+    private static final int ISBN = 1;
+    private static final int TITLE = 2;
+    private static final int AUTHOR = 3;
+    private static final int PUBLISHED = 4;
+    private static final int TRANSLATOR = 5;
+    private static final int SUMMARY = 6;
+
+    private static final int BOOKS = 1;
+
+    private static final int FLUSH_THRESHOLD = 8192;
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    // One buffer per thread, reused across requests
+    private static final ThreadLocal<ProtobufOutput> buffers = new ThreadLocal<ProtobufOutput>() {
+        @Override
+        protected ProtobufOutput initialValue() {
+            return new ProtobufOutput(FLUSH_THRESHOLD * 2);
+        }
+    };
+
+    private BookProtobuf() {}
+
+    public static void write(final Book book, final OutputStream out) throws IOException {
+        final ProtobufOutput buffer = buffer();
+        writeFields(book, buffer);
+        buffer.writeTo(out);
+        release(buffer);
+    }
+
+    public static void writeList(final Iterable<Book> books, final OutputStream out) throws IOException {
+        final ProtobufOutput buffer = buffer();
+        for (Book book : books) {
+            buffer.writeTag(BOOKS, ProtobufOutput.WIRETYPE_LENGTH_DELIMITED);
+            buffer.writeVarint(size(book));
+            writeFields(book, buffer);
+            if (buffer.size() >= FLUSH_THRESHOLD) {
+                buffer.writeTo(out);
+                buffer.reset();
+            }
+        }
+        buffer.writeTo(out);
+        release(buffer);
+    }
+
+    public static Book read(final InputStream in) throws IOException {
+        return readFields(new ProtobufInput(in), Long.MAX_VALUE);
+    }
+
+    public static List<Book> readList(final InputStream in) throws IOException {
+        final ProtobufInput input = new ProtobufInput(in);
+        final List<Book> books = Lists.newArrayList();
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == ((BOOKS << 3) | ProtobufOutput.WIRETYPE_LENGTH_DELIMITED)) {
+                final int length = input.readLength();
+                books.add(readFields(input, input.position() + length));
+            }
+            else {
+                input.skipField(tag);
+            }
+        }
+        return books;
+    }
+
+    static int size(final Book book) {
+        int size = ProtobufOutput.stringSize(ISBN, book.getIsbn())
+                + ProtobufOutput.stringSize(TITLE, book.getTitle())
+                + ProtobufOutput.stringSize(AUTHOR, book.getAuthor())
+                + ProtobufOutput.stringSize(TRANSLATOR, book.getTranslator())
+                + ProtobufOutput.stringSize(SUMMARY, book.getSummary());
+        if (book.getPublished() != null) {
+            size += ProtobufOutput.sint64Size(PUBLISHED, book.getPublished().getTime());
+        }
+        return size;
+    }
+
+    private static void writeFields(final Book book, final ProtobufOutput out) {
+        out.writeString(ISBN, book.getIsbn());
+        out.writeString(TITLE, book.getTitle());
+        out.writeString(AUTHOR, book.getAuthor());
+        if (book.getPublished() != null) {
+            out.writeSInt64(PUBLISHED, book.getPublished().getTime());
+        }
+        out.writeString(TRANSLATOR, book.getTranslator());
+        out.writeString(SUMMARY, book.getSummary());
+    }
+
+    private static Book readFields(final ProtobufInput in, final long end) throws IOException {
+        String isbn = null;
+        String title = null;
+        String author = null;
+        Date published = null;
+        String translator = null;
+        String summary = null;
+
+        while (in.position() < end) {
+            final int tag = in.readTag();
+            if (tag == 0) {
+                break;
+            }
+            switch (tag) {
+                case (ISBN << 3) | ProtobufOutput.WIRETYPE_LENGTH_DELIMITED:
+                    isbn = in.readString();
+                    break;
+                case (TITLE << 3) | ProtobufOutput.WIRETYPE_LENGTH_DELIMITED:
+                    title = in.readString();
+                    break;
+                case (AUTHOR << 3) | ProtobufOutput.WIRETYPE_LENGTH_DELIMITED:
+                    author = in.readString();
+                    break;
+                case (PUBLISHED << 3) | ProtobufOutput.WIRETYPE_VARINT:
+                    published = new Date(in.readSInt64());
+                    break;
+                case (TRANSLATOR << 3) | ProtobufOutput.WIRETYPE_LENGTH_DELIMITED:
+                    translator = in.readString();
+                    break;
+                case (SUMMARY << 3) | ProtobufOutput.WIRETYPE_LENGTH_DELIMITED:
+                    summary = in.readString();
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        if (end != Long.MAX_VALUE && in.position() != end) {
+            throw new IOException("Malformed protobuf: message length mismatch");
+        }
+        return Book.with(isbn)
+                .title(title)
+                .author(author)
+                .published(published)
+                .translator(translator)
+                .summary(summary)
+                .build();
+    }
+
+    private static ProtobufOutput buffer() {
+        final ProtobufOutput buffer = buffers.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    private static void release(final ProtobufOutput buffer) {
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffers.remove();  // don't keep a huge buffer for the lifetime of a pool thread
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.github.leifoolsen.simplejaxrs2.codec;
+
+import com.google.common.base.Charsets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Pull parser for UTF-8 encoded JSON, reading from a stream through a fixed size buffer.
+ * Values are consumed as they are parsed; no tree is built.
+ */
+public class JsonInput {
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+    private static final int MAX_DEPTH = 64;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private final StringBuilder chars = new StringBuilder(64);
+
+    // One entry per open object or array, true until the first member or element is read
+    private final boolean[] first = new boolean[MAX_DEPTH];
+    private int depth;
+
+    public JsonInput(final InputStream in) {
+        this(in, 8192);
+    }
+
+    public JsonInput(final InputStream in, final int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Parses a document that is already in memory, without copying it.
+     */
+    public JsonInput(final byte[] bytes, final int offset, final int length) {
+        this.in = null;
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public void beginObject() throws IOException {
+        begin('{');
+    }
+
+    public void endObject() throws IOException {
+        end('}');
+    }
+
+    public void beginArray() throws IOException {
+        begin('[');
+    }
+
+    public void endArray() throws IOException {
+        end(']');
+    }
+
+    /**
+     * @return true if the current object or array has another member or element.
+     * Consumes the separating comma.
+     */
+    public boolean hasNext() throws IOException {
+        final int c = peek();
+        if (c == '}' || c == ']') {
+            return false;
+        }
+        if (first[depth - 1]) {
+            first[depth - 1] = false;
+        }
+        else {
+            expect(',');
+        }
+        return true;
+    }
+
+    public String nextName() throws IOException {
+        if (peek() != '"') {
+            throw malformed("expected member name");
+        }
+        final String name = readString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Reads a scalar value as text. Numbers and booleans are returned as written, null as null.
+     * Objects and arrays are skipped and give null.
+     */
+    public String nextText() throws IOException {
+        final int c = peek();
+        switch (c) {
+            case '"':
+                return readString();
+            case 'n':
+                readLiteral("null");
+                return null;
+            case 't':
+                readLiteral("true");
+                return "true";
+            case 'f':
+                readLiteral("false");
+                return "false";
+            case '{':
+            case '[':
+                skipValue();
+                return null;
+            default:
+                return readNumber();
+        }
+    }
+
+    public void skipValue() throws IOException {
+        final int c = peek();
+        if (c == '{') {
+            beginObject();
+            while (hasNext()) {
+                nextName();
+                skipValue();
+            }
+            endObject();
+        }
+        else if (c == '[') {
+            beginArray();
+            while (hasNext()) {
+                skipValue();
+            }
+            endArray();
+        }
+        else {
+            nextText();
+        }
+    }
+
+    /**
+     * @return true if only whitespace is left
+     */
+    public boolean isAtEnd() throws IOException {
+        return peek() == -1;
+    }
+
+    /**
+     * Parses an xsd:dateTime, e.g. "2015-01-18T11:11:12.5", "2015-01-18T10:11:12Z" or "2015-01-18T11:11:12+01:00".
+     * Without zone designator the time is local to the default time zone, like MOXy does it.
+     * @return the date, or null if the text is not an xsd:dateTime (MOXy silently gives null as well)
+     */
+    public static Date parseDate(final String s) {
+        if (s == null) {
+            return null;
+        }
+        final int n = s.length();
+        int i = s.startsWith("-") ? 1 : 0;
+        final int yearStart = i;
+        while (i < n && isDigit(s.charAt(i))) {
+            i++;
+        }
+        if (i - yearStart < 4 || i - yearStart > 9 || i + 15 > n) {
+            return null;
+        }
+        final int year = Integer.parseInt(s.substring(0, i));
+        final int month = digits(s, i + 1, 2);
+        final int day = digits(s, i + 4, 2);
+        final int hour = digits(s, i + 7, 2);
+        final int minute = digits(s, i + 10, 2);
+        final int second = digits(s, i + 13, 2);
+        if (s.charAt(i) != '-' || s.charAt(i + 3) != '-' || s.charAt(i + 6) != 'T'
+                || s.charAt(i + 9) != ':' || s.charAt(i + 12) != ':'
+                || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        i += 15;
+
+        int millis = 0;
+        if (i < n && s.charAt(i) == '.') {
+            final int fractionStart = ++i;
+            while (i < n && isDigit(s.charAt(i))) {
+                if (i - fractionStart < 3) {
+                    millis = millis * 10 + (s.charAt(i) - '0');
+                }
+                i++;
+            }
+            if (i == fractionStart) {
+                return null;
+            }
+            for (int d = i - fractionStart; d < 3; d++) {
+                millis *= 10;
+            }
+        }
+
+        TimeZone zone = TimeZone.getDefault();
+        int offset = 0;
+        if (i < n) {
+            final char c = s.charAt(i);
+            if (c == 'Z' && i + 1 == n) {
+                zone = UTC;
+            }
+            else if ((c == '+' || c == '-') && i + 6 == n && s.charAt(i + 3) == ':') {
+                final int hours = digits(s, i + 1, 2);
+                final int minutes = digits(s, i + 4, 2);
+                if (hours < 0 || hours > 14 || minutes < 0 || minutes > 59) {
+                    return null;
+                }
+                zone = UTC;
+                offset = (c == '-' ? -1 : 1) * (hours * 60 + minutes) * 60000;
+            }
+            else {
+                return null;
+            }
+        }
+
+        final GregorianCalendar calendar = new GregorianCalendar(zone);
+        calendar.setGregorianChange(new Date(Long.MIN_VALUE));  // proleptic, as MOXy
+        calendar.clear();
+        calendar.set(Calendar.ERA, year > 0 ? GregorianCalendar.AD : GregorianCalendar.BC);
+        calendar.set(year > 0 ? year : 1 - year, month - 1, day, hour, minute, second);
+        calendar.set(Calendar.MILLISECOND, millis);
+        return new Date(calendar.getTimeInMillis() - offset);
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int digits(final String s, final int start, final int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            final char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private void begin(final char c) throws IOException {
+        expect(c);
+        if (depth == MAX_DEPTH) {
+            throw malformed("nesting too deep");
+        }
+        first[depth++] = true;
+    }
+
+    private void end(final char c) throws IOException {
+        expect(c);
+        depth--;
+    }
+
+    private void expect(final char c) throws IOException {
+        if (peek() != c) {
+            throw malformed("expected '" + c + "'");
+        }
+        position++;
+    }
+
+    /**
+     * Skips whitespace and returns the next byte without consuming it, -1 at end of stream.
+     */
+    private int peek() throws IOException {
+        while (true) {
+            if (position == limit && !refill()) {
+                return -1;
+            }
+            final int b = buffer[position] & 0xFF;
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                position++;
+            }
+            else {
+                return b;
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        position++;  // opening quote, seen by peek()
+
+        // Fast path: ASCII without escapes, all in the buffer
+        for (int i = position; i < limit; i++) {
+            final byte b = buffer[i];
+            if (b == '"') {
+                final String s = new String(buffer, position, i - position, Charsets.ISO_8859_1);
+                position = i + 1;
+                return s;
+            }
+            if (b == '\\' || b < 0x20) {
+                break;
+            }
+        }
+
+        chars.setLength(0);
+        while (true) {
+            final int b = readByte();
+            if (b == '"') {
+                return chars.toString();
+            }
+            if (chars.length() == MAX_STRING_LENGTH) {
+                throw malformed("string too long");
+            }
+            if (b == '\\') {
+                readEscape();
+            }
+            else if (b < 0x20) {
+                throw malformed("unescaped control character in string");
+            }
+            else if (b < 0x80) {
+                chars.append((char) b);
+            }
+            else {
+                readUtf8(b);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        final int b = readByte();
+        switch (b) {
+            case '"': chars.append('"'); break;
+            case '\\': chars.append('\\'); break;
+            case '/': chars.append('/'); break;
+            case 'b': chars.append('\b'); break;
+            case 'f': chars.append('\f'); break;
+            case 'n': chars.append('\n'); break;
+            case 'r': chars.append('\r'); break;
+            case 't': chars.append('\t'); break;
+            case 'u':
+                int c = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int h = Character.digit(readByte(), 16);
+                    if (h < 0) {
+                        throw malformed("invalid \\u escape");
+                    }
+                    c = (c << 4) | h;
+                }
+                chars.append((char) c);
+                break;
+            default:
+                throw malformed("invalid escape");
+        }
+    }
+
+    private void readUtf8(final int b) throws IOException {
+        final int count;
+        int cp;
+        if ((b & 0xE0) == 0xC0) {
+            count = 1;
+            cp = b & 0x1F;
+        }
+        else if ((b & 0xF0) == 0xE0) {
+            count = 2;
+            cp = b & 0x0F;
+        }
+        else if ((b & 0xF8) == 0xF0) {
+            count = 3;
+            cp = b & 0x07;
+        }
+        else {
+            chars.append('\uFFFD');
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            final int next = readByte();
+            if ((next & 0xC0) != 0x80) {
+                throw malformed("invalid UTF-8");
+            }
+            cp = (cp << 6) | (next & 0x3F);
+        }
+        if (Character.isValidCodePoint(cp)) {
+            chars.appendCodePoint(cp);
+        }
+        else {
+            chars.append('\uFFFD');
+        }
+    }
+
+    private String readNumber() throws IOException {
+        chars.setLength(0);
+        int c = peek();
+        while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+            chars.append((char) c);
+            position++;
+            if (position == limit && !refill()) {
+                break;
+            }
+            c = buffer[position] & 0xFF;
+        }
+        if (chars.length() == 0) {
+            throw malformed(c == -1 ? "unexpected end of input" : "unexpected character '" + (char) c + "'");
+        }
+        return chars.toString();
+    }
+
+    private void readLiteral(final String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (readByte() != literal.charAt(i)) {
+                throw malformed("expected " + literal);
+            }
+        }
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit && !refill()) {
+            throw malformed("unexpected end of input");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean refill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        position = 0;
+        limit = 0;
+        final int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private static JsonParseException malformed(final String message) {
+        return new JsonParseException(message);
+    }
+}
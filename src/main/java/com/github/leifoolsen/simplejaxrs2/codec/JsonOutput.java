@@ -0,0 +1,211 @@
+package com.github.leifoolsen.simplejaxrs2.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Writes JSON as UTF-8 into a growable byte array.
+ * Strings are escaped and dates are formatted exactly the way MOXy does it, so the output can replace MOXy's.
+ */
+public class JsonOutput {
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private byte[] buffer;
+    private int position;
+
+    public JsonOutput() {
+        this(1024);
+    }
+
+    public JsonOutput(final int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    public void writeByte(final char c) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) c;
+    }
+
+    /**
+     * Writes a name that needs no escaping, followed by a colon. A comma is written first unless first is true.
+     */
+    public void writeName(final String name, final boolean first) {
+        final int n = name.length();
+        ensureCapacity(n + 4);
+        if (!first) {
+            buffer[position++] = ',';
+        }
+        buffer[position++] = '"';
+        for (int i = 0; i < n; i++) {
+            buffer[position++] = (byte) name.charAt(i);
+        }
+        buffer[position++] = '"';
+        buffer[position++] = ':';
+    }
+
+    public void writeLong(final long value) {
+        writeAscii(Long.toString(value));
+    }
+
+    public void writeBoolean(final boolean value) {
+        writeAscii(value ? "true" : "false");
+    }
+
+    /**
+     * Writes a quoted string. Like MOXy: quote and backslash are escaped, \b \t \n \f \r use the short form,
+     * other ISO control characters and all surrogates are written as \\uXXXX, everything else as UTF-8.
+     */
+    public void writeString(final String value) {
+        final int n = value.length();
+        ensureCapacity(n * 3 + 2);
+        buffer[position++] = '"';
+        for (int i = 0; i < n; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x7F) {
+                if (c == '"' || c == '\\') {
+                    ensureCapacity(2 + 3 * (n - i));
+                    buffer[position++] = '\\';
+                }
+                buffer[position++] = (byte) c;
+            }
+            else if (c <= 0x9F || Character.isSurrogate(c)) {
+                ensureCapacity(6 + 3 * (n - i));
+                writeEscaped(c);
+            }
+            else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >>> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else {
+                buffer[position++] = (byte) (0xE0 | (c >>> 12));
+                buffer[position++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buffer[position++] = '"';
+    }
+
+    /**
+     * Writes a quoted xsd:dateTime in the default time zone, without zone designator, e.g. "2015-01-18T11:11:12.5".
+     * Fractional seconds are left out when zero and trailing zeros are removed.
+     * Proleptic Gregorian calendar, as MOXy uses. Years before 1 AD are written as ISO 8601 astronomical years.
+     */
+    public void writeDate(final Date date) {
+        final long time = date.getTime();
+        final long local = time + TimeZone.getDefault().getOffset(time);
+        final long days = floorDiv(local, MILLIS_PER_DAY);
+        int millisOfDay = (int) (local - days * MILLIS_PER_DAY);
+
+        // Civil from days, see: http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        final long z = days + 719468;
+        final long era = floorDiv(z, 146097);
+        final long doe = z - era * 146097;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doy + 2) / 153;
+        final int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        ensureCapacity(32);
+        buffer[position++] = '"';
+        if (year < 0) {
+            buffer[position++] = '-';
+        }
+        final long absYear = Math.abs(year);
+        if (absYear >= 10000) {
+            writeAscii(Long.toString(absYear));
+        }
+        else {
+            writeDigits((int) absYear, 4);
+        }
+        buffer[position++] = '-';
+        writeDigits(month, 2);
+        buffer[position++] = '-';
+        writeDigits(day, 2);
+        buffer[position++] = 'T';
+        writeDigits(millisOfDay / 3600000, 2);
+        buffer[position++] = ':';
+        writeDigits(millisOfDay / 60000 % 60, 2);
+        buffer[position++] = ':';
+        writeDigits(millisOfDay / 1000 % 60, 2);
+        int millis = millisOfDay % 1000;
+        if (millis != 0) {
+            buffer[position++] = '.';
+            int digits = 3;
+            while (millis % 10 == 0) {
+                millis /= 10;
+                digits--;
+            }
+            writeDigits(millis, digits);
+        }
+        buffer[position++] = '"';
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public void reset() {
+        position = 0;
+    }
+
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, 0, position);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void writeAscii(final String s) {
+        ensureCapacity(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buffer[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeEscaped(final char c) {
+        buffer[position++] = '\\';
+        switch (c) {
+            case '\b': buffer[position++] = 'b'; break;
+            case '\t': buffer[position++] = 't'; break;
+            case '\n': buffer[position++] = 'n'; break;
+            case '\f': buffer[position++] = 'f'; break;
+            case '\r': buffer[position++] = 'r'; break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = HEX[(c >>> 12) & 0xF];
+                buffer[position++] = HEX[(c >>> 8) & 0xF];
+                buffer[position++] = HEX[(c >>> 4) & 0xF];
+                buffer[position++] = HEX[c & 0xF];
+        }
+    }
+
+    private static long floorDiv(final long x, final long y) {
+        final long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private void writeDigits(int value, final int digits) {
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    private void ensureCapacity(final int needed) {
+        if (position + needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + needed));
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.github.leifoolsen.simplejaxrs2.codec;
+
+import java.io.IOException;
+
+/**
+ * The input is not well formed JSON, as opposed to an I/O error while reading it.
+ */
+public class JsonParseException extends IOException {
+    public JsonParseException(final String message) {
+        super("Malformed JSON: " + message);
+    }
+}
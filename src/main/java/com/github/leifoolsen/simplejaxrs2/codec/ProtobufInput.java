@@ -0,0 +1,152 @@
+package com.github.leifoolsen.simplejaxrs2.codec;
+
+import com.google.common.base.Charsets;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the Protocol Buffers wire format from a stream through a fixed size buffer.
+ */
+public class ProtobufInput {
+    private static final int MAX_FIELD_LENGTH = 16 * 1024 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private long consumed;  // bytes read before the start of the buffer
+
+    public ProtobufInput(final InputStream in) {
+        this(in, 8192);
+    }
+
+    public ProtobufInput(final InputStream in, final int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Position in the stream, used to find the end of a length delimited message.
+     */
+    public long position() {
+        return consumed + position;
+    }
+
+    public boolean isAtEnd() throws IOException {
+        return position == limit && !refill();
+    }
+
+    /**
+     * @return the next tag, or 0 at end of stream
+     */
+    public int readTag() throws IOException {
+        if (isAtEnd()) {
+            return 0;
+        }
+        final int tag = (int) readVarint();
+        if (tag >>> 3 == 0) {
+            throw new IOException("Malformed protobuf: invalid tag");
+        }
+        return tag;
+    }
+
+    public long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed protobuf: varint too long");
+    }
+
+    public long readSInt64() throws IOException {
+        final long n = readVarint();
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    public int readLength() throws IOException {
+        final long length = readVarint();
+        if (length < 0 || length > MAX_FIELD_LENGTH) {
+            throw new IOException("Malformed protobuf: invalid length " + length);
+        }
+        return (int) length;
+    }
+
+    public String readString() throws IOException {
+        final int length = readLength();
+        if (limit - position >= length) {
+            final String s = new String(buffer, position, length, Charsets.UTF_8);
+            position += length;
+            return s;
+        }
+        final byte[] bytes = new byte[length];
+        readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    public void skipField(final int tag) throws IOException {
+        switch (tag & 7) {
+            case ProtobufOutput.WIRETYPE_VARINT:
+                readVarint();
+                break;
+            case ProtobufOutput.WIRETYPE_FIXED64:
+                skip(8);
+                break;
+            case ProtobufOutput.WIRETYPE_LENGTH_DELIMITED:
+                skip(readLength());
+                break;
+            case ProtobufOutput.WIRETYPE_FIXED32:
+                skip(4);
+                break;
+            default:
+                throw new IOException("Malformed protobuf: unsupported wire type " + (tag & 7));
+        }
+    }
+
+    private byte readByte() throws IOException {
+        if (position == limit && !refill()) {
+            throw new IOException("Malformed protobuf: truncated message");
+        }
+        return buffer[position++];
+    }
+
+    private void readFully(final byte[] bytes) throws IOException {
+        int n = 0;
+        while (n < bytes.length) {
+            if (position == limit && !refill()) {
+                throw new IOException("Malformed protobuf: truncated message");
+            }
+            final int chunk = Math.min(limit - position, bytes.length - n);
+            System.arraycopy(buffer, position, bytes, n, chunk);
+            position += chunk;
+            n += chunk;
+        }
+    }
+
+    private void skip(int length) throws IOException {
+        while (length > 0) {
+            if (position == limit && !refill()) {
+                throw new IOException("Malformed protobuf: truncated message");
+            }
+            final int chunk = Math.min(limit - position, length);
+            position += chunk;
+            length -= chunk;
+        }
+    }
+
+    private boolean refill() throws IOException {
+        consumed += limit;
+        position = 0;
+        limit = 0;
+        final int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.leifoolsen.simplejaxrs2.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes the Protocol Buffers wire format into a growable byte array.
+ * Strings are UTF-8 encoded straight into the array, no intermediate byte[] per field.
+ * See: https://developers.google.com/protocol-buffers/docs/encoding
+ */
+public class ProtobufOutput {
+    public static final int WIRETYPE_VARINT = 0;
+    public static final int WIRETYPE_FIXED64 = 1;
+    public static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    public static final int WIRETYPE_FIXED32 = 5;
+
+    private byte[] buffer;
+    private int position;
+
+    public ProtobufOutput() {
+        this(1024);
+    }
+
+    public ProtobufOutput(final int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    public void writeTag(final int field, final int wireType) {
+        writeVarint((field << 3) | wireType);
+    }
+
+    public void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeSInt64(final int field, final long value) {
+        writeTag(field, WIRETYPE_VARINT);
+        writeVarint((value << 1) ^ (value >> 63));  // ZigZag
+    }
+
+    public void writeString(final int field, final String value) {
+        if (value != null) {
+            writeTag(field, WIRETYPE_LENGTH_DELIMITED);
+            final int length = utf8Length(value);
+            writeVarint(length);
+            ensureCapacity(length);
+            position = encodeUtf8(value, buffer, position);
+        }
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public void reset() {
+        position = 0;
+    }
+
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, 0, position);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    public static int tagSize(final int field) {
+        return varintSize(field << 3);
+    }
+
+    public static int stringSize(final int field, final String value) {
+        if (value == null) {
+            return 0;
+        }
+        final int length = utf8Length(value);
+        return tagSize(field) + varintSize(length) + length;
+    }
+
+    public static int sint64Size(final int field, final long value) {
+        return tagSize(field) + varintSize((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Number of bytes needed to UTF-8 encode a string. Unpaired surrogates are encoded as '?'.
+     */
+    public static int utf8Length(final CharSequence s) {
+        int length = 0;
+        final int n = s.length();
+        for (int i = 0; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else if (Character.isSurrogate(c)) {
+                length += 1;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * UTF-8 encodes a string into the given array, which must have room for it.
+     * @return the position after the encoded string
+     */
+    public static int encodeUtf8(final CharSequence s, final byte[] out, int pos) {
+        final int n = s.length();
+        for (int i = 0; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                out[pos++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >>> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, s.charAt(++i));
+                out[pos++] = (byte) (0xF0 | (cp >>> 18));
+                out[pos++] = (byte) (0x80 | ((cp >>> 12) & 0x3F));
+                out[pos++] = (byte) (0x80 | ((cp >>> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                out[pos++] = (byte) '?';
+            }
+            else {
+                out[pos++] = (byte) (0xE0 | (c >>> 12));
+                out[pos++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    private void ensureCapacity(final int needed) {
+        if (position + needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + needed));
+        }
+    }
+}
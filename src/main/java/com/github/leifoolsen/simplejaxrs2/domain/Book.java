@@ -1,6 +1,10 @@
 package com.github.leifoolsen.simplejaxrs2.domain;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
@@ -11,14 +15,39 @@ import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+/**
+ * A book. Immutable once built, and kept compact since the repository holds every book in memory:
+ * the published date is epoch milliseconds rather than a Date, authors and translators are shared between books,
+ * and the summary is UTF-8, deflated when COMPRESS_SUMMARIES is set.
+ *
+ * JAXB (MOXy) maps the getters and sets the private setters when it unmarshals a book.
+ */
 @XmlRootElement
-@XmlAccessorType(XmlAccessType.FIELD)
+@XmlAccessorType(XmlAccessType.NONE)
+@XmlType(propOrder = { "isbn", "title", "author", "published", "translator", "summary" })
 public class Book {
+    public static final String COMPRESS_SUMMARIES = "simplejaxrs2.book.compress-summaries";
+
+    private static final boolean compressSummaries = Boolean.getBoolean(COMPRESS_SUMMARIES);
+    private static final int MIN_COMPRESSED_SUMMARY = 128;  // shorter text hardly deflates
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    // Author and translator names repeat across the catalog, keep one copy of each
+    private static final Interner<String> names = Interners.newWeakInterner();
+
     @NotNull
     @Pattern(regexp = "[0-9]+", message = "The ISBN must be a numeric value")
     @Size(min=13, max=13, message = "ISBN must be a numeric with excact 13 digits")
@@ -30,19 +59,20 @@ public class Book {
     @NotNull
     private String author;
 
-    private Date published;
+    private long published = NO_DATE;  // milliseconds since 1970-01-01T00:00:00Z, as Date.getTime()
     private String translator;
-    private String summary;
+    private byte[] summary;
+    private boolean summaryDeflated;
 
     private Book() {}
     
     private Book(Builder builder) {
         this.isbn = builder.isbn;
         this.title = builder.title;
-        this.author = builder.author;
-        this.published = builder.published;
-        this.translator = builder.translator;
-        this.summary = builder.summary;
+        setAuthor(builder.author);
+        setPublished(builder.published);
+        setTranslator(builder.translator);
+        setSummary(builder.summary);
     }
 
     public static Builder with(final String isbn) { return new Builder(isbn); }
@@ -51,16 +81,58 @@ public class Book {
         return new Builder(source.isbn)
             .title(source.title)
             .author(source.author)
-            .published(source.published)
-            .summary(source.summary);
+            .published(source.getPublished())
+            .translator(source.translator)
+            .summary(source.getSummary());
     }
 
+    @XmlElement
     public String getIsbn() { return isbn; }
+
+    @XmlElement
     public String getTitle() { return title; }
+
+    @XmlElement
     public String getAuthor() { return author; }
-    public Date getPublished() { return published; }
+
+    @XmlElement
+    public Date getPublished() { return published != NO_DATE ? new Date(published) : null; }
+
+    @XmlElement
     public String getTranslator() { return translator; }
-    public String getSummary() { return summary; }
+
+    @XmlElement
+    public String getSummary() {
+        if (summary == null) {
+            return null;
+        }
+        return new String(summaryDeflated ? inflate(summary) : summary, Charsets.UTF_8);
+    }
+
+    private void setIsbn(final String isbn) { this.isbn = isbn; }
+
+    private void setTitle(final String title) { this.title = title; }
+
+    private void setAuthor(final String author) { this.author = author != null ? names.intern(author) : null; }
+
+    private void setPublished(final Date published) {
+        this.published = published != null ? published.getTime() : NO_DATE;
+    }
+
+    private void setTranslator(final String translator) {
+        this.translator = translator != null ? names.intern(translator) : null;
+    }
+
+    private void setSummary(final String summary) {
+        if (summary == null) {
+            this.summary = null;
+            return;
+        }
+        final byte[] bytes = summary.getBytes(Charsets.UTF_8);
+        final byte[] deflated = compressSummaries && bytes.length >= MIN_COMPRESSED_SUMMARY ? deflate(bytes) : null;
+        summaryDeflated = deflated != null && deflated.length < bytes.length;
+        this.summary = summaryDeflated ? deflated : bytes;
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -78,14 +150,25 @@ public class Book {
         return isbn.hashCode();
     }
 
+    /**
+     * @return whether every field is equal, equals only compares the ISBN
+     */
+    public boolean hasSameContent(final Book other) {
+        return Objects.equal(isbn, other.isbn)
+                && Objects.equal(title, other.title)
+                && Objects.equal(author, other.author)
+                && published == other.published
+                && Objects.equal(translator, other.translator)
+                && Objects.equal(getSummary(), other.getSummary());
+    }
+
     public static void validate(final Book book) {
 
         if(book == null) {
             throw new ConstraintViolationException("Book may not be null", new HashSet<ConstraintViolation<?>>());
         }
 
-        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
-        Set<ConstraintViolation<Book>> constraintViolations = validator.validate(book);
+        Set<ConstraintViolation<Book>> constraintViolations = ValidatorHolder.validator.validate(book);
         if(!constraintViolations.isEmpty()) {
             throw new ConstraintViolationException("Validation failed",
                     new HashSet<ConstraintViolation<?>>(constraintViolations));
@@ -93,6 +176,48 @@ public class Book {
 
     }
 
+    private static byte[] deflate(final byte[] bytes) {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final byte[] buffer = new byte[bytes.length];
+            final int length = deflater.deflate(buffer);
+            return deflater.finished() ? Arrays.copyOf(buffer, length) : null;  // null if it did not shrink
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(final byte[] bytes) {
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(bytes);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 3);
+            final byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                final int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated summary");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt summary", e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    // Validators are thread safe and expensive to build, so build one on first use
+    private static class ValidatorHolder {
+        static final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
     public static class Builder {
         private String isbn;
         private String title;
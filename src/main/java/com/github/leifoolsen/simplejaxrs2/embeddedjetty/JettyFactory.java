@@ -1,12 +1,23 @@
 package com.github.leifoolsen.simplejaxrs2.embeddedjetty;
 
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Lifecycle;
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Readiness;
+import com.github.leifoolsen.simplejaxrs2.lifecycle.ReadinessCheck;
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
 import org.eclipse.jetty.annotations.AnnotationConfiguration;
 import org.eclipse.jetty.plus.webapp.EnvConfiguration;
 import org.eclipse.jetty.plus.webapp.PlusConfiguration;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.ConnectorStatistics;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.NetworkConnector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.webapp.Configuration;
 import org.eclipse.jetty.webapp.FragmentConfiguration;
@@ -18,12 +29,32 @@ import org.eclipse.jetty.webapp.WebXmlConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public class JettyFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(JettyFactory.class);
 
+    public static final String STOP_TIMEOUT_MS = "simplejaxrs2.shutdown.timeout-ms";
+    public static final String DRAIN_DELAY_MS = "simplejaxrs2.shutdown.drain-delay-ms";
+    public static final String READY_MAX_BUSY_PERCENT = "simplejaxrs2.health.max-busy-percent";
+    public static final String READY_MAX_QUEUE = "simplejaxrs2.health.max-queue";
+    public static final String WARM_UP_ROUNDS = "simplejaxrs2.warmup.rounds";
+
+    private static final long DRAIN_POLL_MILLIS = 50;
+
+    // Since we don't package the project as a war, we use our src/main/webapp directory
+    // as the resource base directory for the server (will serve static content from the webapp directory)
+    private static final String WAR_DIR = "src/main/webapp/";
+
     private String extraClasspath = null;
     private int port = 8080;
+    private long stopTimeout = Long.getLong(STOP_TIMEOUT_MS, 30000);
+    private long drainDelay = Long.getLong(DRAIN_DELAY_MS, 0);
+    private String staticContent = WAR_DIR;
+    private int warmUpRounds = Integer.getInteger(WARM_UP_ROUNDS, 0);
 
     public JettyFactory extraClasspath(final String extraClasspath) {
         this.extraClasspath = blankToNull(extraClasspath);
@@ -35,6 +66,39 @@ public class JettyFactory {
         return this;
     }
 
+    /**
+     * How long stop waits for requests in flight to complete
+     */
+    public JettyFactory stopTimeout(final long millis) {
+        this.stopTimeout = millis;
+        return this;
+    }
+
+    /**
+     * How long stop keeps taking requests after it reports the node draining and not ready, so load balancers
+     * have time to stop sending it new ones
+     */
+    public JettyFactory drainDelay(final long millis) {
+        this.drainDelay = millis;
+        return this;
+    }
+
+    /**
+     * Directory served by the StaticContentHandler, the web app's resource base by default
+     */
+    public JettyFactory staticContent(final String dir) {
+        this.staticContent = dir;
+        return this;
+    }
+
+    /**
+     * Rounds of requests start replays before the server takes traffic, see WarmUp. 0 starts the server cold
+     */
+    public JettyFactory warmUp(final int rounds) {
+        this.warmUpRounds = rounds;
+        return this;
+    }
+
     public Server build() throws Exception {
         // Setup Threadpool
         QueuedThreadPool threadPool = new QueuedThreadPool();
@@ -57,6 +121,20 @@ public class JettyFactory {
         // Set the connector
         server.addConnector(http);
 
+        // In memory connector for the warm-up, which start runs before the HTTP connector is opened
+        if (warmUpRounds > 0) {
+            LocalConnector local = new LocalConnector(server);
+            server.addConnector(local);
+            server.addBean(new WarmUp(local, warmUpRounds));
+        }
+
+        // Thread pool and connector statistics, exposed together with the request metrics
+        registerMetrics(threadPool, http);
+
+        // Not ready when the thread pool is saturated, so load balancers send requests elsewhere
+        Readiness.register(readinessCheckName(port), threadPoolCheck(threadPool,
+                Integer.getInteger(READY_MAX_BUSY_PERCENT, 90), Integer.getInteger(READY_MAX_QUEUE, 100)));
+
 
 
         // The WebAppContext is the entity that controls the environment in
@@ -68,9 +146,7 @@ public class JettyFactory {
         // PlusConfiguration) to choosing where the webapp will unpack itself.
         WebAppContext webapp = new WebAppContext();
 
-        // Since we don't package the project as a war, we use our src/main/webapp directory
-        // as the resource base directory for the server (will serve static content from the webapp directory)
-        final String wardir = "src/main/webapp/";
+        final String wardir = WAR_DIR;
 
         webapp.setResourceBase(wardir);
         webapp.setDescriptor(wardir + "WEB-INF/web.xml");
@@ -109,28 +185,134 @@ public class JettyFactory {
 
         // A WebAppContext is a ContextHandler as well so it needs to be set to
         // the server so it is aware of where to send the appropriate requests.
-        server.setHandler(webapp);
+        // The StatisticsHandler counts requests in flight, so stop can wait for them to complete
+        // The StaticContentHandler serves assets before they reach the web app, and they are not traced
+        // The TracingHandler starts the trace of sampled requests, see Tracer
+        TracingHandler tracing = new TracingHandler();
+        tracing.setHandler(webapp);
+        StaticContentHandler staticContentHandler = new StaticContentHandler(new File(staticContent),
+                Integer.getInteger(StaticContentHandler.MAX_CACHED_FILE, 64 * 1024),
+                Long.getLong(StaticContentHandler.MAX_CACHE, 32L * 1024 * 1024),
+                Integer.getInteger(StaticContentHandler.MAX_LARGE_FILES, 1000));
+        staticContentHandler.setHandler(tracing);
+        StatisticsHandler statistics = new StatisticsHandler();
+        statistics.setHandler(staticContentHandler);
+        server.setHandler(statistics);
+        server.setStopTimeout(stopTimeout);
+        server.setAttribute(DRAIN_DELAY_MS, drainDelay);
 
         return server;
     }
 
+    private static void registerMetrics(final QueuedThreadPool threadPool, final ServerConnector connector) {
+        final ConnectorStatistics stats = new ConnectorStatistics();
+        connector.addBean(stats);
+
+        final String labels = MetricsRegistry.labels("port", Integer.toString(connector.getPort()));
+
+        MetricsRegistry.gauge("jetty_threads", "Threads in the Jetty thread pool.", labels, new Gauge() {
+            @Override
+            public double value() { return threadPool.getThreads(); }
+        });
+        MetricsRegistry.gauge("jetty_threads_idle", "Idle threads in the Jetty thread pool.", labels, new Gauge() {
+            @Override
+            public double value() { return threadPool.getIdleThreads(); }
+        });
+        MetricsRegistry.gauge("jetty_threads_max", "Maximum threads in the Jetty thread pool.", labels, new Gauge() {
+            @Override
+            public double value() { return threadPool.getMaxThreads(); }
+        });
+        MetricsRegistry.gauge("jetty_queue_size", "Jobs waiting for a thread.", labels, new Gauge() {
+            @Override
+            public double value() { return threadPool.getQueueSize(); }
+        });
+        MetricsRegistry.gauge("jetty_connections_open", "Open connections.", labels, new Gauge() {
+            @Override
+            public double value() { return stats.getConnectionsOpen(); }
+        });
+        MetricsRegistry.gauge("jetty_connections", "Connections since the connector started.", labels, new Gauge() {
+            @Override
+            public double value() { return stats.getConnections(); }
+        });
+        MetricsRegistry.gauge("jetty_messages_in", "Requests received since the connector started.", labels, new Gauge() {
+            @Override
+            public double value() { return stats.getMessagesIn(); }
+        });
+        MetricsRegistry.gauge("jetty_messages_out", "Responses sent since the connector started.", labels, new Gauge() {
+            @Override
+            public double value() { return stats.getMessagesOut(); }
+        });
+    }
+
+    private static String readinessCheckName(final int port) {
+        return "jetty-threads-" + port;
+    }
+
+    private static ReadinessCheck threadPoolCheck(final QueuedThreadPool threadPool, final int maxBusyPercent,
+                                                  final int maxQueue) {
+        return new ReadinessCheck() {
+            @Override
+            public String notReady() {
+                final int busy = threadPool.getThreads() - threadPool.getIdleThreads();
+                final int queued = threadPool.getQueueSize();
+                if (threadPool.isLowOnThreads()) {
+                    return "thread pool exhausted, " + queued + " jobs queued";
+                }
+                if (busy * 100L >= (long) threadPool.getMaxThreads() * maxBusyPercent) {
+                    return busy + " of " + threadPool.getMaxThreads() + " threads busy";
+                }
+                if (queued > maxQueue) {
+                    return queued + " jobs waiting for a thread";
+                }
+                return null;
+            }
+        };
+    }
+
     private static String blankToNull(final String value) {
         String s = MoreObjects.firstNonNull(value, "").trim();
         return s.length() > 0 ? s : null;
     }
 
     /**
-     * Start embedded Jetty server.
+     * Start embedded Jetty server. If it was built to warm up, the network connectors are opened when it is warm.
      * @throws Exception
      */
     public static void start(final Server server) throws Exception {
 
         logger.debug("Starting Jetty ...");
 
-        server.start();
+        final WarmUp warmUp = server.getBean(WarmUp.class);
+        if (warmUp == null) {
+            Lifecycle.started();
+            server.start();
+        }
+        else {
+            final List<Connector> network = Lists.newArrayList();
+            for (Connector connector : server.getConnectors()) {
+                if (connector instanceof NetworkConnector) {
+                    network.add(connector);
+                    server.removeConnector(connector);
+                }
+            }
+            Lifecycle.warmingUp();
+            try {
+                server.start();
+                warmUp.run();
+            }
+            finally {
+                for (Connector connector : network) {
+                    server.addConnector(connector);
+                    if (!connector.isStarted()) {
+                        connector.start();
+                    }
+                }
+                Lifecycle.started();
+            }
+        }
         //server.dump(System.err);
 
-        logger.info("Jetty started at: " + server.getURI());
+        logger.info("Jetty started at: {}", server.getURI());
     }
 
     /**
@@ -151,13 +333,60 @@ public class JettyFactory {
     }
 
     /**
-     * Stops embedded Jetty server.
+     * Stops embedded Jetty server gracefully:
+     * <ol>
+     *     <li>tells the application it is draining, see Lifecycle</li>
+     *     <li>waits the drain delay, while readiness reports the node not ready</li>
+     *     <li>stops accepting connections</li>
+     *     <li>waits up to the stop timeout for requests in flight</li>
+     *     <li>stops the server, cutting off requests still in flight</li>
+     *     <li>tells the application it is stopped, so it can flush what it buffers</li>
+     * </ol>
      * @throws Exception
      */
     public static void stop(final Server server) throws Exception {
-        logger.info("Stopping Jetty at: " + server.getURI() + " ...");
-        server.stop();
-        logger.debug("Jetty stopped!");
+        final long start = System.nanoTime();
+        final StatisticsHandler statistics = server.getChildHandlerByClass(StatisticsHandler.class);
+        final int inFlight = statistics != null ? statistics.getRequestsActive() : 0;
+        logger.info("Stopping Jetty at: {}, {} requests in flight ...", server.getURI(), inFlight);
+
+        Lifecycle.draining();
+        final Long drainDelay = (Long) server.getAttribute(DRAIN_DELAY_MS);
+        if (drainDelay != null && drainDelay > 0) {
+            Thread.sleep(drainDelay);
+        }
+        for (Connector connector : server.getConnectors()) {
+            if (connector instanceof NetworkConnector) {
+                ((NetworkConnector) connector).close();
+            }
+        }
+
+        // StatisticsHandler.shutdown() in Jetty 9.2 does not wait for async requests, so poll the count instead
+        int cutOff = 0;
+        if (statistics != null) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(server.getStopTimeout());
+            while (statistics.getRequestsActive() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            }
+            cutOff = statistics.getRequestsActive();
+        }
+        final long stopTimeout = server.getStopTimeout();
+        server.setStopTimeout(0);  // drained above, don't wait again
+        try {
+            server.stop();
+        }
+        finally {
+            server.setStopTimeout(stopTimeout);
+        }
+        Lifecycle.stopped();
+        for (Connector connector : server.getConnectors()) {
+            if (connector instanceof NetworkConnector) {
+                Readiness.unregister(readinessCheckName(((NetworkConnector) connector).getPort()));
+            }
+        }
+
+        logger.info("Jetty stopped in {} ms: {} requests drained, {} cut off",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), inFlight - cutOff, cutOff);
     }
 
 }
@@ -0,0 +1,405 @@
+package com.github.leifoolsen.simplejaxrs2.embeddedjetty;
+
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.URIUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Serves static assets from a directory ahead of the web app, so asset requests never reach Jersey.
+ * <ul>
+ *     <li>Files up to maxCachedFile bytes are read once into direct buffers and kept, up to maxCache bytes in all.
+ *     Larger files are memory mapped if their name carries a content hash, app.3f2a9c1b.js say, and so is never
+ *     written again: a mapped file changed or truncated in place crashes the JVM with SIGBUS when read.
+ *     Other large files are sent from disk on each request. Large files are kept up to maxLargeFiles of them.
+ *     Jetty writes the buffers without copying them to the heap.</li>
+ *     <li>A file.gz next to a file is sent instead, with Content-Encoding gzip, to clients that accept it
+ *     with a q-value above 0.</li>
+ *     <li>The ETag is a hash of the content. A versioned URL, see versionedPath, may be cached for a year;
+ *     other responses must be revalidated, which answers 304 while the content is unchanged.</li>
+ *     <li>Responses are written asynchronously, so a slow client does not hold a thread.</li>
+ * </ul>
+ * A cached file is checked for changes at most once a second. Paths under /api, WEB-INF and META-INF,
+ * directories and missing files are passed on to the wrapped handler. Range requests are not supported.
+ */
+public class StaticContentHandler extends HandlerWrapper {
+    public static final String MAX_CACHED_FILE = "simplejaxrs2.static.max-cached-file";
+    public static final String MAX_CACHE = "simplejaxrs2.static.max-cache";
+    public static final String MAX_LARGE_FILES = "simplejaxrs2.static.max-large-files";
+
+    private static final Logger logger = LoggerFactory.getLogger(StaticContentHandler.class);
+
+    private static final String API_PATH = "/api/";
+    private static final String VERSION_PARAM = "v";
+    private static final String REVALIDATE = "no-cache";
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final long RECHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final Pattern HASHED_NAME = Pattern.compile(".*[.-][0-9a-fA-F]{8,}\\.[^.]+");
+    private static final String GZIP = "gzip";
+
+    private final File base;  // canonical
+    private final int maxCachedFile;
+    private final Cache<String, Asset> assets;
+    private final Cache<String, Asset> largeAssets;  // weigh nothing on the heap, bounded by count
+    private final MimeTypes mimeTypes = new MimeTypes();
+
+    private final StripedCounter cached = MetricsRegistry.counter("static_requests_total",
+            "Static asset requests.", MetricsRegistry.labels("result", "cached"));
+    private final StripedCounter loaded = MetricsRegistry.counter("static_requests_total",
+            "Static asset requests.", MetricsRegistry.labels("result", "loaded"));
+    private final StripedCounter notModified = MetricsRegistry.counter("static_requests_total",
+            "Static asset requests.", MetricsRegistry.labels("result", "not_modified"));
+
+    /**
+     * @param maxCachedFile largest file read into memory, larger files are memory mapped or sent from disk
+     * @param maxCache maximum total bytes of the files read into memory
+     * @param maxLargeFiles maximum number of larger files kept, mapped or not
+     */
+    public StaticContentHandler(final File base, final int maxCachedFile, final long maxCache,
+                                final int maxLargeFiles) {
+        try {
+            this.base = base.getCanonicalFile();
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Not a valid directory: " + base, e);
+        }
+        this.maxCachedFile = maxCachedFile;
+        this.assets = CacheBuilder.newBuilder()
+                .maximumWeight(maxCache)
+                .weigher(new Weigher<String, Asset>() {
+                    @Override
+                    public int weigh(final String path, final Asset asset) {
+                        return asset.weight;
+                    }
+                })
+                .build();
+        this.largeAssets = CacheBuilder.newBuilder()
+                .maximumSize(maxLargeFiles)
+                // Drop mappings when no longer asked for, the address space is released with them
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+
+        MetricsRegistry.gauge("static_cached_assets", "Static assets in the cache.", "", new Gauge() {
+            @Override
+            public double value() { return assets.size() + largeAssets.size(); }
+        });
+    }
+
+    /**
+     * @return the path with the hash of its content as query parameter, a URL clients may cache for a year,
+     * or the path itself if there is no such file
+     */
+    public String versionedPath(final String path) throws IOException {
+        final Asset asset = asset(normalize(path));
+        return asset != null ? path + "?" + VERSION_PARAM + "=" + asset.hash : path;
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                       final HttpServletResponse response) throws IOException, ServletException {
+
+        final String method = request.getMethod();
+        final Asset asset = !baseRequest.isHandled()
+                && (HttpMethod.GET.is(method) || HttpMethod.HEAD.is(method))
+                ? asset(normalize(target))
+                : null;
+        if (asset == null) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        baseRequest.setHandled(true);
+
+        final boolean gzip = asset.hasGzip && acceptsGzip(request.getHeader(HttpHeader.ACCEPT_ENCODING.asString()));
+        final String etag = gzip ? asset.gzipEtag : asset.etag;
+
+        response.setHeader(HttpHeader.ETAG.asString(), etag);
+        response.setHeader(HttpHeader.CACHE_CONTROL.asString(),
+                asset.hash.equals(request.getParameter(VERSION_PARAM)) ? IMMUTABLE : REVALIDATE);
+        if (asset.hasGzip) {
+            response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+        }
+
+        final String ifNoneMatch = request.getHeader(HttpHeader.IF_NONE_MATCH.asString());
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || "*".equals(ifNoneMatch.trim()))) {
+            notModified.increment();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        // A buffer of its own per response, the cached one is shared. Without one the file is sent from disk
+        final ByteBuffer buffer = gzip ? asset.gzipped : asset.content;
+        final ByteBuffer content = buffer != null ? buffer.duplicate() : null;
+        final File file = gzip ? gzFile(asset.file) : asset.file;
+        response.setContentType(asset.contentType);
+        if (gzip) {
+            response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), GZIP);
+        }
+        if (HttpMethod.HEAD.is(method)) {
+            response.setContentLengthLong(content != null ? content.remaining() : file.length());
+            return;
+        }
+
+        final FileChannel channel = content == null ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : null;
+        response.setContentLengthLong(content != null ? content.remaining() : channel.size());
+        final AsyncContext async = request.startAsync();
+        async.setTimeout(0);
+        final Callback sent = new Callback() {
+            @Override
+            public void succeeded() {
+                async.complete();
+            }
+
+            @Override
+            public void failed(final Throwable x) {
+                logger.debug("Could not send {}", target, x);
+                async.complete();
+            }
+        };
+        // Jetty closes the channel when it is sent
+        if (content != null) {
+            ((HttpOutput) response.getOutputStream()).sendContent(content, sent);
+        }
+        else {
+            ((HttpOutput) response.getOutputStream()).sendContent(channel, sent);
+        }
+    }
+
+    /**
+     * @return true if the Accept-Encoding header lists gzip, or *, with a q-value above 0
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean any = null;
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            final String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            final boolean accepted = quality(parts) > 0;
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                return accepted;
+            }
+            if ("*".equals(name)) {
+                any = accepted;
+            }
+        }
+        return any != null && any;
+    }
+
+    // The q parameter of a coding, 1 without one, 0 if it does not parse
+    private static double quality(final String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            final String param = parts[i].trim();
+            if (param.length() > 1 && (param.charAt(0) == 'q' || param.charAt(0) == 'Q') && param.charAt(1) == '=') {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                }
+                catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    // Without . and .. segments and repeated slashes, so one file has one path. null if it climbs above the root
+    private static String normalize(final String path) {
+        final String canonical = URIUtil.canonicalPath(path);
+        return canonical != null ? canonical.replaceAll("/{2,}", "/") : null;
+    }
+
+    /**
+     * @return the cached asset for the path, (re)loaded if the file changed, null if there is no file to serve
+     */
+    private Asset asset(final String path) throws IOException {
+        if (path == null || path.startsWith(API_PATH) || isPrivate(path)) {
+            return null;
+        }
+        Asset asset = assets.getIfPresent(path);
+        if (asset == null) {
+            asset = largeAssets.getIfPresent(path);
+        }
+        final long now = System.nanoTime();
+        if (asset != null && now - asset.checkedAt < RECHECK_NANOS) {
+            cached.increment();
+            return asset;
+        }
+
+        final File file = new File(base, path).getCanonicalFile();
+        if (!file.isFile() || !isServable(file)) {
+            if (asset != null) {
+                assets.invalidate(path);
+                largeAssets.invalidate(path);
+            }
+            return null;
+        }
+        if (asset != null && asset.isCurrent(file)) {
+            asset.checkedAt = now;
+            cached.increment();
+            return asset;
+        }
+        asset = load(file);
+        // A file that grew past maxCachedFile, or shrank below it, moves from one cache to the other
+        if (asset.isLarge) {
+            assets.invalidate(path);
+            largeAssets.put(path, asset);
+        }
+        else {
+            largeAssets.invalidate(path);
+            assets.put(path, asset);
+        }
+        loaded.increment();
+        return asset;
+    }
+
+    private static boolean isPrivate(final String path) {
+        final String upper = path.toUpperCase(Locale.ROOT);
+        return upper.startsWith("/WEB-INF") || upper.startsWith("/META-INF");
+    }
+
+    // The file itself, after links are followed, must be under the base directory and not a private one
+    private boolean isServable(final File file) {
+        final String basePath = base.getPath() + File.separator;
+        return file.getPath().startsWith(basePath)
+                && !isPrivate("/" + file.getPath().substring(basePath.length()).replace(File.separatorChar, '/'));
+    }
+
+    private Asset load(final File file) throws IOException {
+        final File gzFile = gzFile(file);
+        final long lastModified = file.lastModified();
+        final long gzLastModified = gzFile.lastModified();  // 0 if there is none
+        final long length = file.length();
+        final boolean hasGzip = gzLastModified >= lastModified;
+        final String contentType = mimeTypes.getMimeByExtension(file.getName());
+
+        final boolean isLarge = length > maxCachedFile;
+        final ByteBuffer content;
+        final ByteBuffer gzipped;
+        final String hash;
+        if (!isLarge) {
+            content = read(file);
+            gzipped = hasGzip ? read(gzFile) : null;
+            hash = hash(content);
+        }
+        else if (HASHED_NAME.matcher(file.getName()).matches()) {
+            content = map(file);
+            gzipped = hasGzip ? map(gzFile) : null;
+            hash = hash(content);
+        }
+        else {
+            content = null;
+            gzipped = null;
+            hash = Files.hash(file, Hashing.sha256()).toString().substring(0, 16);
+        }
+
+        return new Asset(file, content, gzipped, hasGzip, isLarge, hash,
+                contentType != null ? contentType : "application/octet-stream",
+                lastModified, length, gzLastModified, isLarge ? 0 : weight(content) + weight(gzipped));
+    }
+
+    private static int weight(final ByteBuffer buffer) {
+        return buffer != null ? buffer.capacity() : 0;
+    }
+
+    private static ByteBuffer map(final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static ByteBuffer read(final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until full or end of file
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static File gzFile(final File file) {
+        return new File(file.getPath() + ".gz");
+    }
+
+    private static String hash(final ByteBuffer content) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content.duplicate());
+            return BaseEncoding.base16().lowerCase().encode(digest.digest(), 0, 8);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Asset {
+        final File file;
+        final ByteBuffer content;  // null if sent from disk, as gzipped
+        final ByteBuffer gzipped;
+        final boolean hasGzip;
+        final boolean isLarge;
+        final String hash;
+        final String etag;
+        final String gzipEtag;
+        final String contentType;
+        final long lastModified;
+        final long length;
+        final long gzLastModified;
+        final int weight;
+        volatile long checkedAt = System.nanoTime();
+
+        Asset(final File file, final ByteBuffer content, final ByteBuffer gzipped, final boolean hasGzip,
+              final boolean isLarge, final String hash, final String contentType,
+              final long lastModified, final long length, final long gzLastModified, final int weight) {
+            this.file = file;
+            this.content = content;
+            this.gzipped = gzipped;
+            this.hasGzip = hasGzip;
+            this.isLarge = isLarge;
+            this.hash = hash;
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = "\"" + hash + "-gzip\"";
+            this.contentType = contentType;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.gzLastModified = gzLastModified;
+            this.weight = weight;
+        }
+
+        boolean isCurrent(final File file) {
+            return file.lastModified() == lastModified && file.length() == length
+                    && gzFile(file).lastModified() == gzLastModified;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.leifoolsen.simplejaxrs2.embeddedjetty;
+
+import com.github.leifoolsen.simplejaxrs2.tracing.Span;
+import com.github.leifoolsen.simplejaxrs2.tracing.Tracer;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the trace of sampled requests, see Tracer. Records the time from when Jetty began reading the request
+ * until it was handled, which is mostly time spent waiting for a thread, and the time spent handling it.
+ * Only the first dispatch of a request is traced.
+ */
+public class TracingHandler extends HandlerWrapper {
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                       final HttpServletResponse response) throws IOException, ServletException {
+
+        if (baseRequest.getDispatcherType() != DispatcherType.REQUEST || !Tracer.beginTrace()) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        try {
+            final long now = System.nanoTime();
+            final long waited = TimeUnit.MILLISECONDS.toNanos(
+                    Math.max(0, System.currentTimeMillis() - baseRequest.getTimeStamp()));
+            final Span span = Tracer.start(request.getMethod() + " " + request.getRequestURI());
+            Tracer.currentTrace().record("jetty.wait", now - waited, waited);
+            try {
+                super.handle(target, baseRequest, request, response);
+            }
+            finally {
+                span.end();
+            }
+        }
+        finally {
+            Tracer.endTrace();
+        }
+    }
+}
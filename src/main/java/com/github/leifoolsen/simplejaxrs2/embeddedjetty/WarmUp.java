@@ -0,0 +1,248 @@
+package com.github.leifoolsen.simplejaxrs2.embeddedjetty;
+
+import com.github.leifoolsen.simplejaxrs2.codec.BookProtobuf;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.replication.Replication;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.net.UrlEscapers;
+import org.eclipse.jetty.server.LocalConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays representative book requests through the whole stack, Jetty, Jersey, MOXy and bean validation,
+ * before the server takes traffic, so the first real requests find the code compiled and the caches loaded.
+ * JettyFactory.start runs it before the network connectors are opened.
+ *
+ * Requests go through a LocalConnector, in memory, and only read: a write would go into the change log and
+ * out to replicas. MetricsFilter leaves them out of the request metrics. Logs how long it took and the latency of the first rounds, cold, against the last, warm.
+ * Warns about requests answered with another status class than expected: a replica redirecting reads to its
+ * primary, say, warms up the redirect rather than the code that serves books.
+ */
+public class WarmUp {
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+
+    private static final String MISSING_ISBN = "9780000000002";
+    private static final int COMPARED_PERCENT = 10;  // of the rounds, at each end, compared as cold and warm
+    private static final long RESPONSE_TIMEOUT_SECONDS = 10;
+    private static final char SUCCESS = '2';       // first digit of the status expected
+    private static final char CLIENT_ERROR = '4';
+
+    private final LocalConnector connector;
+    private final int rounds;
+    private volatile Result result;
+
+    WarmUp(final LocalConnector connector, final int rounds) {
+        this.connector = connector;
+        this.rounds = rounds;
+    }
+
+    /**
+     * @return the outcome of the last run, null if it has not run
+     */
+    public Result getResult() {
+        return result;
+    }
+
+    public Result run() throws Exception {
+        final List<Request> requests = requests();
+        final long[] latencies = new long[rounds * requests.size()];
+        int failed = 0;
+        int unexpected = 0;
+        final Map<String, String> unexpectedStatus = Maps.newLinkedHashMap();  // request line to status line
+
+        final long start = System.nanoTime();
+        int i = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (Request request : requests) {
+                final long begin = System.nanoTime();
+                final String response = connector.getResponses(request.raw, RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                latencies[i++] = System.nanoTime() - begin;
+                if (!isAnswered(response)) {
+                    failed++;
+                }
+                else if (response.charAt(9) != request.expectedClass) {
+                    unexpected++;
+                    unexpectedStatus.put(firstLine(request.raw), firstLine(response));
+                }
+            }
+        }
+        final long duration = System.nanoTime() - start;
+
+        final int compared = Math.max(1, rounds * COMPARED_PERCENT / 100) * requests.size();
+        final long[] cold = Arrays.copyOfRange(latencies, 0, compared);
+        final long[] warm = Arrays.copyOfRange(latencies, latencies.length - compared, latencies.length);
+        Arrays.sort(cold);
+        Arrays.sort(warm);
+
+        result = new Result(latencies.length, failed, unexpected, duration,
+                percentile(cold, 0.5), percentile(cold, 0.99), percentile(warm, 0.5), percentile(warm, 0.99));
+        registerMetrics(result);
+
+        logger.info("Warm-up: {} requests in {} ms, {} failed, {} unexpected. "
+                        + "Latency p50/p99 cold {}/{} us, warm {}/{} us",
+                result.getRequests(), TimeUnit.NANOSECONDS.toMillis(duration), failed, unexpected,
+                micros(result.getColdP50Nanos()), micros(result.getColdP99Nanos()),
+                micros(result.getWarmP50Nanos()), micros(result.getWarmP99Nanos()));
+        if (unexpected > 0) {
+            logger.warn("Warm-up: {} requests answered with an unexpected status, the server is not warmed up as "
+                    + "intended: {}", unexpected, unexpectedStatus);
+        }
+        return result;
+    }
+
+    /**
+     * A round of the read requests BookResource serves most, against books in the repository
+     */
+    private static List<Request> requests() {
+        final List<Book> first = BookRepository.getAllBooks(0, 1);
+        final Book book = first.isEmpty() ? null : first.get(0);
+        final String isbn = book != null ? book.getIsbn() : MISSING_ISBN;
+        final String publisher = MoreObjects.firstNonNull(BookRepository.getPublisherName(isbn), "Gyldendal");
+        final String title = book != null && book.getTitle() != null ? book.getTitle() : "a";
+        final String prefix = title.substring(0, Math.min(3, title.length()));
+
+        final String json = "application/json";
+        final char found = book != null ? SUCCESS : CLIENT_ERROR;
+        final List<Request> requests = Lists.newArrayList();
+        requests.add(new Request(get("/api/books?offset=0&limit=10", json), SUCCESS));
+        requests.add(new Request(get("/api/books/" + isbn, json), found));
+        requests.add(new Request(get("/api/books/" + isbn, BookProtobuf.APPLICATION_PROTOBUF), found));
+        requests.add(new Request(get("/api/books/" + MISSING_ISBN, json), CLIENT_ERROR));
+        requests.add(new Request(get("/api/books/publisher/" + UrlEscapers.urlPathSegmentEscaper().escape(publisher),
+                json), SUCCESS));
+        requests.add(new Request(get("/api/books/stats", json), SUCCESS));
+        requests.add(new Request(get("/api/books/suggest?prefix="
+                + UrlEscapers.urlFormParameterEscaper().escape(prefix), json), SUCCESS));
+        requests.add(new Request(post("/api/books/batch-get", "[\"" + isbn + "\",\"" + MISSING_ISBN + "\"]"),
+                SUCCESS));
+        // Fails validation, never reaches the repository. A replica redirects writes to its primary, unvalidated
+        if (Replication.replica() == null) {
+            requests.add(new Request(post("/api/books", "{\"isbn\":\"123\",\"title\":\"Warm-up\"}"),
+                    CLIENT_ERROR));
+        }
+        return requests;
+    }
+
+    private static String get(final String uri, final String accept) {
+        return "GET " + uri + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Accept: " + accept + "\r\n"
+                + "Connection: close\r\n\r\n";
+    }
+
+    private static String post(final String uri, final String json) {
+        return "POST " + uri + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Accept: application/json\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + json.getBytes(Charsets.UTF_8).length + "\r\n"
+                + "Connection: close\r\n\r\n"
+                + json;
+    }
+
+    // Any answer but a server error
+    private static boolean isAnswered(final String response) {
+        return response != null && response.startsWith("HTTP/1.1 ") && response.length() > 9
+                && response.charAt(9) != '5';
+    }
+
+    private static String firstLine(final String message) {
+        final int end = message.indexOf('\r');
+        return end >= 0 ? message.substring(0, end) : message;
+    }
+
+    private static long percentile(final long[] sorted, final double p) {
+        return sorted[(int) (p * (sorted.length - 1))];
+    }
+
+    private static long micros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static void registerMetrics(final Result result) {
+        MetricsRegistry.gauge("warmup_duration_seconds", "Time spent warming up before taking traffic.", "",
+                new Gauge() {
+                    @Override
+                    public double value() { return result.getDurationNanos() / 1e9; }
+                });
+        latencyGauge("cold", "0.5", result.getColdP50Nanos());
+        latencyGauge("cold", "0.99", result.getColdP99Nanos());
+        latencyGauge("warm", "0.5", result.getWarmP50Nanos());
+        latencyGauge("warm", "0.99", result.getWarmP99Nanos());
+    }
+
+    private static void latencyGauge(final String phase, final String quantile, final long nanos) {
+        MetricsRegistry.gauge("warmup_latency_seconds", "Warm-up request latency, first rounds against last.",
+                MetricsRegistry.labels("phase", phase, "quantile", quantile), new Gauge() {
+                    @Override
+                    public double value() { return nanos / 1e9; }
+                });
+    }
+
+    private static class Request {
+        final String raw;
+        final char expectedClass;
+
+        Request(final String raw, final char expectedClass) {
+            this.raw = raw;
+            this.expectedClass = expectedClass;
+        }
+    }
+
+    public static class Result {
+        private final int requests;
+        private final int failed;
+        private final int unexpected;
+        private final long durationNanos;
+        private final long coldP50Nanos;
+        private final long coldP99Nanos;
+        private final long warmP50Nanos;
+        private final long warmP99Nanos;
+
+        Result(final int requests, final int failed, final int unexpected, final long durationNanos,
+               final long coldP50Nanos, final long coldP99Nanos, final long warmP50Nanos, final long warmP99Nanos) {
+            this.requests = requests;
+            this.failed = failed;
+            this.unexpected = unexpected;
+            this.durationNanos = durationNanos;
+            this.coldP50Nanos = coldP50Nanos;
+            this.coldP99Nanos = coldP99Nanos;
+            this.warmP50Nanos = warmP50Nanos;
+            this.warmP99Nanos = warmP99Nanos;
+        }
+
+        public int getRequests() { return requests; }
+
+        /**
+         * @return requests answered with a server error, or not at all
+         */
+        public int getFailed() { return failed; }
+
+        /**
+         * @return requests answered, but not with the status class expected, such as a redirect to the primary
+         */
+        public int getUnexpected() { return unexpected; }
+
+        public long getDurationNanos() { return durationNanos; }
+
+        public long getColdP50Nanos() { return coldP50Nanos; }
+
+        public long getColdP99Nanos() { return coldP99Nanos; }
+
+        public long getWarmP50Nanos() { return warmP50Nanos; }
+
+        public long getWarmP99Nanos() { return warmP99Nanos; }
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.leifoolsen.simplejaxrs2.lifecycle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Phases of the server, for the parts of the application that have to act on them.
+ * JettyFactory.start may warm the server up before it is started, see WarmUp. While warming up, only the warm-up
+ * can reach the server. JettyFactory.stop goes through the shutdown phases in order:
+ * <ol>
+ *     <li>draining: the server is about to stop taking requests. Close what never completes by itself,
+ *     such as event streams, so requests in flight can drain.</li>
+ *     <li>stopped: requests are drained or cut off. Flush what is buffered.</li>
+ * </ol>
+ */
+public class Lifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(Lifecycle.class);
+
+    private static final List<Runnable> drainListeners = new CopyOnWriteArrayList<Runnable>();
+    private static final List<Runnable> stopListeners = new CopyOnWriteArrayList<Runnable>();
+
+    private static volatile boolean warmingUp;
+    private static volatile boolean draining;
+
+    private Lifecycle() {}
+
+    public static void onDrain(final Runnable listener) {
+        drainListeners.add(listener);
+    }
+
+    public static void onStop(final Runnable listener) {
+        stopListeners.add(listener);
+    }
+
+    public static boolean isWarmingUp() {
+        return warmingUp;
+    }
+
+    public static boolean isDraining() {
+        return draining;
+    }
+
+    public static void warmingUp() {
+        warmingUp = true;
+        draining = false;
+    }
+
+    public static void started() {
+        warmingUp = false;
+        draining = false;
+    }
+
+    public static void draining() {
+        draining = true;
+        run(drainListeners);
+    }
+
+    public static void stopped() {
+        run(stopListeners);
+    }
+
+    private static void run(final List<Runnable> listeners) {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            }
+            catch (RuntimeException e) {
+                logger.warn("Shutdown listener failed", e);  // the rest still get to run
+            }
+        }
+    }
+}
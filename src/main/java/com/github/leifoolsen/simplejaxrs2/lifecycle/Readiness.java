@@ -0,0 +1,60 @@
+package com.github.leifoolsen.simplejaxrs2.lifecycle;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Whether this node should take traffic, served at /api/health/ready for load balancers.
+ * The node is not ready while it warms up or drains, see Lifecycle, or while any registered check says so:
+ * a replica catching up with its primary, a saturated thread pool and so on.
+ */
+public class Readiness {
+    private static final Logger logger = LoggerFactory.getLogger(Readiness.class);
+
+    private static final ConcurrentMap<String, ReadinessCheck> checks = new ConcurrentSkipListMap<String, ReadinessCheck>();
+
+    private Readiness() {}
+
+    /**
+     * Adds a check, replacing any check with the same name
+     */
+    public static void register(final String name, final ReadinessCheck check) {
+        checks.put(name, check);
+    }
+
+    public static void unregister(final String name) {
+        checks.remove(name);
+    }
+
+    /**
+     * @return why the node is not ready, by check name, empty if it is
+     */
+    public static Map<String, String> problems() {
+        final Map<String, String> problems = Maps.newLinkedHashMap();
+        if (Lifecycle.isWarmingUp()) {
+            problems.put("lifecycle", "warming up");
+        }
+        if (Lifecycle.isDraining()) {
+            problems.put("lifecycle", "draining");
+        }
+        for (Map.Entry<String, ReadinessCheck> check : checks.entrySet()) {
+            String problem;
+            try {
+                problem = check.getValue().notReady();
+            }
+            catch (RuntimeException e) {
+                logger.warn("Readiness check {} failed", check.getKey(), e);
+                problem = "check failed: " + e;
+            }
+            if (problem != null) {
+                problems.put(check.getKey(), problem);
+            }
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.leifoolsen.simplejaxrs2.lifecycle;
+
+/**
+ * Something that has to hold for the node to take traffic, see Readiness.
+ */
+public interface ReadinessCheck {
+    /**
+     * @return why the node should not take traffic, or null if it may
+     */
+    String notReady();
+}
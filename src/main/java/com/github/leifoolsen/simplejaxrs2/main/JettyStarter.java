@@ -1,34 +1,82 @@
 package com.github.leifoolsen.simplejaxrs2.main;
 
+import ch.qos.logback.classic.LoggerContext;
+import com.github.leifoolsen.simplejaxrs2.cluster.Cluster;
 import com.github.leifoolsen.simplejaxrs2.embeddedjetty.JettyFactory;
+import com.github.leifoolsen.simplejaxrs2.replication.Replication;
 import com.github.leifoolsen.simplejaxrs2.rest.application.ApplicationConfig;
 import com.google.common.base.MoreObjects;
 import com.google.common.primitives.Ints;
 import org.eclipse.jetty.server.Server;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.UriBuilder;
 import java.net.URI;
 
 public class JettyStarter {
     private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_WARM_UP_ROUNDS = 1000;
+
+    private static boolean stopped;
 
     public static void main(String[] args) throws Exception {
 
         int port = args.length >= 1 ? MoreObjects.firstNonNull(Ints.tryParse(args[0]), DEFAULT_PORT) : DEFAULT_PORT;
 
-        Server server = new JettyFactory().port(port).build();
+        // A replica starts catching up before it serves, until then it redirects reads to the primary
+        Replication.start();
+
+        // Warm before the port opens, so the first requests don't pay for class loading and JIT compilation
+        final Server server = new JettyFactory()
+                .port(port)
+                .warmUp(Integer.getInteger(JettyFactory.WARM_UP_ROUNDS, DEFAULT_WARM_UP_ROUNDS))
+                .build();
         JettyFactory.start(server);
 
+        // Joins a partitioned cluster, the node it joins through calls back
+        Cluster.start();
+
         URI applicationURI = UriBuilder.fromUri(server.getURI()).path(ApplicationConfig.APPLICATION_PATH).build();
         System.out.println(String.format("\nServer started with WADL available at "
                 + "%s/application.wadl\nExample usage: %s/books\n\nHIT ENTER TO STOP SERVER ...",
                 applicationURI.toString(), applicationURI.toString()));
 
+        // Ctrl-C, kill and ENTER all stop the server the same way
+        final Thread shutdown = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown(server);
+            }
+        }, "shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdown);
+
         try {
             System.in.read();
         }
         finally {
+            shutdown(server);
+        }
+    }
+
+    // Synchronized: the JVM exits when the hook returns, so the hook waits for a shutdown already under way
+    private static synchronized void shutdown(final Server server) {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        try {
             JettyFactory.stop(server);
         }
+        catch (Exception e) {
+            LoggerFactory.getLogger(JettyStarter.class).warn("Stopping Jetty failed", e);
+        }
+        Replication.stop();
+
+        // Log events still queued in the async appender would be lost when the JVM exits
+        final ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+        if (loggerFactory instanceof LoggerContext) {
+            ((LoggerContext) loggerFactory).stop();
+        }
     }
 }
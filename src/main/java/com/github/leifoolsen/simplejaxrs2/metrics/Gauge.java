@@ -0,0 +1,8 @@
+package com.github.leifoolsen.simplejaxrs2.metrics;
+
+/**
+ * A value sampled when metrics are scraped.
+ */
+public interface Gauge {
+    double value();
+}
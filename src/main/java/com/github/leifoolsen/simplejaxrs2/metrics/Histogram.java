@@ -0,0 +1,60 @@
+package com.github.leifoolsen.simplejaxrs2.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histogram with fixed bucket bounds, recorded in nanoseconds and exported in seconds.
+ * Buckets are stored non-cumulative and summed on export, so recording touches one bucket only.
+ */
+public class Histogram {
+    public static final double[] DEFAULT_BOUNDS_SECONDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private final double[] boundsSeconds;
+    private final long[] boundsNanos;
+    private final StripedCounter[] buckets;  // last bucket is +Inf
+    private final StripedCounter sumNanos = new StripedCounter();
+
+    public Histogram() {
+        this(DEFAULT_BOUNDS_SECONDS);
+    }
+
+    public Histogram(final double[] boundsSeconds) {
+        this.boundsSeconds = boundsSeconds.clone();
+        this.boundsNanos = new long[boundsSeconds.length];
+        this.buckets = new StripedCounter[boundsSeconds.length + 1];
+        for (int i = 0; i < boundsSeconds.length; i++) {
+            boundsNanos[i] = (long) (boundsSeconds[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new StripedCounter();
+        }
+    }
+
+    public void observe(final long nanos) {
+        int i = 0;
+        while (i < boundsNanos.length && nanos > boundsNanos[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    void writeTo(final StringBuilder sb, final String name, final String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            String le = i < boundsSeconds.length ? Double.toString(boundsSeconds[i]) : "+Inf";
+            sb.append(name).append("_bucket{");
+            if (labels.length() > 0) {
+                sb.append(labels).append(',');
+            }
+            sb.append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        String braced = labels.length() > 0 ? "{" + labels + "}" : "";
+        sb.append(name).append("_sum").append(braced).append(' ')
+                .append(sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+        sb.append(name).append("_count").append(braced).append(' ').append(cumulative).append('\n');
+    }
+}
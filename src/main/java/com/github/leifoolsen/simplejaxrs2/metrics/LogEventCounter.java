@@ -0,0 +1,53 @@
+package com.github.leifoolsen.simplejaxrs2.metrics;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Logback filter counting the events passing through an appender, by level. It never filters anything.
+ * Put one on the async appender and one on the appender it delegates to; the difference between the two
+ * is the number of events dropped or still queued.
+ *
+ * <pre>
+ * &lt;filter class="com.github.leifoolsen.simplejaxrs2.metrics.LogEventCounter"&gt;
+ *     &lt;name&gt;async&lt;/name&gt;
+ * &lt;/filter&gt;
+ * </pre>
+ */
+public class LogEventCounter extends Filter<ILoggingEvent> {
+    private StripedCounter error;
+    private StripedCounter warn;
+    private StripedCounter info;
+    private StripedCounter debug;
+    private StripedCounter trace;
+
+    @Override
+    public void start() {
+        final String appender = getName() != null ? getName() : "unnamed";
+        error = counter(appender, Level.ERROR);
+        warn  = counter(appender, Level.WARN);
+        info  = counter(appender, Level.INFO);
+        debug = counter(appender, Level.DEBUG);
+        trace = counter(appender, Level.TRACE);
+        super.start();
+    }
+
+    private static StripedCounter counter(final String appender, final Level level) {
+        return MetricsRegistry.counter("log_events_total", "Log events passed to an appender, by level.",
+                MetricsRegistry.labels("appender", appender, "level", level.toString()));
+    }
+
+    @Override
+    public FilterReply decide(final ILoggingEvent event) {
+        switch (event.getLevel().toInt()) {
+            case Level.ERROR_INT: error.increment(); break;
+            case Level.WARN_INT:  warn.increment();  break;
+            case Level.INFO_INT:  info.increment();  break;
+            case Level.DEBUG_INT: debug.increment(); break;
+            default:              trace.increment(); break;
+        }
+        return FilterReply.NEUTRAL;
+    }
+}
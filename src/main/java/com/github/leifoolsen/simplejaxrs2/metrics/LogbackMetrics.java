@@ -0,0 +1,46 @@
+package com.github.leifoolsen.simplejaxrs2.metrics;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.AsyncAppenderBase;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+
+/**
+ * Exposes queue depth of the configured async appenders.
+ */
+public class LogbackMetrics {
+
+    private LogbackMetrics() {}
+
+    public static void register() {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+            return;  // not logging through logback
+        }
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        for (Logger logger : context.getLoggerList()) {
+            for (Iterator<Appender<ILoggingEvent>> it = logger.iteratorForAppenders(); it.hasNext(); ) {
+                Appender<ILoggingEvent> appender = it.next();
+                if (appender instanceof AsyncAppenderBase) {
+                    register((AsyncAppenderBase<?>) appender);
+                }
+            }
+        }
+    }
+
+    private static void register(final AsyncAppenderBase<?> appender) {
+        final String labels = MetricsRegistry.labels("appender", appender.getName());
+
+        MetricsRegistry.gauge("log_queue_size", "Events waiting in the async appender queue.", labels, new Gauge() {
+            @Override
+            public double value() { return appender.getNumberOfElementsInQueue(); }
+        });
+        MetricsRegistry.gauge("log_queue_capacity", "Capacity of the async appender queue.", labels, new Gauge() {
+            @Override
+            public double value() { return appender.getQueueSize(); }
+        });
+    }
+}
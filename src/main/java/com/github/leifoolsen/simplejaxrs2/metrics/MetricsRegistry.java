@@ -0,0 +1,139 @@
+package com.github.leifoolsen.simplejaxrs2.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Process wide registry of counters, gauges and histograms, exported in the Prometheus text format.
+ * Metrics are looked up once and kept by the caller, so the registry maps are off the hot path.
+ * See: http://prometheus.io/docs/instrumenting/exposition_formats/
+ */
+public class MetricsRegistry {
+
+    private static final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<String, Family>();
+
+    private MetricsRegistry() {}
+
+    public static StripedCounter counter(final String name, final String help, final String labels) {
+        Family family = family(name, help, "counter");
+        Object metric = family.children.get(labels);
+        if (metric == null) {
+            StripedCounter counter = new StripedCounter();
+            metric = family.children.putIfAbsent(labels, counter);
+            if (metric == null) {
+                metric = counter;
+            }
+        }
+        return (StripedCounter) metric;
+    }
+
+    public static Histogram histogram(final String name, final String help, final String labels) {
+        Family family = family(name, help, "histogram");
+        Object metric = family.children.get(labels);
+        if (metric == null) {
+            Histogram histogram = new Histogram();
+            metric = family.children.putIfAbsent(labels, histogram);
+            if (metric == null) {
+                metric = histogram;
+            }
+        }
+        return (Histogram) metric;
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge previously registered with the same name and labels.
+     */
+    public static void gauge(final String name, final String help, final String labels, final Gauge gauge) {
+        family(name, help, "gauge").children.put(labels, gauge);
+    }
+
+    /**
+     * Formats label pairs, e.g. labels("method", "GET", "route", "/books") gives method="GET",route="/books"
+     */
+    public static String labels(final String... keyValues) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(keyValues[i]).append("=\"");
+            escape(sb, keyValues[i + 1]);
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    public static String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family family : families.values()) {
+            sb.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            sb.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+
+            for (Map.Entry<String, Object> e : family.children.entrySet()) {
+                final String labels = e.getKey();
+                final Object metric = e.getValue();
+                if (metric instanceof Histogram) {
+                    ((Histogram) metric).writeTo(sb, family.name, labels);
+                    continue;
+                }
+                sb.append(family.name);
+                if (labels.length() > 0) {
+                    sb.append('{').append(labels).append('}');
+                }
+                sb.append(' ');
+                if (metric instanceof StripedCounter) {
+                    sb.append(((StripedCounter) metric).sum());
+                }
+                else {
+                    sb.append(((Gauge) metric).value());
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Family family(final String name, final String help, final String type) {
+        Family family = families.get(name);
+        if (family == null) {
+            Family f = new Family(name, help, type);
+            family = families.putIfAbsent(name, f);
+            if (family == null) {
+                family = f;
+            }
+        }
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric '" + name + "' is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static void escape(final StringBuilder sb, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            }
+            else if (c == '\n') {
+                sb.append("\\n");
+            }
+            else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final ConcurrentMap<String, Object> children = new ConcurrentSkipListMap<String, Object>();
+
+        Family(final String name, final String help, final String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.leifoolsen.simplejaxrs2.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over several cache-line padded cells. Each thread updates the cell picked by its
+ * thread id, so request threads rarely contend on the same cache line. Reading sums all cells.
+ */
+public class StripedCounter {
+    private static final int PAD = 8;  // 8 longs == one 64 byte cache line
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+    private static int stripes() {
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors() * 2) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static int index() {
+        return (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+    }
+
+    public void increment() {
+        cells.incrementAndGet(index());
+    }
+
+    public void decrement() {
+        cells.decrementAndGet(index());
+    }
+
+    public void add(final long delta) {
+        cells.addAndGet(index(), delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+}
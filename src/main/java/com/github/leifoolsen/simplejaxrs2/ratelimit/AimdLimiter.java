@@ -0,0 +1,82 @@
+package com.github.leifoolsen.simplejaxrs2.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive concurrency limit using additive increase / multiplicative decrease (AIMD), as in TCP
+ * congestion control. The limit grows by one while requests complete faster than the latency threshold
+ * and the limit is actually being used, and shrinks by the backoff ratio when a request is slower.
+ * Requests over the limit are rejected up front, so the server sheds load before queuing makes latency
+ * collapse for everyone.
+ */
+public class AimdLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public AimdLimiter(final int initialLimit, final int minLimit, final int maxLimit,
+                       final long latencyThresholdNanos, final double backoffRatio) {
+
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Expected 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.backoffRatio = backoffRatio;
+        this.limit = new AtomicInteger(initialLimit);
+    }
+
+    public boolean tryAcquire() {
+        for (;;) {
+            final int n = inFlight.get();
+            if (n >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a slot taken by tryAcquire and adjusts the limit.
+     * @param latencyNanos time the request held the slot
+     * @param dropped true if the request failed in a way that signals overload, e.g. a timeout
+     */
+    public void release(final long latencyNanos, final boolean dropped) {
+        final int n = inFlight.getAndDecrement();
+
+        for (;;) {
+            final int current = limit.get();
+            final int next;
+            if (dropped || latencyNanos > latencyThresholdNanos) {
+                next = Math.max(minLimit, (int) (current * backoffRatio));
+            }
+            else if (n * 2 >= current) {
+                next = Math.min(maxLimit, current + 1);  // only grow a limit that is in use
+            }
+            else {
+                return;
+            }
+            if (next == current || limit.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
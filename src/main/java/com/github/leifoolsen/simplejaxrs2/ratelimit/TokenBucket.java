@@ -0,0 +1,55 @@
+package com.github.leifoolsen.simplejaxrs2.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free token bucket, implemented as the Generic Cell Rate Algorithm (GCRA).
+ * Instead of a token count and a refill timestamp, the bucket keeps a single "theoretical arrival time",
+ * the time at which the bucket would be full again. A request is allowed if that time, pushed one emission
+ * interval forward, is no more than burst intervals ahead of now. One CAS per request, no background refill.
+ * See: https://en.wikipedia.org/wiki/Generic_cell_rate_algorithm
+ */
+public class TokenBucket {
+    private final long emissionIntervalNanos;
+    private final long capacityNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param ratePerSecond tokens added per second
+     * @param burst bucket capacity, the number of requests that may be made at once
+     */
+    public TokenBucket(final double ratePerSecond, final int burst) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.emissionIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.capacityNanos = emissionIntervalNanos * burst;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token if one is available.
+     * @return 0 if a token was taken, otherwise the nanoseconds until a token becomes available
+     */
+    public long tryAcquire(final long nowNanos) {
+        for (;;) {
+            final long tat = theoreticalArrival.get();
+            final long newTat = Math.max(tat, nowNanos) + emissionIntervalNanos;
+            final long allowAt = newTat - capacityNanos;
+            if (nowNanos - allowAt < 0) {
+                return allowAt - nowNanos;
+            }
+            if (theoreticalArrival.compareAndSet(tat, newTat)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * A full bucket behaves exactly like a new one, so it can be discarded.
+     */
+    public boolean isFull(final long nowNanos) {
+        return theoreticalArrival.get() - nowNanos <= 0;
+    }
+}
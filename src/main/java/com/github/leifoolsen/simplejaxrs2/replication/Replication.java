@@ -0,0 +1,111 @@
+package com.github.leifoolsen.simplejaxrs2.replication;
+
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Readiness;
+import com.github.leifoolsen.simplejaxrs2.lifecycle.ReadinessCheck;
+import com.google.common.base.Preconditions;
+import com.google.common.net.HostAndPort;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Primary/replica replication of the BookRepository. One node is the primary and takes all writes;
+ * replicas follow its change log and serve reads while they are no more than MAX_STALENESS_MS behind.
+ * A replica further behind is not ready, see Readiness.
+ * A node with no ROLE set is standalone.
+ *
+ * Configured with system properties, e.g. for a replica:
+ * <pre>
+ * -Dsimplejaxrs2.replication.role=replica
+ * -Dsimplejaxrs2.replication.primary=localhost:7070
+ * -Dsimplejaxrs2.replication.primary-url=http://localhost:8080/api
+ * </pre>
+ * and for the primary -Dsimplejaxrs2.replication.role=primary -Dsimplejaxrs2.replication.port=7070
+ */
+public class Replication {
+    public static final String ROLE = "simplejaxrs2.replication.role";
+    public static final String PORT = "simplejaxrs2.replication.port";
+    public static final String PRIMARY = "simplejaxrs2.replication.primary";
+    public static final String PRIMARY_URL = "simplejaxrs2.replication.primary-url";
+    public static final String MAX_STALENESS_MS = "simplejaxrs2.replication.max-staleness-ms";
+
+    private static final int DEFAULT_PORT = 7070;
+    private static final String READINESS_CHECK = "replication";
+
+    private static volatile ReplicationPrimary primary;
+    private static volatile ReplicationReplica replica;
+
+    private Replication() {}
+
+    /**
+     * Starts the role given by the ROLE system property, if any
+     */
+    public static void start() throws IOException {
+        final String role = System.getProperty(ROLE, "");
+        if ("primary".equals(role)) {
+            startPrimary(Integer.getInteger(PORT, DEFAULT_PORT));
+        }
+        else if ("replica".equals(role)) {
+            final String primaryAddress = System.getProperty(PRIMARY);
+            final String primaryUrl = System.getProperty(PRIMARY_URL);
+            Preconditions.checkArgument(primaryAddress != null && primaryUrl != null,
+                    "A replica needs %s and %s", PRIMARY, PRIMARY_URL);
+            startReplica(HostAndPort.fromString(primaryAddress).withDefaultPort(DEFAULT_PORT),
+                    URI.create(primaryUrl), Long.getLong(MAX_STALENESS_MS, 5000));
+        }
+        else {
+            Preconditions.checkArgument(role.isEmpty(), "%s must be primary or replica, was %s", ROLE, role);
+        }
+    }
+
+    public static synchronized ReplicationPrimary startPrimary(final int port) throws IOException {
+        Preconditions.checkState(primary == null && replica == null, "Replication already started");
+        primary = new ReplicationPrimary(port);
+        return primary;
+    }
+
+    /**
+     * @param primaryUri base URI of the primary's API, where writes and stale reads are redirected
+     */
+    public static synchronized ReplicationReplica startReplica(final HostAndPort primaryAddress, final URI primaryUri,
+                                                               final long maxStalenessMillis) {
+        Preconditions.checkState(primary == null && replica == null, "Replication already started");
+        final ReplicationReplica started = new ReplicationReplica(primaryAddress, primaryUri, maxStalenessMillis);
+        replica = started;
+
+        // Catching up, or cut off from the primary: reads would all be sent there anyway
+        Readiness.register(READINESS_CHECK, new ReadinessCheck() {
+            @Override
+            public String notReady() {
+                if (started.isFresh()) {
+                    return null;
+                }
+                final long staleness = started.stalenessNanos();
+                return staleness == Long.MAX_VALUE
+                        ? "replica has not caught up with the primary yet"
+                        : "replica is " + TimeUnit.NANOSECONDS.toMillis(staleness) + " ms behind the primary";
+            }
+        });
+        return started;
+    }
+
+    public static synchronized void stop() {
+        if (primary != null) {
+            primary.close();
+            primary = null;
+        }
+        if (replica != null) {
+            Readiness.unregister(READINESS_CHECK);
+            replica.close();
+            replica = null;
+        }
+    }
+
+    /**
+     * @return the replica if this node is one, otherwise null
+     */
+    public static ReplicationReplica replica() {
+        return replica;
+    }
+}
@@ -0,0 +1,248 @@
+package com.github.leifoolsen.simplejaxrs2.replication;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepositoryListener;
+import com.github.leifoolsen.simplejaxrs2.repository.Change;
+import com.github.leifoolsen.simplejaxrs2.repository.ChangeLog;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ships the BookRepository change log to replicas over TCP, one thread per replica.
+ *
+ * A replica that connects with the current epoch and a sequence still in the change log continues from there;
+ * any other replica, or one that falls more than the log capacity behind, first gets a snapshot of every book.
+ * Changes are sent in batches of up to BATCH_SIZE, each acknowledged before the next is sent, so a slow replica
+ * holds back only its own thread. An idle connection carries a heartbeat every HEARTBEAT_MILLIS, which is how
+ * replicas know they are current.
+ */
+public class ReplicationPrimary implements Closeable {
+    static final long HEARTBEAT_MILLIS = 1000;
+
+    private static final int BATCH_SIZE = 512;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final long epoch = new Random().nextLong();
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("replication-primary-%d").setDaemon(true).build());
+    private final Set<Socket> replicas = Sets.newConcurrentHashSet();
+    private final Object signal = new Object();
+    private volatile boolean closed;
+
+    private final StripedCounter snapshots = MetricsRegistry.counter("replication_snapshots_total",
+            "Snapshots sent to replicas.", "");
+
+    private final BookRepositoryListener listener = new BookRepositoryListener() {
+        @Override
+        public void bookAdded(final Book book) {
+            changed();
+        }
+
+        @Override
+        public void bookUpdated(final Book previous, final Book book) {
+            changed();
+        }
+
+        @Override
+        public void bookRemoved(final Book book) {
+            changed();
+        }
+    };
+
+    ReplicationPrimary(final int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+
+        BookRepository.addListener(listener);
+        MetricsRegistry.gauge("replication_replicas", "Connected replicas.", "", new Gauge() {
+            @Override
+            public double value() {
+                return replicas.size();
+            }
+        });
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+        logger.info("Replication primary listening on port {}", serverSocket.getLocalPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        BookRepository.removeListener(listener);
+        closeQuietly(serverSocket);
+        for (Socket socket : replicas) {
+            closeQuietly(socket);
+        }
+        executor.shutdownNow();
+    }
+
+    private void changed() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                final Socket socket = serverSocket.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ship(socket);
+                    }
+                });
+            }
+            catch (IOException e) {
+                if (!closed) {
+                    logger.warn("Accepting replica failed", e);
+                }
+            }
+        }
+    }
+
+    private void ship(final Socket socket) {
+        replicas.add(socket);
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout((int) (HEARTBEAT_MILLIS * 10));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            if (in.readInt() != ReplicationProtocol.MAGIC || in.readInt() != ReplicationProtocol.VERSION) {
+                throw new IOException("Not a replica of this version");
+            }
+            final long replicaEpoch = in.readLong();
+            final long replicaSequence = in.readLong();
+            logger.info("Replica {} connected at sequence {}", socket.getRemoteSocketAddress(), replicaSequence);
+
+            final ChangeLog changes = BookRepository.getChanges();
+            long cursor = replicaEpoch == epoch
+                    && replicaSequence >= changes.firstSequence() - 1
+                    && replicaSequence <= changes.lastSequence()
+                    ? replicaSequence
+                    : snapshot(in, out);
+
+            while (!closed) {
+                if (cursor + 1 < changes.firstSequence()) {
+                    cursor = snapshot(in, out);  // fell behind the change log
+                    continue;
+                }
+                final List<Change> batch = changes.since(cursor, BATCH_SIZE);
+                if (!batch.isEmpty()) {
+                    out.writeByte(ReplicationProtocol.CHANGES);
+                    out.writeLong(changes.lastSequence());
+                    out.writeInt(batch.size());
+                    for (Change change : batch) {
+                        out.writeByte(change.getType().ordinal());
+                        out.writeLong(change.getSequence());
+                        ReplicationProtocol.writeBook(change.getBook(), out);
+                    }
+                    cursor = batch.get(batch.size() - 1).getSequence();
+                    acknowledged(in, out, cursor);
+                }
+                else if (!awaitChange(changes, cursor)) {
+                    out.writeByte(ReplicationProtocol.HEARTBEAT);
+                    out.writeLong(changes.lastSequence());
+                    acknowledged(in, out, cursor);
+                }
+            }
+        }
+        catch (IOException e) {
+            if (!closed) {
+                logger.info("Replica {} disconnected: {}", socket.getRemoteSocketAddress(), e.toString());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            replicas.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private long snapshot(final DataInputStream in, final DataOutputStream out) throws IOException {
+        final List<Book> books = Lists.newArrayListWithCapacity(BookRepository.countBooks());
+        final long sequence = BookRepository.snapshot(books);
+
+        out.writeByte(ReplicationProtocol.SNAPSHOT);
+        out.writeLong(epoch);
+        out.writeLong(sequence);
+        out.writeInt(books.size());
+        for (Book book : books) {
+            ReplicationProtocol.writeBook(book, out);
+        }
+        acknowledged(in, out, sequence);
+        snapshots.increment();
+        return sequence;
+    }
+
+    private static void acknowledged(final DataInputStream in, final DataOutputStream out, final long sequence)
+            throws IOException {
+
+        out.flush();
+        final long ack = in.readLong();
+        if (ack != sequence) {
+            throw new IOException("Replica acknowledged " + ack + ", expected " + sequence);
+        }
+    }
+
+    /**
+     * @return true if there are changes after cursor, false if none came within a heartbeat interval
+     */
+    private boolean awaitChange(final ChangeLog changes, final long cursor) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS);
+        synchronized (signal) {
+            long remaining;
+            while (changes.lastSequence() == cursor && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(signal, remaining);
+            }
+        }
+        return changes.lastSequence() != cursor;
+    }
+
+    static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        }
+        catch (IOException e) {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.leifoolsen.simplejaxrs2.replication;
+
+import com.github.leifoolsen.simplejaxrs2.codec.BookProtobuf;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Wire format of the replication stream. All numbers are big endian, as written by DataOutputStream.
+ * <pre>
+ * replica -> primary   HELLO     int magic, int version, long epoch, long sequence
+ *                      ACK       long sequence applied
+ * primary -> replica   SNAPSHOT  byte 1, long epoch, long sequence, int count, book*
+ *                      CHANGES   byte 2, long head, int count, (byte type, long sequence, book)*
+ *                      HEARTBEAT byte 3, long head
+ * book                 int length, BookProtobuf bytes
+ * </pre>
+ * The replica acknowledges every SNAPSHOT, CHANGES and HEARTBEAT frame. The epoch identifies one run of
+ * the primary; sequences from another run mean nothing, so a replica with another epoch gets a snapshot.
+ * head is the primary's last sequence when the frame was written.
+ */
+class ReplicationProtocol {
+    static final int MAGIC = 0x424b5250;  // "BKRP"
+    static final int VERSION = 1;
+
+    static final byte SNAPSHOT = 1;
+    static final byte CHANGES = 2;
+    static final byte HEARTBEAT = 3;
+
+    private static final int MAX_BOOK_LENGTH = 16 * 1024 * 1024;
+
+    private ReplicationProtocol() {}
+
+    static void writeBook(final Book book, final DataOutputStream out) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        BookProtobuf.write(book, bytes);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    static Book readBook(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_BOOK_LENGTH) {
+            throw new IOException("Bad book length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return BookProtobuf.read(new ByteArrayInputStream(bytes));
+    }
+}
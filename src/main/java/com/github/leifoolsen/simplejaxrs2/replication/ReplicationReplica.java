@@ -0,0 +1,225 @@
+package com.github.leifoolsen.simplejaxrs2.replication;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.github.leifoolsen.simplejaxrs2.repository.Change;
+import com.github.leifoolsen.simplejaxrs2.repository.Write;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.net.HostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the change stream of a ReplicationPrimary to the local BookRepository, and reconnects when the
+ * connection is lost. Changes go through the ordinary repository methods, so listeners, the read cache and
+ * the change feed of this node see them too.
+ *
+ * The replica is current when it has applied everything the primary had when it wrote the last frame.
+ * Staleness is the time since the replica was last current, see ReplicaRoutingFilter.
+ */
+public class ReplicationReplica implements Closeable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final HostAndPort primary;
+    private final URI primaryUri;
+    private final long maxStalenessNanos;
+    private final Thread thread;
+
+    private volatile boolean closed;
+    private volatile Socket socket;
+    private volatile long epoch;
+    private volatile long sequence = -1;  // primary sequence applied, -1 before the first snapshot
+    private volatile long currentAt;      // System.nanoTime() when last current, 0 if never
+
+    ReplicationReplica(final HostAndPort primary, final URI primaryUri, final long maxStalenessMillis) {
+        this.primary = primary;
+        this.primaryUri = primaryUri;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+
+        MetricsRegistry.gauge("replication_applied_sequence", "Last primary sequence applied by this replica.", "",
+                new Gauge() {
+                    @Override
+                    public double value() {
+                        return sequence;
+                    }
+                });
+        MetricsRegistry.gauge("replication_staleness_seconds", "Time since this replica was last current.", "",
+                new Gauge() {
+                    @Override
+                    public double value() {
+                        return stalenessNanos() / 1e9;
+                    }
+                });
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replicate();
+            }
+        }, "replication-replica");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Base URI of the primary's API, where writes and stale reads are sent
+     */
+    public URI getPrimaryUri() {
+        return primaryUri;
+    }
+
+    public long stalenessNanos() {
+        final long at = currentAt;
+        return at == 0 ? Long.MAX_VALUE : System.nanoTime() - at;
+    }
+
+    public boolean isFresh() {
+        return stalenessNanos() <= maxStalenessNanos;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        final Socket s = socket;
+        if (s != null) {
+            ReplicationPrimary.closeQuietly(s);
+        }
+        thread.interrupt();
+    }
+
+    private void replicate() {
+        while (!closed) {
+            try {
+                connectAndApply();
+            }
+            catch (IOException e) {
+                if (!closed) {
+                    logger.info("Replication from {} interrupted: {}", primary, e.toString());
+                }
+            }
+            catch (RuntimeException e) {
+                logger.warn("Replication from {} failed", primary, e);
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void connectAndApply() throws IOException {
+        final Socket s = new Socket();
+        socket = s;
+        try {
+            s.connect(new InetSocketAddress(primary.getHostText(), primary.getPort()), CONNECT_TIMEOUT_MILLIS);
+            s.setTcpNoDelay(true);
+            s.setSoTimeout((int) (ReplicationPrimary.HEARTBEAT_MILLIS * 5));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+            out.writeInt(ReplicationProtocol.MAGIC);
+            out.writeInt(ReplicationProtocol.VERSION);
+            out.writeLong(epoch);
+            out.writeLong(sequence);
+            out.flush();
+            logger.info("Replicating from {} at sequence {}", primary, sequence);
+
+            while (!closed) {
+                final byte frame = in.readByte();
+                final long head;
+                switch (frame) {
+                    case ReplicationProtocol.SNAPSHOT:
+                        final long snapshotEpoch = in.readLong();
+                        head = in.readLong();
+                        applySnapshot(in);
+                        epoch = snapshotEpoch;
+                        sequence = head;
+                        break;
+                    case ReplicationProtocol.CHANGES:
+                        head = in.readLong();
+                        applyChanges(in);
+                        break;
+                    case ReplicationProtocol.HEARTBEAT:
+                        head = in.readLong();
+                        break;
+                    default:
+                        throw new IOException("Unknown frame: " + frame);
+                }
+                out.writeLong(sequence);
+                out.flush();
+                if (sequence == head) {
+                    currentAt = System.nanoTime();
+                }
+            }
+        }
+        finally {
+            socket = null;
+            ReplicationPrimary.closeQuietly(s);
+        }
+    }
+
+    // Read in full first, then applied under one acquisition of the catalog's write lock, so lists and snapshots
+    // never show a mix of the old books and the new. This thread is the only writer on a replica. Books the
+    // replica already has as they are are left alone, a reconnect after a short break writes only what changed
+    private void applySnapshot(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final Set<String> isbns = Sets.newHashSetWithExpectedSize(count);
+        final List<Write> writes = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            final Book book = ReplicationProtocol.readBook(in);
+            isbns.add(book.getIsbn());
+            final Book current = BookRepository.findBook(book.getIsbn());
+            if (current == null || !current.hasSameContent(book)) {
+                writes.add(Write.put(book));
+            }
+        }
+        for (Book book : BookRepository.getAllBooks(null, null)) {
+            if (!isbns.contains(book.getIsbn())) {
+                writes.add(Write.remove(book.getIsbn()));
+            }
+        }
+        BookRepository.apply(writes);
+        logger.info("Applied snapshot of {} books, {} changed", count, writes.size());
+    }
+
+    private void applyChanges(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final Change.Type[] types = Change.Type.values();
+        for (int i = 0; i < count; i++) {
+            final int type = in.readByte();
+            final long changeSequence = in.readLong();
+            final Book book = ReplicationProtocol.readBook(in);
+            if (type < 0 || type >= types.length) {
+                throw new IOException("Unknown change type: " + type);
+            }
+            if (types[type] == Change.Type.REMOVED) {
+                BookRepository.removeBook(book.getIsbn());
+            }
+            else {
+                BookRepository.updateBook(book);
+            }
+            sequence = changeSequence;
+        }
+    }
+}
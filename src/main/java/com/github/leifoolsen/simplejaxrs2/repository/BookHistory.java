@@ -0,0 +1,275 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Past versions of the books of a Catalog, for reads as of a change log sequence and for the history of a book.
+ *
+ * Every change prepends a version to an immutable chain per ISBN, newest first, so readers walk chains without
+ * locking and never see a chain half written. A read as of a sequence sees, for each ISBN, the newest version
+ * at or before it: a point in time, however long the scan takes and however many writes go on meanwhile.
+ *
+ * A collector prunes versions in the background. It keeps every version reads as of the last retained sequences
+ * and reads in progress need, and of the older ones no more than it takes to keep maxVersions versions per book.
+ * Removed books are forgotten once their removal is older than the retained sequences. A read that needs a pruned version fails with
+ * HistoryPrunedException rather than answer from incomplete history.
+ */
+public class BookHistory {
+    public static final String MAX_VERSIONS = "simplejaxrs2.history.max-versions";
+    public static final String RETAINED = "simplejaxrs2.history.retained";
+    public static final String COLLECT_INTERVAL_MS = "simplejaxrs2.history.collect-interval-ms";
+
+    private static final Logger logger = LoggerFactory.getLogger(BookHistory.class);
+
+    private static final Comparator<Book> BY_ISBN = new Comparator<Book>() {
+        @Override
+        public int compare(final Book a, final Book b) {
+            return a.getIsbn().compareTo(b.getIsbn());
+        }
+    };
+
+    private static final ScheduledExecutorService collector = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("book-history-collector").setDaemon(true).build());
+
+    private final int maxVersions;
+    private final long retained;
+    private final ConcurrentMap<String, Version> chains = new ConcurrentHashMap<String, Version>();
+
+    // Sequences of the reads in progress, the collector keeps what the oldest of them needs
+    private final Multiset<Long> reading = ConcurrentHashMultiset.create();
+
+    private volatile long lastSequence;  // written after the version is in its chain
+    private volatile long horizon;       // versions a read as of an earlier sequence needs may be pruned
+
+    private final StripedCounter pruned;
+    private final ScheduledFuture<?> collecting;
+
+    /**
+     * @param maxVersions versions kept per book for its history, more if reads as of the retained sequences need them
+     * @param retained sequences back from the last one reads as of are kept for
+     */
+    BookHistory(final String catalogName, final int maxVersions, final long retained) {
+        Preconditions.checkArgument(maxVersions > 0, "maxVersions must be positive");
+        this.maxVersions = maxVersions;
+        this.retained = retained;
+
+        final String labels = MetricsRegistry.labels("catalog", catalogName);
+        pruned = MetricsRegistry.counter("history_pruned_versions_total", "Book versions pruned from history.",
+                labels);
+        MetricsRegistry.gauge("history_horizon", "Oldest sequence books may be read as of.", labels, new Gauge() {
+            @Override
+            public double value() { return horizon; }
+        });
+
+        final long interval = Long.getLong(COLLECT_INTERVAL_MS, 1000);
+        collecting = collector.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    collect();
+                }
+                catch (RuntimeException e) {
+                    logger.warn("Collecting book history failed", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the collector, the shared collector thread would otherwise keep the history of a dropped catalog
+     */
+    void close() {
+        collecting.cancel(false);
+    }
+
+    // Under the catalog's write lock, in sequence order
+    void record(final Change change) {
+        final String isbn = change.getBook().getIsbn();
+        chains.put(isbn, new Version(change, chains.get(isbn), false));
+        lastSequence = change.getSequence();
+    }
+
+    // Under the catalog's write lock, for a book evicted without a change
+    void forget(final String isbn) {
+        chains.remove(isbn);
+    }
+
+    /**
+     * @return the sequence of the last change recorded
+     */
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return the oldest sequence books may be read as of, older versions may have been pruned
+     */
+    public long horizon() {
+        return horizon;
+    }
+
+    /**
+     * @return the versions of the book still kept, newest first, empty if there are none
+     */
+    public List<Change> versions(final String isbn) {
+        final List<Change> versions = Lists.newArrayList();
+        for (Version v = chains.get(isbn); v != null; v = v.previous) {
+            versions.add(v.change);
+        }
+        return versions;
+    }
+
+    /**
+     * Every book as it was right after the change with the sequence, by ISBN.
+     * @throws HistoryPrunedException if versions that read needs have been pruned
+     * @throws IllegalArgumentException if the sequence is negative or after the last one
+     */
+    public List<Book> asOf(final long sequence) {
+        Preconditions.checkArgument(sequence >= 0 && sequence <= lastSequence,
+                "Sequence %s is not between 0 and %s", sequence, lastSequence);
+        reading.add(sequence);
+        try {
+            checkHorizon(sequence);
+            final List<Book> books = Lists.newArrayList();
+            for (Map.Entry<String, Version> entry : chains.entrySet()) {
+                final Book book = bookAsOf(entry.getValue(), sequence);
+                if (book != null) {
+                    books.add(book);
+                }
+            }
+            // A collection that began before this read registered may have forgotten removed books it needed
+            checkHorizon(sequence);
+
+            final Book[] sorted = books.toArray(new Book[books.size()]);
+            Arrays.sort(sorted, BY_ISBN);
+            return Collections.unmodifiableList(Arrays.asList(sorted));
+        }
+        finally {
+            reading.remove(sequence);
+        }
+    }
+
+    private void checkHorizon(final long sequence) {
+        if (sequence < horizon) {
+            throw new HistoryPrunedException("History before sequence " + horizon + " has been pruned");
+        }
+    }
+
+    // The newest version at or before the sequence, null if the book did not exist or was removed
+    private static Book bookAsOf(final Version chain, final long sequence) {
+        Version v = chain;
+        while (v.change.getSequence() > sequence) {
+            if (v.previous == null) {
+                if (v.truncated) {
+                    throw new HistoryPrunedException("Versions of " + v.change.getBook().getIsbn()
+                            + " before sequence " + v.change.getSequence() + " have been pruned");
+                }
+                return null;
+            }
+            v = v.previous;
+        }
+        return v.change.getType() != Change.Type.REMOVED ? v.change.getBook() : null;
+    }
+
+    /**
+     * Prunes what no read can need any more, see the class comment. Runs in the background, without locking:
+     * a chain a writer changes meanwhile is left for the next collection.
+     */
+    void collect() {
+        final long last = lastSequence;
+        long oldestRead = last;
+        for (Long sequence : reading.elementSet()) {
+            oldestRead = Math.min(oldestRead, sequence);
+        }
+        // Published before pruning, so reads that began too early to be seen here fail their last check
+        final long h = Math.max(horizon, Math.min(last - retained, oldestRead));
+        horizon = h;
+
+        for (Map.Entry<String, Version> entry : chains.entrySet()) {
+            final Version chain = entry.getValue();
+            final int needed = Math.max(visibleFrom(chain, h), visibleFrom(chain, oldestRead));
+            if (needed == 1 && chain.change.getType() == Change.Type.REMOVED && chain.change.getSequence() <= h) {
+                if (chains.remove(entry.getKey(), chain)) {
+                    pruned.add(length(chain));
+                }
+                continue;
+            }
+            // maxVersions only limits versions no read as of the horizon or later can see
+            final int keep = Math.max(needed, maxVersions);
+            if (keep < length(chain)) {
+                if (chains.replace(entry.getKey(), chain, prefix(chain, keep))) {
+                    pruned.add(length(chain) - keep);
+                }
+            }
+        }
+    }
+
+    // How many versions, newest first, reads as of the sequence or later need
+    private static int visibleFrom(final Version chain, final long sequence) {
+        int n = 0;
+        for (Version v = chain; v != null; v = v.previous) {
+            n++;
+            if (v.change.getSequence() <= sequence) {
+                break;
+            }
+        }
+        return n;
+    }
+
+    private static int length(final Version chain) {
+        int n = 0;
+        for (Version v = chain; v != null; v = v.previous) {
+            n++;
+        }
+        return n;
+    }
+
+    // A copy of the newest n versions, the last one marked truncated
+    private static Version prefix(final Version chain, final int n) {
+        final Version[] kept = new Version[n];
+        Version v = chain;
+        for (int i = 0; i < n; i++) {
+            kept[i] = v;
+            v = v.previous;
+        }
+        Version copy = null;
+        for (int i = n - 1; i >= 0; i--) {
+            copy = new Version(kept[i].change, copy, copy == null);
+        }
+        return copy;
+    }
+
+    private static class Version {
+        final Change change;
+        final Version previous;
+        final boolean truncated;  // older versions were pruned, only ever set on the oldest kept
+
+        Version(final Change change, final Version previous, final boolean truncated) {
+            this.change = change;
+            this.previous = previous;
+            this.truncated = truncated;
+        }
+    }
+}
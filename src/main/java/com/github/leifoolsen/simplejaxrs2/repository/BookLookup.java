@@ -0,0 +1,122 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.tracing.Span;
+import com.github.leifoolsen.simplejaxrs2.tracing.Tracer;
+import com.google.common.cache.Weigher;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read path in front of BookRepository.
+ * Books and query results are cached, see ReadCache. Concurrent identical lookups missing the cache share
+ * one repository call. Every repository mutation invalidates the book it touched and all query results.
+ * Lists returned are shared between callers and therefore unmodifiable.
+ * Only the default catalog is cached, other tenants read their catalog directly, see Tenants.
+ *
+ * Cache sizes are weights, roughly the number of characters cached, and are read from system properties.
+ */
+public class BookLookup {
+    public static final String CACHE_MAX_WEIGHT = "simplejaxrs2.cache.max-weight";
+    public static final String CACHE_TTL_SECONDS = "simplejaxrs2.cache.ttl-seconds";
+
+    private static final int BOOK_OVERHEAD = 128;  // isbn, title, author, ...
+
+    private static final Weigher<String, Book> BOOK_WEIGHER = new Weigher<String, Book>() {
+        @Override
+        public int weigh(final String key, final Book book) {
+            return weight(book);
+        }
+    };
+
+    private static final Weigher<String, List<Book>> LIST_WEIGHER = new Weigher<String, List<Book>>() {
+        @Override
+        public int weigh(final String key, final List<Book> books) {
+            int weight = BOOK_OVERHEAD;
+            for (Book book : books) {
+                weight += weight(book);
+            }
+            return weight;
+        }
+    };
+
+    private static final ReadCache<String, Book> books = new ReadCache<String, Book>("books",
+            Long.getLong(CACHE_MAX_WEIGHT, 16 * 1024 * 1024), 10000,
+            Long.getLong(CACHE_TTL_SECONDS, 300), TimeUnit.SECONDS, BOOK_WEIGHER);
+
+    private static final ReadCache<String, List<Book>> queries = new ReadCache<String, List<Book>>("queries",
+            Long.getLong(CACHE_MAX_WEIGHT, 16 * 1024 * 1024), 1000,
+            Long.getLong(CACHE_TTL_SECONDS, 300), TimeUnit.SECONDS, LIST_WEIGHER);
+
+    static {
+        BookRepository.addListener(new BookRepositoryListener() {
+            @Override
+            public void bookAdded(final Book book) {
+                books.invalidate(book.getIsbn());
+                queries.invalidateAll();
+            }
+
+            @Override
+            public void bookUpdated(final Book previous, final Book book) {
+                books.invalidate(book.getIsbn());
+                queries.invalidateAll();
+            }
+
+            @Override
+            public void bookRemoved(final Book book) {
+                books.invalidate(book.getIsbn());
+                queries.invalidateAll();
+            }
+        });
+    }
+
+    private BookLookup() {}
+
+    public static Book findBook(final String isbn) {
+        final Catalog catalog = BookRepository.catalog();
+        if (catalog != BookRepository.defaultCatalog()) {
+            return catalog.findBook(isbn);
+        }
+        final Span span = Tracer.start("BookLookup.findBook");
+        try {
+            return books.get(isbn, new Callable<Book>() {
+                @Override
+                public Book call() {
+                    return BookRepository.findBook(isbn);
+                }
+            });
+        }
+        finally {
+            span.end();
+        }
+    }
+
+    public static List<Book> getBooksByPublisher(final String publisherName) {
+        final Catalog catalog = BookRepository.catalog();
+        if (catalog != BookRepository.defaultCatalog()) {
+            return Collections.unmodifiableList(catalog.getBooksByPublisher(publisherName));
+        }
+        // Versioned, so results of the publisher registry before a change are never served after it
+        final String key = "publisher:" + PublisherRegistry.version() + ":" + publisherName;
+        return queries.get(key, new Callable<List<Book>>() {
+            @Override
+            public List<Book> call() {
+                return Collections.unmodifiableList(BookRepository.getBooksByPublisher(publisherName));
+            }
+        });
+    }
+
+    /**
+     * Not cached, pages are views of the repository's sorted snapshot and cost nothing to make
+     */
+    public static List<Book> getAllBooks(final Integer offset, final Integer limit) {
+        return BookRepository.getAllBooks(offset, limit);
+    }
+
+    private static int weight(final Book book) {
+        return BOOK_OVERHEAD + (book.getSummary() != null ? book.getSummary().length() : 0);
+    }
+}
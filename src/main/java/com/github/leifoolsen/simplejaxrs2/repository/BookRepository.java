@@ -1,15 +1,24 @@
 package com.github.leifoolsen.simplejaxrs2.repository;
 
 import com.github.leifoolsen.simplejaxrs2.domain.Book;
-import com.google.common.base.MoreObjects;
+import com.github.leifoolsen.simplejaxrs2.tenant.Tenants;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
+import java.util.Collection;
 import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Map;
 
+/**
+ * The books of the current tenant, see Tenants: the static methods go to the Catalog of the tenant of the request
+ * this thread serves, or to the default catalog on any other thread. Listeners only hear the default catalog,
+ * the one that is cached, replicated, partitioned and fed to change subscribers.
+ */
 public class BookRepository {
+    public static final String CHANGE_LOG_CAPACITY = "simplejaxrs2.changes.capacity";
+
     public static final String ALMA_BOOKS    = "18468";
     public static final String DAMM          = "82040";
     public static final String TURNER        = "11181";
@@ -25,24 +34,8 @@ public class BookRepository {
     public static final String DOUBLEDAY     = "08575";
     public static final String PENGUIN       = "02419";
 
-    private static final  ConcurrentMap<String, String> publishers = new ConcurrentHashMap<String, String>() {{
-        put(ALMA_BOOKS   , "Alma Books");
-        put(DAMM         , "Damm");
-        put(TURNER       , "Turner Publishing Company");
-        put(HISTORY_PRESS, "The History Press");
-        put(PAX          , "Pax");
-        put(GYLDENDAL    , "Gyldendal");
-        put(VINTAGE      , "Vintage Books");
-        put(VINTAGE_UK   , "Vintage Books UK");
-        put(CAPPELEN     , "Cappelen");
-        put(CAPPELEN_DAMM, "Cappelen Damm");
-        put(PICADOR      , "Picador");
-        put(WEIDENFELD   , "Weidenfeld & Nicolson (Orion Publishing Co)");
-        put(DOUBLEDAY    , "Doubleday (Transworld Publishers Ltd)");
-        put(PENGUIN      , "Penguin Books Ltd");
-    }};
-
-    private static final ConcurrentMap<String, Book> bookRepository = new ConcurrentHashMap<String, Book>() {{
+    // The default catalog starts with these
+    private static final Map<String, Book> seed = new LinkedHashMap<String, Book>() {{
         put("9781846883668",
             Book.with("9781846883668")
                 .title("Travelling to Infinity: The True Story")
@@ -284,70 +277,160 @@ public class BookRepository {
         */
     }};
 
+    private static final Catalog defaultCatalog = new Catalog(Tenants.DEFAULT, Integer.MAX_VALUE,
+            Integer.getInteger(CHANGE_LOG_CAPACITY, 4096), seed.values());
+
     private BookRepository() {}
 
-    public static void addBook(final Book book) {
-        bookRepository.putIfAbsent(book.getIsbn(), book);
+    /**
+     * @return the catalog of the current tenant, see Tenants
+     */
+    public static Catalog catalog() {
+        return Tenants.current().getCatalog();
+    }
+
+    public static Catalog defaultCatalog() {
+        return defaultCatalog;
+    }
+
+    public static void addListener(final BookRepositoryListener listener) {
+        defaultCatalog.addListener(listener);
+    }
+
+    public static void removeListener(final BookRepositoryListener listener) {
+        defaultCatalog.removeListener(listener);
+    }
+
+    /**
+     * @return false if a book with the same ISBN is already in the repository
+     * @throws QuotaExceededException if the catalog is full
+     */
+    public static boolean addBook(final Book book) {
+        return catalog().addBook(book);
     }
 
     public static Book findBook(final String isbn) {
-        return bookRepository.get(isbn);
+        return catalog().findBook(isbn);
     }
 
-    public static boolean removeBook(final String isbn) {
-        return bookRepository.remove(isbn) != null ? true : false;
+    /**
+     * @return the book for each ISBN, in the same order, null where there is no such book
+     */
+    public static List<Book> findBooks(final List<String> isbns) {
+        return catalog().findBooks(isbns);
     }
 
-    public static void updateBook(final Book book) {
-        removeBook(book.getIsbn());
-        addBook(book);
+    public static boolean removeBook(final String isbn) {
+        return catalog().removeBook(isbn);
     }
 
-    public static String getPublisherName(final String isbn) {
-        return publishers.get(isbn.substring(3, 8));
+    /**
+     * Removes a book without recording a change, see Catalog.evictBook
+     */
+    public static boolean evictBook(final String isbn) {
+        return catalog().evictBook(isbn);
     }
 
-    public static List<Book> getBooksByPublisher(final String publisherName) {
-        List<Book> result = Lists.newArrayList();
+    /**
+     * @throws QuotaExceededException if the book is new and the catalog is full
+     */
+    public static void updateBook(final Book book) {
+        catalog().updateBook(book);
+    }
 
-        for(Book b : bookRepository.values()) {
-            final String pName = getPublisherName(b.getIsbn());
-            if(pName.startsWith(publisherName)) {
-                result.add(b);
+    /**
+     * Applies the writes, each to the catalog of the tenant it was made for, see Catalog.apply.
+     * WritePipeline batches writes of concurrent requests, of any tenant, into one call.
+     */
+    public static void apply(final List<Write> writes) {
+        final Map<Catalog, List<Write>> byCatalog = Maps.newLinkedHashMap();
+        for (Write write : writes) {
+            List<Write> toApply = byCatalog.get(write.catalog);
+            if (toApply == null) {
+                toApply = Lists.newArrayList();
+                byCatalog.put(write.catalog, toApply);
             }
+            toApply.add(write);
+        }
+        for (Map.Entry<Catalog, List<Write>> entry : byCatalog.entrySet()) {
+            entry.getKey().apply(entry.getValue());
         }
-        return result;
     }
 
-    public static List<Book> getBooksByTitle(final String title) {
-        List<Book> result = Lists.newArrayList();
+    /**
+     * Copies every book, by ISBN, into the given collection.
+     * @return the sequence of the last change the copy includes, see ChangeLog
+     */
+    public static long snapshot(final Collection<Book> into) {
+        return catalog().snapshot(into);
+    }
 
-        for(Book b : bookRepository.values()) {
-            if(title.equals(b.getTitle())) {
-                result.add(b);
-            }
+    /**
+     * Books per publisher, author and year, see BookStats
+     */
+    public static BookStats getStats() {
+        return catalog().getStats();
+    }
+
+    /**
+     * Titles and authors starting with the prefix, see SuggestIndex
+     */
+    public static List<SuggestIndex.Suggestion> suggest(final String prefix, final int limit) {
+        return catalog().suggest(prefix, limit);
+    }
+
+    /**
+     * Recent mutations, oldest first, see ChangeLog
+     */
+    public static ChangeLog getChanges() {
+        return catalog().getChanges();
+    }
+
+    /**
+     * Past versions of the books, see BookHistory
+     */
+    public static BookHistory getHistory() {
+        return catalog().getHistory();
+    }
+
+    /**
+     * @return the publisher of the book, null if the ISBN is in no range of the PublisherRegistry
+     */
+    public static String getPublisherName(final String isbn) {
+        return PublisherRegistry.find(isbn);
+    }
+
+    // The registry is shared by all catalogs
+    static void publishersChanged() {
+        for (Catalog catalog : Tenants.catalogs()) {
+            catalog.publishersChanged();
         }
-        return result;
     }
 
+    public static List<Book> getBooksByPublisher(final String publisherName) {
+        return catalog().getBooksByPublisher(publisherName);
+    }
+
+    public static List<Book> getBooksByTitle(final String title) {
+        return catalog().getBooksByTitle(title);
+    }
+
+    /**
+     * @return a page of books by ISBN. An unmodifiable view of the current snapshot, it does not change
+     * with later writes
+     */
     public static List<Book> getAllBooks(Integer offset, Integer limit) {
-        List<Book> result = Lists.newArrayList();
+        return catalog().getAllBooks(offset, limit);
+    }
 
-        int o = MoreObjects.firstNonNull(offset, 0);
-        int l = MoreObjects.firstNonNull(limit, bookRepository.size());
-        int i = 0;
-        int n = 0;
-        for(Book b : bookRepository.values()) {
-            if(i++ >= o) {
-                if (n++ < l) {
-                    result.add(b);
-                }
-            }
-        }
-        return result;
+    /**
+     * @return a page of books by ISBN as they were right after the change with the sequence, see BookHistory
+     */
+    public static List<Book> getAllBooksAsOf(final long sequence, Integer offset, Integer limit) {
+        return catalog().getAllBooksAsOf(sequence, offset, limit);
     }
 
     public static int countBooks() {
-        return bookRepository.size();
+        return catalog().countBooks();
     }
 }
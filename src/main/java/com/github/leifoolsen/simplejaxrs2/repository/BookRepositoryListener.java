@@ -0,0 +1,12 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+
+/**
+ * Notified after each BookRepository mutation, on the mutating thread.
+ */
+public interface BookRepositoryListener {
+    void bookAdded(Book book);
+    void bookUpdated(Book previous, Book book);
+    void bookRemoved(Book book);
+}
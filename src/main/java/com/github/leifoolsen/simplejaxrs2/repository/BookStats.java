@@ -0,0 +1,101 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Number of books per publisher, per author and per year published, kept up to date by BookRepository as part
+ * of every mutation. Reading the counts costs the same whatever the size of the catalog.
+ *
+ * Counts are only changed under the repository's write lock, so there is one writer at a time and plain
+ * concurrent maps do; striped counters would add nothing. Each count is exact, but counts read one after the
+ * other may straddle a concurrent mutation.
+ */
+public class BookStats {
+    // Books in no range of the PublisherRegistry are counted under the registrant code of their ISBN
+    private final ConcurrentMap<String, Integer> publishers = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<String, Integer> authors = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<Integer, Integer> years = new ConcurrentHashMap<Integer, Integer>();
+    private volatile int books;
+
+    BookStats() {}
+
+    static BookStats of(final Iterable<Book> books) {
+        final BookStats stats = new BookStats();
+        for (Book book : books) {
+            stats.added(book);
+        }
+        return stats;
+    }
+
+    void added(final Book book) {
+        count(book, 1);
+    }
+
+    void removed(final Book book) {
+        count(book, -1);
+    }
+
+    /**
+     * Moves the previous version's counts to the new one, e.g. when a book changes publisher
+     */
+    void updated(final Book previous, final Book book) {
+        count(previous, -1);
+        count(book, 1);
+    }
+
+    public int getBooks() {
+        return books;
+    }
+
+    public Map<String, Integer> getPublishers() {
+        return ImmutableSortedMap.copyOf(publishers);
+    }
+
+    public Map<String, Integer> getAuthors() {
+        return ImmutableSortedMap.copyOf(authors);
+    }
+
+    public Map<Integer, Integer> getYears() {
+        return ImmutableSortedMap.copyOf(years);
+    }
+
+    private void count(final Book book, final int delta) {
+        books += delta;
+        add(publishers, publisher(book.getIsbn()), delta);
+        if (book.getAuthor() != null) {
+            add(authors, book.getAuthor(), delta);
+        }
+        final Date published = book.getPublished();
+        if (published != null) {
+            final Calendar calendar = Calendar.getInstance();
+            calendar.setTime(published);
+            add(years, calendar.get(Calendar.YEAR), delta);
+        }
+    }
+
+    private static String publisher(final String isbn) {
+        if (isbn.length() < 8) {
+            return isbn;
+        }
+        final String name = BookRepository.getPublisherName(isbn);
+        return name != null ? name : isbn.substring(3, 8);
+    }
+
+    private static <K> void add(final ConcurrentMap<K, Integer> counts, final K key, final int delta) {
+        final Integer count = counts.get(key);
+        final int n = (count != null ? count : 0) + delta;
+        if (n == 0) {
+            counts.remove(key);
+        }
+        else {
+            counts.put(key, n);
+        }
+    }
+}
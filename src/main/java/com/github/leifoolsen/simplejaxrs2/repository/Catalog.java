@@ -0,0 +1,451 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.tracing.Span;
+import com.github.leifoolsen.simplejaxrs2.tracing.Tracer;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The books of one tenant, with their change log, history, stats, suggest index and sorted snapshot, all kept
+ * in step under a write lock of the catalog's own. Catalogs share nothing but the PublisherRegistry, so writes to one
+ * never wait for another. BookRepository serves the catalog of the current tenant, see Tenants.
+ *
+ * A catalog holds at most maxBooks books. Adding a book to a full catalog fails with QuotaExceededException,
+ * or, for a Write, leaves it not applied and over quota.
+ */
+public class Catalog {
+    private static final Logger logger = LoggerFactory.getLogger(Catalog.class);
+
+    private static final Comparator<Book> BY_ISBN = new Comparator<Book>() {
+        @Override
+        public int compare(final Book a, final Book b) {
+            return a.getIsbn().compareTo(b.getIsbn());
+        }
+    };
+
+    private final String name;
+    private final int maxBooks;
+    private final ConcurrentMap<String, Book> books = new ConcurrentHashMap<String, Book>();
+    private final List<BookRepositoryListener> listeners = new CopyOnWriteArrayList<BookRepositoryListener>();
+
+    // Mutations and their change log entries are made under one lock, so the log order is the mutation order
+    private final Object writeLock = new Object();
+    private final ChangeLog changes;
+    private final BookHistory history;
+    private volatile BookStats stats;
+    private final SuggestIndex suggestions;
+
+    // Every book by ISBN as of a change log sequence, published by writers, see publish()
+    private volatile Snapshot sorted;
+    private final Object sortLock = new Object();
+    private Map<String, Book> unsorted = new HashMap<String, Book>();  // under the write lock, null when removed
+
+    public Catalog(final String name, final int maxBooks, final int changeLogCapacity, final Collection<Book> initial) {
+        this.name = name;
+        this.maxBooks = maxBooks;
+        changes = new ChangeLog(changeLogCapacity);
+        // Reads as of sequences as far back as change subscribers can replay by default
+        history = new BookHistory(name, Integer.getInteger(BookHistory.MAX_VERSIONS, 16),
+                Long.getLong(BookHistory.RETAINED, changeLogCapacity));
+        for (Book book : initial) {
+            books.put(book.getIsbn(), book);
+            history.record(new Change(0, Change.Type.ADDED, book));
+        }
+        stats = BookStats.of(books.values());
+        suggestions = SuggestIndex.of(books.values());
+        final Book[] all = books.values().toArray(new Book[0]);
+        Arrays.sort(all, BY_ISBN);
+        sorted = new Snapshot(changes.lastSequence(), Collections.unmodifiableList(Arrays.asList(all)));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxBooks() {
+        return maxBooks;
+    }
+
+    public void addListener(final BookRepositoryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final BookRepositoryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stops collecting the history of a catalog that is dropped, see BookHistory.close
+     */
+    public void close() {
+        history.close();
+    }
+
+    /**
+     * @return false if a book with the same ISBN is already in the catalog
+     * @throws QuotaExceededException if the catalog is full
+     */
+    public boolean addBook(final Book book) {
+        synchronized (writeLock) {
+            if (books.containsKey(book.getIsbn())) {
+                return false;
+            }
+            checkQuota();
+            books.put(book.getIsbn(), book);
+            recordAdded(book);
+        }
+        publish();
+        notifyListeners(null, book);
+        return true;
+    }
+
+    public Book findBook(final String isbn) {
+        return books.get(isbn);
+    }
+
+    /**
+     * @return the book for each ISBN, in the same order, null where there is no such book
+     */
+    public List<Book> findBooks(final List<String> isbns) {
+        final List<Book> result = Lists.newArrayListWithCapacity(isbns.size());
+        for (String isbn : isbns) {
+            result.add(isbn != null ? books.get(isbn) : null);
+        }
+        return result;
+    }
+
+    public boolean removeBook(final String isbn) {
+        final Book removed;
+        synchronized (writeLock) {
+            removed = books.remove(isbn);
+            if(removed == null) {
+                return false;
+            }
+            recordRemoved(removed);
+        }
+        publish();
+        notifyListeners(removed, null);
+        return true;
+    }
+
+    /**
+     * Removes a book without recording a change, for a book that has moved elsewhere rather than been deleted,
+     * see Cluster. Its history goes with it, change subscribers hear nothing, and listeners hear it removed.
+     */
+    public boolean evictBook(final String isbn) {
+        final Book evicted;
+        synchronized (writeLock) {
+            evicted = books.remove(isbn);
+            if (evicted == null) {
+                return false;
+            }
+            history.forget(isbn);
+            stats.removed(evicted);
+            suggestions.removed(evicted);
+            unsorted.put(isbn, null);
+        }
+        publish();
+        notifyListeners(evicted, null);
+        return true;
+    }
+
+    /**
+     * @throws QuotaExceededException if the book is new and the catalog is full
+     */
+    public void updateBook(final Book book) {
+        // A single put, so readers never observe the book missing while it is replaced
+        final Book previous;
+        synchronized (writeLock) {
+            if (!books.containsKey(book.getIsbn())) {
+                checkQuota();
+            }
+            previous = books.put(book.getIsbn(), book);
+            recordPut(previous, book);
+        }
+        publish();
+        notifyListeners(previous, book);
+    }
+
+    /**
+     * Applies the writes in order, all under one acquisition of the write lock, publishes one snapshot for all of
+     * them, then notifies listeners in the same order. See Write.isApplied for the outcome of each.
+     */
+    public void apply(final List<Write> writes) {
+        synchronized (writeLock) {
+            for (Write write : writes) {
+                applyLocked(write);
+            }
+        }
+        publish();
+        for (Write write : writes) {
+            if (write.isApplied()) {
+                notifyListeners(write.getPrevious(), write.type == Write.Type.REMOVE ? null : write.book);
+            }
+        }
+    }
+
+    private void applyLocked(final Write write) {
+        switch (write.type) {
+            case ADD:
+                if (books.containsKey(write.isbn)) {
+                    break;
+                }
+                if (books.size() >= maxBooks) {
+                    write.overQuota();
+                    break;
+                }
+                books.put(write.isbn, write.book);
+                recordAdded(write.book);
+                write.applied(null);
+                break;
+            case PUT:
+                if (!books.containsKey(write.isbn) && books.size() >= maxBooks) {
+                    write.overQuota();
+                    break;
+                }
+                final Book previous = books.put(write.isbn, write.book);
+                recordPut(previous, write.book);
+                write.applied(previous);
+                break;
+            case REPLACE:
+                final Book replaced = books.replace(write.isbn, write.book);
+                if (replaced != null) {
+                    recordPut(replaced, write.book);
+                    write.applied(replaced);
+                }
+                break;
+            case REMOVE:
+                final Book removed = books.remove(write.isbn);
+                if (removed != null) {
+                    recordRemoved(removed);
+                    write.applied(removed);
+                }
+                break;
+        }
+    }
+
+    // Under the write lock: the quota, the change log and the views kept in step with it
+
+    private void checkQuota() {
+        if (books.size() >= maxBooks) {
+            throw new QuotaExceededException("Catalog " + name + " is full, it holds at most " + maxBooks + " books");
+        }
+    }
+
+    private void recordAdded(final Book book) {
+        history.record(changes.append(Change.Type.ADDED, book));
+        unsorted.put(book.getIsbn(), book);
+        stats.added(book);
+        suggestions.added(book);
+    }
+
+    private void recordPut(final Book previous, final Book book) {
+        if (previous == null) {
+            recordAdded(book);
+            return;
+        }
+        history.record(changes.append(Change.Type.UPDATED, book));
+        unsorted.put(book.getIsbn(), book);
+        stats.updated(previous, book);
+        suggestions.updated(previous, book);
+    }
+
+    private void recordRemoved(final Book removed) {
+        history.record(changes.append(Change.Type.REMOVED, removed));
+        unsorted.put(removed.getIsbn(), null);
+        stats.removed(removed);
+        suggestions.removed(removed);
+    }
+
+    // Outside the write lock, book is null when previous was removed. The write is applied by now, a listener
+    // that fails must neither fail it nor keep the other listeners from hearing of it
+    private void notifyListeners(final Book previous, final Book book) {
+        for (BookRepositoryListener listener : listeners) {
+            try {
+                if (book == null) {
+                    listener.bookRemoved(previous);
+                }
+                else if(previous == null) {
+                    listener.bookAdded(book);
+                }
+                else {
+                    listener.bookUpdated(previous, book);
+                }
+            }
+            catch (RuntimeException e) {
+                logger.error("Listener {} failed on a change of {}", listener,
+                        book != null ? book.getIsbn() : previous.getIsbn(), e);
+            }
+        }
+    }
+
+    /**
+     * Copies every book, by ISBN, into the given collection.
+     * @return the sequence of the last change the copy includes, see ChangeLog
+     */
+    public long snapshot(final Collection<Book> into) {
+        final Snapshot snapshot = sorted;
+        into.addAll(snapshot.books);
+        return snapshot.sequence;
+    }
+
+    /**
+     * Books per publisher, author and year, see BookStats
+     */
+    public BookStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Titles and authors starting with the prefix, see SuggestIndex
+     */
+    public List<SuggestIndex.Suggestion> suggest(final String prefix, final int limit) {
+        return suggestions.suggest(prefix, limit);
+    }
+
+    /**
+     * Recent mutations, oldest first, see ChangeLog
+     */
+    public ChangeLog getChanges() {
+        return changes;
+    }
+
+    /**
+     * Past versions of the books, see BookHistory
+     */
+    public BookHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * @return a page of the books by ISBN as they were right after the change with the sequence
+     * @throws HistoryPrunedException if versions that read needs have been pruned
+     */
+    public List<Book> getAllBooksAsOf(final long sequence, final Integer offset, final Integer limit) {
+        return page(history.asOf(sequence), offset, limit);
+    }
+
+    // Publisher stats are by name, recount them when names or ranges change
+    void publishersChanged() {
+        synchronized (writeLock) {
+            stats = BookStats.of(books.values());
+        }
+    }
+
+    public List<Book> getBooksByPublisher(final String publisherName) {
+        List<Book> result = Lists.newArrayList();
+
+        final Span span = Tracer.start("BookRepository.getBooksByPublisher");
+        try {
+            for(Book b : sorted.books) {
+                final String pName = BookRepository.getPublisherName(b.getIsbn());
+                if(pName != null && pName.startsWith(publisherName)) {
+                    result.add(b);
+                }
+            }
+        }
+        finally {
+            span.end();
+        }
+        return result;
+    }
+
+    public List<Book> getBooksByTitle(final String title) {
+        List<Book> result = Lists.newArrayList();
+
+        for(Book b : sorted.books) {
+            if(title.equals(b.getTitle())) {
+                result.add(b);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a page of books by ISBN. An unmodifiable view of the current snapshot, it does not change
+     * with later writes
+     */
+    public List<Book> getAllBooks(Integer offset, Integer limit) {
+        return page(sorted.books, offset, limit);
+    }
+
+    private static List<Book> page(final List<Book> books, final Integer offset, final Integer limit) {
+        int from = Math.min(Math.max(MoreObjects.firstNonNull(offset, 0), 0), books.size());
+        int l = Math.max(MoreObjects.firstNonNull(limit, books.size()), 0);
+        return books.subList(from, (int) Math.min(books.size(), (long) from + l));
+    }
+
+    public int countBooks() {
+        return books.size();
+    }
+
+    /**
+     * Merges the books changed since the last snapshot into a new one, and publishes it for readers, who never
+     * lock. Called by writers after the write lock, before they return, so a client reads its own writes. A batch of
+     * writes costs one merge, and a writer that waits here finds its changes merged by the one before it.
+     * The changes are taken under the write lock, so a snapshot is a point in time, and merged outside it.
+     */
+    private void publish() {
+        synchronized (sortLock) {
+            final Map<String, Book> changed;
+            final long sequence;
+            synchronized (writeLock) {
+                if (unsorted.isEmpty()) {
+                    return;
+                }
+                changed = unsorted;
+                unsorted = new HashMap<String, Book>();
+                sequence = changes.lastSequence();
+            }
+            final Span span = Tracer.start("BookRepository.sort");
+            try {
+                final String[] isbns = changed.keySet().toArray(new String[0]);
+                Arrays.sort(isbns);
+                final List<Book> previous = sorted.books;
+                final List<Book> merged = Lists.newArrayListWithCapacity(previous.size() + isbns.length);
+                int i = 0;
+                for (String isbn : isbns) {
+                    while (i < previous.size() && previous.get(i).getIsbn().compareTo(isbn) < 0) {
+                        merged.add(previous.get(i++));
+                    }
+                    if (i < previous.size() && previous.get(i).getIsbn().equals(isbn)) {
+                        i++;
+                    }
+                    final Book book = changed.get(isbn);
+                    if (book != null) {
+                        merged.add(book);
+                    }
+                }
+                merged.addAll(previous.subList(i, previous.size()));
+                sorted = new Snapshot(sequence, Collections.unmodifiableList(merged));
+            }
+            finally {
+                span.end();
+            }
+        }
+    }
+
+    private static class Snapshot {
+        final long sequence;
+        final List<Book> books;
+
+        Snapshot(final long sequence, final List<Book> books) {
+            this.sequence = sequence;
+            this.books = books;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+
+/**
+ * One BookRepository mutation, as recorded in the ChangeLog.
+ */
+public class Change {
+    public enum Type { ADDED, UPDATED, REMOVED }
+
+    private final long sequence;
+    private final Type type;
+    private final Book book;
+
+    Change(final long sequence, final Type type, final Book book) {
+        this.sequence = sequence;
+        this.type = type;
+        this.book = book;
+    }
+
+    public long getSequence() { return sequence; }
+    public Type getType() { return type; }
+
+    /**
+     * The book after the change, or the removed book for REMOVED
+     */
+    public Book getBook() { return book; }
+}
@@ -0,0 +1,71 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bounded ring buffer of the most recent repository changes, numbered from 1 without gaps.
+ * One writer at a time (BookRepository appends while holding its write lock), any number of readers.
+ * Readers never block the writer: a reader that falls more than the capacity behind has lost changes,
+ * which it can tell from firstSequence().
+ */
+public class ChangeLog {
+    private final Change[] ring;
+    private final int mask;
+    private volatile long lastSequence;  // written after the slot, so readers see a published slot
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public ChangeLog(final int capacity) {
+        Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30, "capacity out of range");
+        final int size = Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1;
+        ring = new Change[size];
+        mask = size - 1;
+    }
+
+    Change append(final Change.Type type, final Book book) {
+        final long sequence = lastSequence + 1;
+        final Change change = new Change(sequence, type, book);
+        ring[(int) (sequence & mask)] = change;
+        lastSequence = sequence;
+        return change;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return the oldest sequence still in the log, or lastSequence() + 1 if the log is empty
+     */
+    public long firstSequence() {
+        return Math.max(1, lastSequence - ring.length + 1);
+    }
+
+    /**
+     * @return up to max changes after the given sequence, oldest first. Stops short at changes overwritten
+     * by the writer; check firstSequence() to detect them.
+     */
+    public List<Change> since(final long sequence, final int max) {
+        final long last = lastSequence;
+        final long from = Math.max(sequence + 1, firstSequence());
+        if (from > last) {
+            return Collections.emptyList();
+        }
+        final long to = Math.min(last, from + max - 1);
+        final List<Change> changes = Lists.newArrayListWithCapacity((int) (to - from + 1));
+        for (long s = from; s <= to; s++) {
+            final Change change = ring[(int) (s & mask)];
+            if (change.getSequence() != s) {
+                break;  // overwritten while reading
+            }
+            changes.add(change);
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+/**
+ * Approximate access frequency of keys, used by ReadCache's frequency doorkeeper. A count-min sketch with four
+ * 4-bit counters per key, packed sixteen to a long. After a sample period all counters are halved, so old
+ * popularity fades away.
+ *
+ * Counters are updated without synchronization. A lost update under contention only makes an estimate
+ * slightly lower, which the admission decision tolerates.
+ * The sketch is the one of TinyLFU: A Highly Efficient Cache Admission Policy, http://arxiv.org/abs/1512.00727
+ */
+class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(final int expectedEntries) {
+        int n = 16;
+        while (n < expectedEntries && n < (1 << 30)) {
+            n <<= 1;
+        }
+        table = new long[n];
+        tableMask = n - 1;
+        sampleSize = 10 * n;
+    }
+
+    int frequency(final Object key) {
+        final int hash = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            final int index = indexOf(hash, i);
+            final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(final Object key) {
+        final int hash = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(final int index, final int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = additions >>> 1;
+    }
+
+    private int indexOf(final int hash, final int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static int spread(final int x) {
+        int h = ((x >>> 16) ^ x) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+}
@@ -0,0 +1,10 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+/**
+ * A read as of a sequence needed versions BookHistory has already pruned.
+ */
+public class HistoryPrunedException extends IllegalStateException {
+    public HistoryPrunedException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Publishers by ISBN-13 prefix, e.g. 97882054 for Gyldendal. ISBN registrant ranges differ in length, so an
+ * ISBN belongs to the publisher with the longest prefix it starts with.
+ *
+ * Prefixes are kept in a digit trie held in two arrays. A lookup walks one node per digit of the ISBN and
+ * allocates nothing. Changes are rare, so each one builds a new trie and publishes it in one volatile write;
+ * readers never lock. The registry is local to this node, it is neither replicated nor partitioned.
+ */
+public class PublisherRegistry {
+    public static final int MAX_PREFIX_LENGTH = 13;
+
+    private static final CharMatcher DIGITS = CharMatcher.inRange('0', '9');
+
+    private static volatile Trie trie = Trie.of(ImmutableSortedMap.<String, String>naturalOrder()
+            .put("978" + BookRepository.ALMA_BOOKS   , "Alma Books")
+            .put("978" + BookRepository.DAMM         , "Damm")
+            .put("978" + BookRepository.TURNER       , "Turner Publishing Company")
+            .put("978" + BookRepository.HISTORY_PRESS, "The History Press")
+            .put("978" + BookRepository.PAX          , "Pax")
+            .put("978" + BookRepository.GYLDENDAL    , "Gyldendal")
+            .put("978" + BookRepository.VINTAGE      , "Vintage Books")
+            .put("978" + BookRepository.VINTAGE_UK   , "Vintage Books UK")
+            .put("978" + BookRepository.CAPPELEN     , "Cappelen")
+            .put("978" + BookRepository.CAPPELEN_DAMM, "Cappelen Damm")
+            .put("978" + BookRepository.PICADOR      , "Picador")
+            .put("978" + BookRepository.WEIDENFELD   , "Weidenfeld & Nicolson (Orion Publishing Co)")
+            .put("978" + BookRepository.DOUBLEDAY    , "Doubleday (Transworld Publishers Ltd)")
+            .put("978" + BookRepository.PENGUIN      , "Penguin Books Ltd")
+            .build());
+    private static volatile int version;
+
+    private PublisherRegistry() {}
+
+    /**
+     * @return the name of the publisher with the longest prefix of the ISBN, null if there is none
+     */
+    public static String find(final CharSequence isbn) {
+        final Trie t = trie;
+        return t.names[t.match(isbn)];
+    }
+
+    /**
+     * @return the longest registered prefix of the ISBN, null if there is none
+     */
+    public static String findPrefix(final CharSequence isbn) {
+        final Trie t = trie;
+        return t.prefixes[t.match(isbn)];
+    }
+
+    /**
+     * @return the publisher registered for exactly this prefix, null if there is none
+     */
+    public static String get(final String prefix) {
+        return trie.publishers.get(prefix);
+    }
+
+    /**
+     * @return every publisher, by prefix
+     */
+    public static SortedMap<String, String> getAll() {
+        return trie.publishers;
+    }
+
+    /**
+     * @return false if the prefix was already registered, and the publisher is renamed
+     */
+    public static boolean put(final String prefix, final String name) {
+        checkPrefix(prefix);
+        Preconditions.checkArgument(name != null && !name.trim().isEmpty(), "Publisher name is missing");
+        final String previous;
+        synchronized (PublisherRegistry.class) {
+            final SortedMap<String, String> publishers = Maps.newTreeMap(trie.publishers);
+            previous = publishers.put(prefix, name.trim());
+            trie = Trie.of(publishers);
+            version++;
+        }
+        BookRepository.publishersChanged();
+        return previous == null;
+    }
+
+    /**
+     * @return false if the prefix was not registered
+     */
+    public static boolean remove(final String prefix) {
+        synchronized (PublisherRegistry.class) {
+            if (!trie.publishers.containsKey(prefix)) {
+                return false;
+            }
+            final SortedMap<String, String> publishers = Maps.newTreeMap(trie.publishers);
+            publishers.remove(prefix);
+            trie = Trie.of(publishers);
+            version++;
+        }
+        BookRepository.publishersChanged();
+        return true;
+    }
+
+    /**
+     * Changes whenever the registry does. Include it in cache keys of results that depend on publishers
+     */
+    public static int version() {
+        return version;
+    }
+
+    public static boolean isValidPrefix(final String prefix) {
+        return prefix != null && !prefix.isEmpty() && prefix.length() <= MAX_PREFIX_LENGTH
+                && DIGITS.matchesAllOf(prefix);
+    }
+
+    private static void checkPrefix(final String prefix) {
+        Preconditions.checkArgument(isValidPrefix(prefix),
+                "Prefix must be 1 to %s digits, was %s", MAX_PREFIX_LENGTH, prefix);
+    }
+
+    /**
+     * Node n has its children at children[n * 10 + digit], 0 where there is none; node 0 is the root.
+     * prefixes[n] and names[n] are the prefix and publisher ending at node n, if any.
+     */
+    static class Trie {
+        final ImmutableSortedMap<String, String> publishers;
+        final String[] prefixes;
+        final String[] names;
+        private final int[] children;
+
+        private Trie(final ImmutableSortedMap<String, String> publishers, final int[] children,
+                     final String[] prefixes, final String[] names) {
+            this.publishers = publishers;
+            this.children = children;
+            this.prefixes = prefixes;
+            this.names = names;
+        }
+
+        static Trie of(final Map<String, String> publishers) {
+            int capacity = 1;
+            for (String prefix : publishers.keySet()) {
+                capacity += prefix.length();
+            }
+            final int[] children = new int[capacity * 10];
+            final String[] prefixes = new String[capacity];
+            final String[] names = new String[capacity];
+            int nodes = 1;
+            for (Map.Entry<String, String> publisher : publishers.entrySet()) {
+                final String prefix = publisher.getKey();
+                int node = 0;
+                for (int i = 0; i < prefix.length(); i++) {
+                    final int slot = node * 10 + prefix.charAt(i) - '0';
+                    if (children[slot] == 0) {
+                        children[slot] = nodes++;
+                    }
+                    node = children[slot];
+                }
+                prefixes[node] = prefix;
+                names[node] = publisher.getValue();
+            }
+            return new Trie(ImmutableSortedMap.copyOf(publishers), children, prefixes, names);
+        }
+
+        /**
+         * @return the node of the longest prefix of the ISBN, 0 if there is none
+         */
+        int match(final CharSequence isbn) {
+            int found = 0;
+            int node = 0;
+            for (int i = 0, n = Math.min(isbn.length(), MAX_PREFIX_LENGTH); i < n; i++) {
+                final int digit = isbn.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                node = children[node * 10 + digit];
+                if (node == 0) {
+                    break;
+                }
+                if (names[node] != null) {
+                    found = node;
+                }
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+/**
+ * A book was to be added to a Catalog already holding as many books as it may.
+ */
+public class QuotaExceededException extends IllegalStateException {
+    public QuotaExceededException(final String message) {
+        super(message);
+    }
+}
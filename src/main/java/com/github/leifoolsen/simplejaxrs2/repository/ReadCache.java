@@ -0,0 +1,135 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Size bounded read cache with a frequency doorkeeper in front of it.
+ * <ul>
+ *     <li>Storage and eviction is a Guava cache, bounded by weight and expiring entries after a TTL.
+ *     Guava segments the cache, so reads and writes on different segments don't contend.</li>
+ *     <li>A frequency sketch counts every access. A loaded value is only admitted if its key has been asked
+ *     for before within the sample period, so one-off lookups and scans don't evict the hot entries. This is
+ *     a doorkeeper, not TinyLFU: Guava does not tell which entry an admission would evict, so the candidate's
+ *     frequency is not weighed against the victim's.</li>
+ *     <li>Misses go through a single flight group, so a miss storm on one key loads it once.</li>
+ *     <li>invalidate bumps the generation of the key's stripe, invalidateAll that of every key. A load that
+ *     started before an invalidation of its key is returned to its callers but not admitted, so a racing load
+ *     can't put stale data back, while loads of keys on other stripes are admitted as usual. The generation
+ *     is checked again after the put, an invalidation in between takes the value out again.</li>
+ * </ul>
+ */
+public class ReadCache<K, V> {
+    private static final int ADMISSION_FREQUENCY = 2;
+    private static final int GENERATION_STRIPES = 64;  // a power of two
+
+    private final Cache<K, V> cache;
+    private final FrequencySketch sketch;
+    private final SingleFlight<K, V> loads;
+    private final AtomicLong allGeneration = new AtomicLong();
+    private final AtomicLongArray keyGenerations = new AtomicLongArray(GENERATION_STRIPES);
+    private final StripedCounter rejected;
+
+    /**
+     * @param name used as metrics label
+     * @param maximumWeight maximum total weight of the cached values
+     * @param expectedEntries sizes the frequency sketch
+     * @param ttl time to live after a value was admitted
+     */
+    public ReadCache(final String name, final long maximumWeight, final int expectedEntries,
+                     final long ttl, final TimeUnit unit, final Weigher<K, V> weigher) {
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher(weigher)
+                .expireAfterWrite(ttl, unit)
+                .concurrencyLevel(Math.max(4, Runtime.getRuntime().availableProcessors() * 2))
+                .recordStats()
+                .build();
+        this.sketch = new FrequencySketch(expectedEntries);
+        this.loads = new SingleFlight<K, V>(name);
+
+        final String labels = MetricsRegistry.labels("cache", name);
+        rejected = MetricsRegistry.counter("cache_admission_rejected_total",
+                "Loaded values not admitted to the cache.", labels);
+
+        MetricsRegistry.gauge("cache_hits", "Cache hits.", labels, new Gauge() {
+            @Override
+            public double value() { return cache.stats().hitCount(); }
+        });
+        MetricsRegistry.gauge("cache_misses", "Cache misses.", labels, new Gauge() {
+            @Override
+            public double value() { return cache.stats().missCount(); }
+        });
+        MetricsRegistry.gauge("cache_evictions", "Entries evicted by size or TTL.", labels, new Gauge() {
+            @Override
+            public double value() { return cache.stats().evictionCount(); }
+        });
+        MetricsRegistry.gauge("cache_hit_ratio", "Cache hit ratio.", labels, new Gauge() {
+            @Override
+            public double value() { return cache.stats().hitRate(); }
+        });
+        MetricsRegistry.gauge("cache_entries", "Entries in the cache.", labels, new Gauge() {
+            @Override
+            public double value() { return cache.size(); }
+        });
+    }
+
+    /**
+     * Returns the cached value, or loads it. A loader returning null is not cached.
+     */
+    public V get(final K key, final Callable<V> loader) {
+        sketch.increment(key);
+
+        V value = cache.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+
+        final int stripe = stripe(key);
+        final long loadGeneration = generation(stripe);
+        value = loads.get(key, loader);
+        if (value != null) {
+            if (sketch.frequency(key) >= ADMISSION_FREQUENCY && generation(stripe) == loadGeneration) {
+                cache.put(key, value);
+                // An invalidation between the check and the put may have missed it, take it out again
+                if (generation(stripe) != loadGeneration) {
+                    cache.asMap().remove(key, value);
+                }
+            }
+            else {
+                rejected.increment();
+            }
+        }
+        return value;
+    }
+
+    public void invalidate(final K key) {
+        keyGenerations.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        allGeneration.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    // Both only grow, so the sum changes whenever either does
+    private long generation(final int stripe) {
+        return allGeneration.get() + keyGenerations.get(stripe);
+    }
+
+    private static int stripe(final Object key) {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the loader, callers arriving while it
+ * runs wait for and share its result. Nothing is cached, a call arriving after the loader completed runs
+ * it again.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+    private final StripedCounter calls;
+    private final StripedCounter coalesced;
+
+    /**
+     * @param name used as metrics label
+     */
+    public SingleFlight(final String name) {
+        final String labels = MetricsRegistry.labels("name", name);
+        calls = MetricsRegistry.counter("singleflight_calls_total", "Calls through a single flight group.", labels);
+        coalesced = MetricsRegistry.counter("singleflight_coalesced_total",
+                "Calls that shared the result of a call already in flight.", labels);
+    }
+
+    public V get(final K key, final Callable<V> loader) {
+        calls.increment();
+
+        FutureTask<V> task = inFlight.get(key);
+        if (task == null) {
+            final FutureTask<V> newTask = new FutureTask<V>(loader);
+            task = inFlight.putIfAbsent(key, newTask);
+            if (task == null) {
+                try {
+                    newTask.run();
+                }
+                finally {
+                    inFlight.remove(key, newTask);
+                }
+                return result(newTask);
+            }
+        }
+        coalesced.increment();
+        return result(task);
+    }
+
+    private static <V> V result(final FutureTask<V> task) {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return task.get();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;  // the loader is running on another request thread, keep waiting
+                }
+            }
+        }
+        catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new UncheckedExecutionException(e.getCause());
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
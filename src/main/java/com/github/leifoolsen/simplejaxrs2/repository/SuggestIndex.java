@@ -0,0 +1,198 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Typeahead over book titles and authors. Titles are found by their start and by the start of any later word,
+ * each author by their start, e.g. "hawking j" finds "Hawking, Jane". Keys are folded, see fold, so "bla" finds
+ * "Blåmann" and "sorlandet" finds "Sørlandet".
+ *
+ * Keys are held in one sorted skip list, a prefix is the range of keys from the prefix up to the prefix followed
+ * by the highest char. A lookup costs O(log n) plus the suggestions returned, and never locks. BookRepository
+ * keeps the index up to date as part of every mutation, under its write lock.
+ *
+ * An author has one key however many books they wrote, with a count of those books kept aside, so a prefix
+ * matching a prolific author does not walk an entry per book.
+ */
+public class SuggestIndex {
+    public enum Field { TITLE, AUTHOR }
+
+    private static final char SEPARATOR = '\u0000';  // fold never returns it, so keys of different texts never mix
+
+    private static final Splitter AUTHOR_SPLITTER = Splitter.on(';').trimResults().omitEmptyStrings();
+
+    private final ConcurrentSkipListMap<String, Suggestion> entries = new ConcurrentSkipListMap<String, Suggestion>();
+    private final Map<String, Integer> authorBooks = Maps.newHashMap();  // by folded author, only mutations use it
+
+    SuggestIndex() {}
+
+    static SuggestIndex of(final Iterable<Book> books) {
+        final SuggestIndex index = new SuggestIndex();
+        for (Book book : books) {
+            index.added(book);
+        }
+        return index;
+    }
+
+    void added(final Book book) {
+        if (book.getTitle() != null) {
+            final Suggestion title = new Suggestion(book.getTitle(), Field.TITLE, book.getIsbn());
+            final String folded = fold(book.getTitle());
+            entries.put(key(folded, Field.TITLE, book.getIsbn()), title);
+            for (int i = folded.indexOf(' '); i >= 0; i = folded.indexOf(' ', i + 1)) {
+                entries.put(key(folded.substring(i + 1), Field.TITLE, book.getIsbn()), title);
+            }
+        }
+        for (Map.Entry<String, String> author : authors(book).entrySet()) {
+            final Integer count = authorBooks.get(author.getKey());
+            if (count == null) {
+                entries.put(key(author.getKey(), Field.AUTHOR, ""),
+                        new Suggestion(author.getValue(), Field.AUTHOR, null));
+            }
+            authorBooks.put(author.getKey(), count == null ? 1 : count + 1);
+        }
+    }
+
+    void removed(final Book book) {
+        if (book.getTitle() != null) {
+            final String folded = fold(book.getTitle());
+            entries.remove(key(folded, Field.TITLE, book.getIsbn()));
+            for (int i = folded.indexOf(' '); i >= 0; i = folded.indexOf(' ', i + 1)) {
+                entries.remove(key(folded.substring(i + 1), Field.TITLE, book.getIsbn()));
+            }
+        }
+        for (String folded : authors(book).keySet()) {
+            final Integer count = authorBooks.get(folded);
+            if (count == null) {
+                continue;
+            }
+            if (count == 1) {
+                authorBooks.remove(folded);
+                entries.remove(key(folded, Field.AUTHOR, ""));
+            }
+            else {
+                authorBooks.put(folded, count - 1);
+            }
+        }
+    }
+
+    void updated(final Book previous, final Book book) {
+        removed(previous);
+        added(book);
+    }
+
+    /**
+     * @return up to limit titles and authors starting with the prefix, by folded text. Each title and each
+     * author only once
+     */
+    public List<Suggestion> suggest(final String prefix, final int limit) {
+        final List<Suggestion> result = Lists.newArrayList();
+        final String folded = fold(prefix);
+        if (folded.isEmpty() || limit <= 0) {
+            return result;
+        }
+        final ConcurrentNavigableMap<String, Suggestion> range =
+                entries.subMap(folded, true, folded + Character.MAX_VALUE, false);
+
+        final Set<String> seen = Sets.newHashSet();  // a title has a key per word, an author only one
+        for (Suggestion suggestion : range.values()) {
+            if (suggestion.field == Field.AUTHOR || seen.add(suggestion.isbn)) {
+                result.add(suggestion);
+                if (result.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lower case, without accents and apostrophes, and with every other run of chars that are not letters or
+     * digits made a single space. Letters that do not decompose are spelled out: æ as ae, ø as o and ß as ss.
+     */
+    static String fold(final String text) {
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        final StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            final char c = Character.toLowerCase(decomposed.charAt(i));
+            if (Character.getType(c) == Character.NON_SPACING_MARK || c == '\'' || c == '\u2019') {
+                continue;
+            }
+            if (!Character.isLetterOrDigit(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            switch (c) {
+                case '\u00e6': sb.append("ae"); break;  // æ
+                case '\u00f8': sb.append('o'); break;   // ø
+                case '\u00df': sb.append("ss"); break;  // ß
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Several authors are separated by semicolons, e.g. "Gribbin, John; White, Michael". Folded to as written
+    private static Map<String, String> authors(final Book book) {
+        if (book.getAuthor() == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> authors = Maps.newLinkedHashMap();
+        for (String author : AUTHOR_SPLITTER.split(book.getAuthor())) {
+            final String folded = fold(author);
+            if (!authors.containsKey(folded)) {
+                authors.put(folded, author);
+            }
+        }
+        return authors;
+    }
+
+    // Title keys end with the ISBN, author keys with nothing
+    private static String key(final String folded, final Field field, final String isbn) {
+        return folded + SEPARATOR + field.ordinal() + isbn;
+    }
+
+    public static class Suggestion {
+        private final String text;
+        private final Field field;
+        private final String isbn;
+
+        Suggestion(final String text, final Field field, final String isbn) {
+            this.text = text;
+            this.field = field;
+            this.isbn = isbn;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        /**
+         * @return the book of a title, null for an author
+         */
+        public String getIsbn() {
+            return isbn;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+
+/**
+ * One BookRepository mutation to apply, see BookRepository.apply and WritePipeline.
+ * Applied to the catalog of the tenant current when it is made, see Tenants.
+ */
+public class Write {
+    public enum Type {
+        ADD,      // if there is no book with the ISBN
+        PUT,      // add or replace
+        REPLACE,  // if there is a book with the ISBN
+        REMOVE    // if there is a book with the ISBN
+    }
+
+    final Type type;
+    final String isbn;
+    final Book book;
+    final Catalog catalog;
+
+    // Set by the catalog under its write lock, read after apply returns
+    private boolean applied;
+    private boolean overQuota;
+    private Book previous;
+
+    private Write(final Type type, final String isbn, final Book book) {
+        this.type = type;
+        this.isbn = isbn;
+        this.book = book;
+        this.catalog = BookRepository.catalog();
+    }
+
+    public static Write add(final Book book) {
+        return new Write(Type.ADD, book.getIsbn(), book);
+    }
+
+    public static Write put(final Book book) {
+        return new Write(Type.PUT, book.getIsbn(), book);
+    }
+
+    public static Write replace(final Book book) {
+        return new Write(Type.REPLACE, book.getIsbn(), book);
+    }
+
+    public static Write remove(final String isbn) {
+        return new Write(Type.REMOVE, isbn, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return whether the write changed the repository, false when its condition did not hold
+     */
+    public boolean isApplied() {
+        return applied;
+    }
+
+    /**
+     * @return whether the write was not applied because it would add a book to a full catalog
+     */
+    public boolean isOverQuota() {
+        return overQuota;
+    }
+
+    /**
+     * @return the book replaced or removed by the write, null if none
+     */
+    public Book getPrevious() {
+        return previous;
+    }
+
+    void overQuota() {
+        this.overQuota = true;
+    }
+
+    void applied(final Book previous) {
+        this.applied = true;
+        this.previous = previous;
+    }
+}
@@ -0,0 +1,213 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Lifecycle;
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.Histogram;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Group commit in front of BookRepository. Request threads queue writes on a lock free queue and get a
+ * future; a single writer thread takes them off in batches and applies each batch with one BookRepository.apply,
+ * taking the write lock once for the whole batch. Futures complete when their batch is applied, one task per
+ * batch on a small completion pool rather than the writer thread, so callbacks writing responses never hold up
+ * the next batch.
+ *
+ * A batch is whatever is queued when the writer gets to it, up to MAX_BATCH writes. With MAX_DELAY_MICROS
+ * above 0 the writer waits up to that long after the first write of a batch for more, trading latency for
+ * larger batches under moderate load.
+ *
+ * At most MAX_PENDING writes are queued or being applied. Writes submitted beyond that fail at once with
+ * WritesBackedUpException, rather than queue up for longer than any client would wait. A batch that fails fails the
+ * futures of its writes, and the writer goes on with the next one.
+ */
+public class WritePipeline {
+    public static final String MAX_BATCH = "simplejaxrs2.writes.max-batch";
+    public static final String MAX_DELAY_MICROS = "simplejaxrs2.writes.max-delay-us";
+    public static final String MAX_PENDING = "simplejaxrs2.writes.max-pending";
+
+    private static final Logger logger = LoggerFactory.getLogger(WritePipeline.class);
+
+    private static final long FLUSH_POLL_MILLIS = 10;
+    private static final long FLUSH_TIMEOUT_MILLIS = 10000;
+    private static final int COMPLETION_THREADS = 4;
+
+    private static final int maxBatch = Math.max(1, Integer.getInteger(MAX_BATCH, 256));
+    private static final long maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(Long.getLong(MAX_DELAY_MICROS, 0));
+    private static final int maxPending = Math.max(1, Integer.getInteger(MAX_PENDING, 10000));
+
+    private static final Queue<Pending> queue = new ConcurrentLinkedQueue<Pending>();
+    private static final AtomicInteger pending = new AtomicInteger();  // queued or in the batch being applied
+
+    private static final ExecutorService completions = Executors.newFixedThreadPool(COMPLETION_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("book-write-completion-%d").setDaemon(true).build());
+
+    private static final StripedCounter writes = MetricsRegistry.counter("book_writes_total",
+            "Writes applied by the write pipeline.", "");
+    private static final StripedCounter batches = MetricsRegistry.counter("book_write_batches_total",
+            "Batches applied by the write pipeline.", "");
+    private static final StripedCounter rejected = MetricsRegistry.counter("book_writes_rejected_total",
+            "Writes turned away because the write pipeline was full.", "");
+    private static final Histogram latency = MetricsRegistry.histogram("book_write_latency_seconds",
+            "Time from queueing a write until its batch is applied.", "");
+
+    private static final Thread writer;
+
+    static {
+        MetricsRegistry.gauge("book_writes_pending", "Writes queued or being applied.", "", new Gauge() {
+            @Override
+            public double value() { return pending.get(); }
+        });
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "book-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        // Requests cut off by shutdown may have left writes behind
+        Lifecycle.onStop(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    private WritePipeline() {}
+
+    /**
+     * @return completes with Write.isApplied when the batch the write is in has been applied, or fails with
+     * WritesBackedUpException if the pipeline is full
+     */
+    public static ListenableFuture<Boolean> submit(final Write write) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            rejected.increment();
+            return Futures.immediateFailedFuture(
+                    new WritesBackedUpException(maxPending + " writes are already pending"));
+        }
+        final Pending p = new Pending(write);
+        queue.offer(p);
+        LockSupport.unpark(writer);
+        return p.future;
+    }
+
+    /**
+     * Waits, for a while, until every write submitted so far is applied
+     */
+    public static void flush() {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MILLIS);
+        try {
+            while (pending.get() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(FLUSH_POLL_MILLIS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pending.get() > 0) {
+            logger.warn("{} writes still pending after flush", pending.get());
+        }
+    }
+
+    private static void write() {
+        final List<Pending> batch = Lists.newArrayListWithCapacity(maxBatch);
+        while (true) {
+            final Pending first = queue.poll();
+            if (first == null) {
+                LockSupport.park(WritePipeline.class);  // submit unparks, a permit given before we park is kept
+                continue;
+            }
+            batch.add(first);
+            final long deadline = first.queuedAt + maxDelayNanos;
+            while (batch.size() < maxBatch) {
+                final Pending next = queue.poll();
+                if (next != null) {
+                    batch.add(next);
+                    continue;
+                }
+                final long wait = deadline - System.nanoTime();
+                if (wait <= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(WritePipeline.class, wait);
+            }
+            try {
+                commit(batch);
+            }
+            catch (Throwable t) {
+                // commit fails the batch's futures itself, this is the writer staying alive whatever went wrong
+                logger.error("Committing a batch of {} writes failed", batch.size(), t);
+            }
+            batch.clear();
+        }
+    }
+
+    private static void commit(final List<Pending> batch) {
+        final List<Write> toApply = Lists.newArrayListWithCapacity(batch.size());
+        for (Pending p : batch) {
+            toApply.add(p.write);
+        }
+        Throwable failure = null;
+        try {
+            BookRepository.apply(toApply);
+        }
+        catch (Throwable t) {
+            logger.error("Applying a batch of {} writes failed", batch.size(), t);
+            failure = t;
+        }
+        final List<Pending> applied = Lists.newArrayList(batch);  // the writer reuses the batch list
+        pending.addAndGet(-batch.size());
+
+        final long now = System.nanoTime();
+        batches.increment();
+        writes.add(batch.size());
+        for (Pending p : batch) {
+            latency.observe(now - p.queuedAt);
+        }
+        final Throwable f = failure;
+        completions.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Pending p : applied) {
+                    if (f != null) {
+                        p.future.setException(f);
+                    }
+                    else {
+                        p.future.set(p.write.isApplied());
+                    }
+                }
+            }
+        });
+    }
+
+    private static class Pending {
+        final Write write;
+        final long queuedAt = System.nanoTime();
+        final SettableFuture<Boolean> future = SettableFuture.create();
+
+        Pending(final Write write) {
+            this.write = write;
+        }
+    }
+}
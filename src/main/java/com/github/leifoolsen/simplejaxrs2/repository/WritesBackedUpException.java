@@ -0,0 +1,10 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+/**
+ * A write was turned away because WritePipeline already holds as many writes as it may.
+ */
+public class WritesBackedUpException extends IllegalStateException {
+    public WritesBackedUpException(final String message) {
+        super(message);
+    }
+}
@@ -1,5 +1,16 @@
 package com.github.leifoolsen.simplejaxrs2.rest.application;
 
+import com.github.leifoolsen.simplejaxrs2.metrics.LogbackMetrics;
+import com.github.leifoolsen.simplejaxrs2.rest.filter.MetricsFilter;
+import com.github.leifoolsen.simplejaxrs2.rest.filter.PartitionRoutingFilter;
+import com.github.leifoolsen.simplejaxrs2.rest.filter.RateLimitFilter;
+import com.github.leifoolsen.simplejaxrs2.rest.filter.ReplicaRoutingFilter;
+import com.github.leifoolsen.simplejaxrs2.rest.filter.TenantFilter;
+import com.github.leifoolsen.simplejaxrs2.rest.filter.TracingEventListener;
+import com.github.leifoolsen.simplejaxrs2.rest.provider.BookJsonProvider;
+import com.github.leifoolsen.simplejaxrs2.rest.provider.BookListJsonProvider;
+import com.github.leifoolsen.simplejaxrs2.rest.provider.BookProtobufProvider;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.server.ServerProperties;
 import org.slf4j.Logger;
@@ -42,6 +53,39 @@ public class ApplicationConfig extends ResourceConfig {
         // See: https://jersey.java.net/documentation/latest/user-guide.html#bv.ValidationError
         property(ServerProperties.BV_SEND_ERROR_IN_RESPONSE, true);
 
+        // Request latency, status code and in-flight metrics. Exposed by MetricsResource at /api/metrics
+        register(MetricsFilter.class);
+        LogbackMetrics.register();
+
+        // Spans for Jersey's phases of sampled requests, see Tracer. Served at /api/traces
+        register(TracingEventListener.class);
+
+        // Per client and per route token buckets, and an adaptive limit on requests in flight.
+        // An instance, registered by class Jersey makes one per contract, and the response filter
+        // would release slots in a limiter the request filter never acquired them from
+        register(new RateLimitFilter());
+
+        // The tenant of a request, by X-Tenant header or tenants/{tenant}/ path prefix, see Tenants.
+        // An instance, the request filter takes slots the event listener gives back
+        register(new TenantFilter());
+
+        // On a replica, writes and stale reads go to the primary, see Replication
+        register(ReplicaRoutingFilter.class);
+
+        // In a partitioned cluster, single books are served by their owner and lists by all nodes, see Cluster
+        register(PartitionRoutingFilter.class);
+
+        // Compact binary representation of books, selected by content negotiation.
+        // JSON is still the default, see @Produces in BookResource
+        register(BookProtobufProvider.class);
+
+        // Reflection free JSON for books, wire compatible with MOXy. MOXy handles all other types
+        register(BookJsonProvider.class);
+        register(BookListJsonProvider.class);
+
+        // Server-Sent Events, used by the change feed at /api/books/changes
+        register(SseFeature.class);
+
         // Enable LoggingFilter & output entity.
         //registerInstances(new LoggingFilter(java.util.logging.Logger.getLogger(this.getClass().getName()), true));
 
@@ -0,0 +1,177 @@
+package com.github.leifoolsen.simplejaxrs2.rest.filter;
+
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Lifecycle;
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.Histogram;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Path;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records per route latency, status codes and requests in flight.
+ * Route metrics are resolved once per resource method and cached, so the hot path is a map lookup,
+ * a System.nanoTime() call and a few striped counter updates.
+ *
+ * Response filters are skipped when a resource throws an exception that no ExceptionMapper handles.
+ * Those requests are recorded as 500 when Jersey reports the request as finished.
+ * Requests served while the server warms up are not recorded.
+ */
+@PreMatching
+@Priority(Priorities.USER - 1000)  // run before everything else, measure everything else
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, ApplicationEventListener {
+    private static final String START_TIME = MetricsFilter.class.getName() + ".start";
+    private static final String UNMATCHED = "unmatched";
+
+    private static final StripedCounter inFlight = new StripedCounter();
+
+    static {
+        MetricsRegistry.gauge("http_requests_in_flight", "Requests currently being processed.", "", new Gauge() {
+            @Override
+            public double value() {
+                return inFlight.sum();
+            }
+        });
+    }
+
+    private final ConcurrentMap<Method, RouteMetrics> routes = new ConcurrentHashMap<Method, RouteMetrics>();
+    private final ConcurrentMap<String, RouteMetrics> unmatched = new ConcurrentHashMap<String, RouteMetrics>();
+
+    private final RequestEventListener unmappedExceptionListener = new RequestEventListener() {
+        @Override
+        public void onEvent(final RequestEvent event) {
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                final ResourceMethod resourceMethod = event.getUriInfo().getMatchedResourceMethod();
+                final Invocable invocable = resourceMethod != null ? resourceMethod.getInvocable() : null;
+                complete(event.getContainerRequest(),
+                        invocable != null ? invocable.getHandler().getHandlerClass() : null,
+                        invocable != null ? invocable.getHandlingMethod() : null,
+                        Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+            }
+        }
+    };
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        if (Lifecycle.isWarmingUp()) {
+            return;  // warm-up traffic, see WarmUp, would skew the latency of the routes it replays
+        }
+        inFlight.increment();
+        requestContext.setProperty(START_TIME, System.nanoTime());
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext) {
+        complete(requestContext, resourceInfo.getResourceClass(), resourceInfo.getResourceMethod(),
+                responseContext.getStatus());
+    }
+
+    @Override
+    public void onEvent(final ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(final RequestEvent requestEvent) {
+        return unmappedExceptionListener;
+    }
+
+    private void complete(final ContainerRequestContext requestContext, final Class<?> resourceClass,
+                          final Method method, final int status) {
+
+        final Object start = requestContext.getProperty(START_TIME);
+        if (start == null) {
+            return;  // not started, or already completed by the response filter
+        }
+        requestContext.removeProperty(START_TIME);
+        final long elapsed = System.nanoTime() - (Long) start;
+        inFlight.decrement();
+
+        final RouteMetrics route = route(requestContext.getMethod(), resourceClass, method);
+        route.latency.observe(elapsed);
+        route.status(status).increment();
+    }
+
+    private RouteMetrics route(final String httpMethod, final Class<?> resourceClass, final Method method) {
+        if (method == null) {
+            RouteMetrics route = unmatched.get(httpMethod);
+            if (route == null) {
+                route = new RouteMetrics(httpMethod, UNMATCHED);
+                unmatched.putIfAbsent(httpMethod, route);
+            }
+            return route;
+        }
+        RouteMetrics route = routes.get(method);
+        if (route == null) {
+            route = new RouteMetrics(httpMethod, routeTemplate(resourceClass, method));
+            routes.putIfAbsent(method, route);
+        }
+        return route;
+    }
+
+    private static String routeTemplate(final Class<?> resourceClass, final Method method) {
+        StringBuilder sb = new StringBuilder();
+        appendPath(sb, resourceClass != null ? resourceClass.getAnnotation(Path.class) : null);
+        appendPath(sb, method.getAnnotation(Path.class));
+        return sb.length() > 0 ? sb.toString() : "/";
+    }
+
+    private static void appendPath(final StringBuilder sb, final Path path) {
+        if (path != null) {
+            String p = path.value();
+            if (!p.startsWith("/")) {
+                sb.append('/');
+            }
+            sb.append(p.endsWith("/") ? p.substring(0, p.length() - 1) : p);
+        }
+    }
+
+    private static class RouteMetrics {
+        private final String method;
+        private final String route;
+        private final Histogram latency;
+        private final AtomicReferenceArray<StripedCounter> statusCounters =
+                new AtomicReferenceArray<StripedCounter>(600);
+
+        RouteMetrics(final String method, final String route) {
+            this.method = method;
+            this.route = route;
+            this.latency = MetricsRegistry.histogram("http_request_duration_seconds",
+                    "Request latency by route.", MetricsRegistry.labels("method", method, "route", route));
+        }
+
+        StripedCounter status(final int status) {
+            final int i = status >= 0 && status < 600 ? status : 0;
+            StripedCounter counter = statusCounters.get(i);
+            if (counter == null) {
+                counter = MetricsRegistry.counter("http_responses_total", "Responses by route and status code.",
+                        MetricsRegistry.labels("method", method, "route", route, "status", Integer.toString(status)));
+                statusCounters.compareAndSet(i, null, counter);
+            }
+            return counter;
+        }
+    }
+}
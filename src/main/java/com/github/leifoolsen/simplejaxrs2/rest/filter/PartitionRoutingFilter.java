@@ -0,0 +1,348 @@
+package com.github.leifoolsen.simplejaxrs2.rest.filter;
+
+import com.github.leifoolsen.simplejaxrs2.cluster.Cluster;
+import com.github.leifoolsen.simplejaxrs2.codec.BookJson;
+import com.github.leifoolsen.simplejaxrs2.codec.BookProtobuf;
+import com.github.leifoolsen.simplejaxrs2.codec.JsonParseException;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.github.leifoolsen.simplejaxrs2.rest.resource.BookResource;
+import com.github.leifoolsen.simplejaxrs2.tenant.Tenants;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Routes book requests in a partitioned cluster, see Cluster. Does nothing on a standalone node.
+ * <ul>
+ *     <li>GET and DELETE /books/{isbn}, GET /books/{isbn}/history, and POST and PUT /books with a book entity,
+ *     are forwarded to the node owning the ISBN, unless that is this node.</li>
+ *     <li>GET /books and GET /books/publisher/{name} ask every node for its first offset + limit books by ISBN,
+ *     merge the lists and return the requested page. Clustered lists are therefore ordered by ISBN.</li>
+ *     <li>Batch lookups, GET /books?isbn= and POST /books/batch-get, ask each owner for its ISBNs.</li>
+ *     <li>Imports and the form posts are rejected with 501 Not Implemented, they would store every book
+ *     on the node receiving them. So is GET /books?asOf=, every node has a change log of its own and a
+ *     sequence is a point in time on one node only.</li>
+ * </ul>
+ * Requests from other nodes carry Cluster.INTERNAL_HEADER with the cluster secret and are always served here.
+ * Other requests with the header are routed like any other.
+ */
+@PreMatching
+@Priority(Priorities.AUTHENTICATION - 300)
+public class PartitionRoutingFilter implements ContainerRequestFilter {
+    private static final Pattern BOOK_PATH = Pattern.compile("books/(\\d{13})(/history)?");
+    private static final String BATCH_GET_PATH = "books/batch-get";
+    private static final Set<String> UNROUTED_PATHS = ImmutableSet.of(
+            "books/import", "books/post-with-formparam", "books/post-with-beanparam");
+    private static final Pattern PUBLISHER_PATH = Pattern.compile("books/publisher/([^/]+)");
+    private static final MediaType APPLICATION_PROTOBUF_TYPE = MediaType.valueOf(BookProtobuf.APPLICATION_PROTOBUF);
+    private static final GenericType<List<Book>> BOOK_LIST = new GenericType<List<Book>>() {};
+
+    private final StripedCounter forwarded = MetricsRegistry.counter("cluster_requests_total",
+            "Requests sent to other nodes.", MetricsRegistry.labels("kind", "forward"));
+    private final StripedCounter scattered = MetricsRegistry.counter("cluster_requests_total",
+            "Requests sent to other nodes.", MetricsRegistry.labels("kind", "scatter"));
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) throws IOException {
+        // Only the default tenant's catalog is partitioned, see Tenants
+        if (!Cluster.isClustered() || Cluster.isMember(requestContext.getHeaderString(Cluster.INTERNAL_HEADER))
+                || !Tenants.current().isDefault()) {
+            return;
+        }
+        final String path = requestContext.getUriInfo().getPath(true);
+        final String method = requestContext.getMethod();
+
+        final Matcher book = BOOK_PATH.matcher(path);
+        if (book.matches()
+                && (HttpMethod.GET.equals(method) || HttpMethod.DELETE.equals(method) && book.group(2) == null)) {
+            route(requestContext, book.group(1), null);
+        }
+        else if ("books".equals(path) && (HttpMethod.POST.equals(method) || HttpMethod.PUT.equals(method))) {
+            routeByEntity(requestContext);
+        }
+        else if (UNROUTED_PATHS.contains(path) && HttpMethod.POST.equals(method)) {
+            requestContext.abortWith(notImplemented("POST books to /books one at a time"));
+        }
+        else if (BATCH_GET_PATH.equals(path) && HttpMethod.POST.equals(method)) {
+            final byte[] entity = ByteStreams.toByteArray(requestContext.getEntityStream());
+            requestContext.setEntityStream(new ByteArrayInputStream(entity));
+            try {
+                batchGet(requestContext, BookJson.readStrings(new ByteArrayInputStream(entity), BookResource.MAX_BATCH_SIZE));
+            }
+            catch (JsonParseException e) {
+                // malformed, rejected by the resource
+            }
+        }
+        else if (HttpMethod.GET.equals(method)) {
+            final MultivaluedMap<String, String> query = requestContext.getUriInfo().getQueryParameters();
+            final Matcher publisher = PUBLISHER_PATH.matcher(path);
+            if ("books".equals(path) && query.containsKey("asOf")) {
+                requestContext.abortWith(notImplemented("ask one node, books are read as of its own change log"));
+            }
+            else if ("books".equals(path) && query.containsKey("isbn")) {
+                batchGet(requestContext, query.get("isbn"));
+            }
+            else if ("books".equals(path)) {
+                scatter(requestContext, null, query);
+            }
+            else if (publisher.matches()) {
+                scatter(requestContext, publisher.group(1), query);
+            }
+        }
+    }
+
+    private void route(final ContainerRequestContext requestContext, final String isbn, final byte[] entity) {
+        URI node = Cluster.owner(isbn);
+        if (node.equals(Cluster.getSelf())) {
+            // Not handed over yet? Read it where it was
+            final URI previous = Cluster.previousOwner(isbn);
+            if (previous == null || previous.equals(node)
+                    || !HttpMethod.GET.equals(requestContext.getMethod()) || BookRepository.findBook(isbn) != null) {
+                return;
+            }
+            node = previous;
+        }
+        forwarded.increment();
+        requestContext.abortWith(forward(requestContext, node, entity));
+    }
+
+    private void routeByEntity(final ContainerRequestContext requestContext) throws IOException {
+        final MediaType mediaType = requestContext.getMediaType();
+        final byte[] entity = ByteStreams.toByteArray(requestContext.getEntityStream());
+        requestContext.setEntityStream(new ByteArrayInputStream(entity));
+
+        String isbn = null;
+        try {
+            if (mediaType != null && mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                isbn = BookJson.read(entity, 0, entity.length).getIsbn();
+            }
+            else if (mediaType != null && mediaType.isCompatible(APPLICATION_PROTOBUF_TYPE)) {
+                isbn = BookProtobuf.read(new ByteArrayInputStream(entity)).getIsbn();
+            }
+        }
+        catch (IOException e) {
+            // malformed, rejected by the resource
+        }
+        if (isbn != null) {
+            route(requestContext, isbn, entity);
+        }
+    }
+
+    private static Response forward(final ContainerRequestContext requestContext, final URI node, final byte[] entity) {
+        final URI uri = UriBuilder.fromUri(node)
+                .path(requestContext.getUriInfo().getPath(false))
+                .replaceQuery(requestContext.getUriInfo().getRequestUri().getRawQuery())
+                .build();
+        final Invocation.Builder request = Cluster.client().target(uri)
+                .request()
+                .header(Cluster.INTERNAL_HEADER, Cluster.internalHeader())
+                .header(HttpHeaders.ACCEPT, requestContext.getHeaderString(HttpHeaders.ACCEPT));
+
+        final Response response = entity != null
+                ? request.method(requestContext.getMethod(), Entity.entity(entity, requestContext.getMediaType()))
+                : request.method(requestContext.getMethod());
+        try {
+            final Response.ResponseBuilder builder = Response.status(response.getStatus())
+                    .type(response.getMediaType())
+                    .location(response.getLocation());
+            if (response.hasEntity()) {
+                builder.entity(response.readEntity(byte[].class));
+            }
+            return builder.build();
+        }
+        finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Looks the ISBNs up on their owners, and answers as BookResource does for a batch lookup
+     */
+    private void batchGet(final ContainerRequestContext requestContext, final List<String> isbns) {
+        final List<String> unique = Lists.newArrayList(
+                Sets.newLinkedHashSet(Iterables.filter(isbns, Predicates.notNull())));
+        if (unique.size() > BookResource.MAX_BATCH_SIZE) {
+            return;  // rejected by the resource
+        }
+        final Map<URI, List<String>> byOwner = Maps.newHashMap();
+        for (String isbn : unique) {
+            final URI owner = Cluster.owner(isbn);
+            List<String> owned = byOwner.get(owner);
+            if (owned == null) {
+                owned = Lists.newArrayList();
+                byOwner.put(owner, owned);
+            }
+            owned.add(isbn);
+        }
+
+        final List<Future<List<Book>>> remote = Lists.newArrayList();
+        final Map<String, Book> found = Maps.newHashMap();
+        for (Map.Entry<URI, List<String>> entry : byOwner.entrySet()) {
+            if (entry.getKey().equals(Cluster.getSelf())) {
+                for (Book book : BookRepository.findBooks(entry.getValue())) {
+                    if (book != null) {
+                        found.put(book.getIsbn(), book);
+                    }
+                }
+                continue;
+            }
+            scattered.increment();
+            final WebTarget target = Cluster.client().target(entry.getKey()).path(Cluster.LOCAL_BOOKS_PATH)
+                    .queryParam("isbn", entry.getValue().toArray());
+            remote.add(Cluster.executor().submit(new Callable<List<Book>>() {
+                @Override
+                public List<Book> call() {
+                    return target.request(MediaType.APPLICATION_JSON_TYPE)
+                            .header(Cluster.INTERNAL_HEADER, Cluster.internalHeader())
+                            .get(BOOK_LIST);
+                }
+            }));
+        }
+        final List<List<Book>> lists = gather(requestContext, remote);
+        if (lists == null) {
+            return;
+        }
+        for (List<Book> list : lists) {
+            for (Book book : list) {
+                found.put(book.getIsbn(), book);
+            }
+        }
+
+        final List<Book> books = Lists.newArrayListWithCapacity(unique.size());
+        for (String isbn : unique) {
+            books.add(found.get(isbn));
+        }
+        requestContext.abortWith(Response
+                .ok(new StreamingOutput() {
+                    @Override
+                    public void write(final OutputStream output) throws IOException {
+                        BookJson.writeBatch(unique, books, output);
+                    }
+                })
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .build());
+    }
+
+    // The lists of the remote futures, null if a node failed, then the request is aborted
+    private static List<List<Book>> gather(final ContainerRequestContext requestContext,
+                                           final List<Future<List<Book>>> remote) {
+        final List<List<Book>> lists = Lists.newArrayList();
+        for (Future<List<Book>> future : remote) {
+            try {
+                lists.add(future.get());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+                return null;
+            }
+            catch (ExecutionException e) {
+                requestContext.abortWith(Response.status(Response.Status.BAD_GATEWAY)
+                        .entity("A node did not answer: " + e.getCause())
+                        .type(MediaType.TEXT_PLAIN)
+                        .build());
+                return null;
+            }
+        }
+        return lists;
+    }
+
+    private void scatter(final ContainerRequestContext requestContext, final String publisher,
+                         final MultivaluedMap<String, String> query) {
+        final int offset = intParam(query, "offset", 0);
+        final int limit = intParam(query, "limit", Integer.MAX_VALUE);
+        final int perNode = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+
+        final List<Future<List<Book>>> remote = Lists.newArrayList();
+        for (URI node : Cluster.getNodes()) {
+            if (!node.equals(Cluster.getSelf())) {
+                scattered.increment();
+                final WebTarget target = publisher != null
+                        ? Cluster.client().target(node).path(Cluster.LOCAL_BOOKS_PATH).queryParam("publisher", publisher)
+                        : Cluster.client().target(node).path(Cluster.LOCAL_BOOKS_PATH);
+                remote.add(Cluster.executor().submit(new Callable<List<Book>>() {
+                    @Override
+                    public List<Book> call() {
+                        return target.queryParam("limit", perNode)
+                                .request(MediaType.APPLICATION_JSON_TYPE)
+                                .header(Cluster.INTERNAL_HEADER, Cluster.internalHeader())
+                                .get(BOOK_LIST);
+                    }
+                }));
+            }
+        }
+        final List<Book> local = Cluster.localBooks(publisher, perNode);
+        final List<List<Book>> lists = gather(requestContext, remote);
+        if (lists == null) {
+            return;
+        }
+        lists.add(local);
+
+        final List<Book> page = Lists.newArrayList(Iterables.limit(
+                Iterables.skip(Iterables.mergeSorted(lists, Cluster.byIsbn()), offset), limit));
+        if (page.isEmpty()) {
+            requestContext.abortWith(Response.noContent().build());
+            return;
+        }
+        requestContext.abortWith(Response.ok(new GenericEntity<List<Book>>(page) {})
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .build());
+    }
+
+    private static Response notImplemented(final String hint) {
+        return Response.status(Response.Status.NOT_IMPLEMENTED)
+                .entity("Not supported in a partitioned cluster, " + hint)
+                .type(MediaType.TEXT_PLAIN)
+                .build();
+    }
+
+    private static int intParam(final MultivaluedMap<String, String> query, final String name, final int otherwise) {
+        final String value = query.getFirst(name);
+        if (value == null) {
+            return otherwise;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        }
+        catch (NumberFormatException e) {
+            return otherwise;
+        }
+    }
+}
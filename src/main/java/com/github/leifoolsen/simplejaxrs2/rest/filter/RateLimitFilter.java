@@ -0,0 +1,241 @@
+package com.github.leifoolsen.simplejaxrs2.rest.filter;
+
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Lifecycle;
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.github.leifoolsen.simplejaxrs2.ratelimit.AimdLimiter;
+import com.github.leifoolsen.simplejaxrs2.ratelimit.TokenBucket;
+import com.github.leifoolsen.simplejaxrs2.rest.resource.HealthResource;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Protects the server from clients sending more than their share of requests.
+ * <ul>
+ *     <li>Token bucket per client, keyed by the X-API-Key header if it is one of the issued keys, see API_KEYS,
+ *     or else by the remote address, so a client can not get a fresh bucket by making up keys.
+ *     Over the limit: 429 Too Many Requests with a Retry-After header.</li>
+ *     <li>Token bucket per route, shared by all clients.
+ *     Over the limit: 429 Too Many Requests with a Retry-After header.</li>
+ *     <li>Adaptive (AIMD) limit on requests in flight for the whole application.
+ *     Over the limit: 503 Service Unavailable.</li>
+ * </ul>
+ * Health probes are never limited, see HealthResource, and nor are clients while the server warms up, see WarmUp.
+ * All state is held in concurrent maps and atomics, no locks are taken on the request path.
+ * Limits are read from system properties, see the property name constants.
+ */
+@Priority(Priorities.AUTHENTICATION - 100)
+public class RateLimitFilter implements ContainerRequestFilter, ContainerResponseFilter, ApplicationEventListener {
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    public static final String API_KEYS = "simplejaxrs2.ratelimit.api-keys";  // comma separated
+    public static final String CLIENT_RATE = "simplejaxrs2.ratelimit.client.rate";
+    public static final String CLIENT_BURST = "simplejaxrs2.ratelimit.client.burst";
+    public static final String ROUTE_RATE = "simplejaxrs2.ratelimit.route.rate";
+    public static final String ROUTE_BURST = "simplejaxrs2.ratelimit.route.burst";
+    public static final String CONCURRENCY_INITIAL = "simplejaxrs2.concurrency.initial";
+    public static final String CONCURRENCY_MIN = "simplejaxrs2.concurrency.min";
+    public static final String CONCURRENCY_MAX = "simplejaxrs2.concurrency.max";
+    public static final String CONCURRENCY_LATENCY_THRESHOLD_MS = "simplejaxrs2.concurrency.latency-threshold-ms";
+
+    private static final int MAX_TRACKED_CLIENTS = 10000;
+    private static final String ACQUIRED_AT = RateLimitFilter.class.getName() + ".acquired";
+    private static final int TOO_MANY_REQUESTS = 429;  // not in JAX-RS 2.0 Response.Status
+
+    private final int clientRate = Integer.getInteger(CLIENT_RATE, 100);
+    private final int clientBurst = Integer.getInteger(CLIENT_BURST, 200);
+    private final int routeRate = Integer.getInteger(ROUTE_RATE, 5000);
+    private final int routeBurst = Integer.getInteger(ROUTE_BURST, 10000);
+
+    private final Set<String> apiKeys = ImmutableSet.copyOf(
+            Splitter.on(',').trimResults().omitEmptyStrings().split(System.getProperty(API_KEYS, "")));
+
+    private final ConcurrentMap<String, TokenBucket> clientBuckets = new ConcurrentHashMap<String, TokenBucket>();
+    private final ConcurrentMap<Method, TokenBucket> routeBuckets = new ConcurrentHashMap<Method, TokenBucket>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    private final AimdLimiter concurrencyLimiter = new AimdLimiter(
+            Integer.getInteger(CONCURRENCY_INITIAL, 100),
+            Integer.getInteger(CONCURRENCY_MIN, 10),
+            Integer.getInteger(CONCURRENCY_MAX, 450),  // keep below the 500 threads of the Jetty pool
+            TimeUnit.MILLISECONDS.toNanos(Integer.getInteger(CONCURRENCY_LATENCY_THRESHOLD_MS, 250)),
+            0.9);
+
+    private final StripedCounter clientRejections = rejections("client");
+    private final StripedCounter routeRejections = rejections("route");
+    private final StripedCounter concurrencyRejections = rejections("concurrency");
+
+    private final RequestEventListener unmappedExceptionListener = new RequestEventListener() {
+        @Override
+        public void onEvent(final RequestEvent event) {
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                release(event.getContainerRequest(), true);
+            }
+        }
+    };
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Context
+    private HttpServletRequest servletRequest;
+
+    public RateLimitFilter() {
+        MetricsRegistry.gauge("concurrency_limit", "Current adaptive concurrency limit.", "", new Gauge() {
+            @Override
+            public double value() { return concurrencyLimiter.getLimit(); }
+        });
+        MetricsRegistry.gauge("concurrency_in_flight", "Requests holding a concurrency slot.", "", new Gauge() {
+            @Override
+            public double value() { return concurrencyLimiter.getInFlight(); }
+        });
+        MetricsRegistry.gauge("ratelimit_tracked_clients", "Clients with a token bucket.", "", new Gauge() {
+            @Override
+            public double value() { return clientBuckets.size(); }
+        });
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        if (resourceInfo.getResourceClass() == HealthResource.class) {
+            return;
+        }
+        final long now = System.nanoTime();
+
+        // The warm-up is the only client then, and sends more than any client may
+        long wait = Lifecycle.isWarmingUp() ? 0 : clientBucket(clientKey(requestContext), now).tryAcquire(now);
+        if (wait > 0) {
+            clientRejections.increment();
+            requestContext.abortWith(tooManyRequests(wait));
+            return;
+        }
+
+        final Method method = resourceInfo.getResourceMethod();
+        if (method != null) {
+            wait = routeBucket(method).tryAcquire(now);
+            if (wait > 0) {
+                routeRejections.increment();
+                requestContext.abortWith(tooManyRequests(wait));
+                return;
+            }
+        }
+
+        if (!concurrencyLimiter.tryAcquire()) {
+            concurrencyRejections.increment();
+            requestContext.abortWith(
+                    Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                            .header("Retry-After", 1)
+                            .entity("Server is overloaded, try again later")
+                            .type(MediaType.TEXT_PLAIN)
+                            .build());
+            return;
+        }
+        requestContext.setProperty(ACQUIRED_AT, now);
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext) {
+        release(requestContext, responseContext.getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+    }
+
+    @Override
+    public void onEvent(final ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(final RequestEvent requestEvent) {
+        return unmappedExceptionListener;
+    }
+
+    private void release(final ContainerRequestContext requestContext, final boolean dropped) {
+        final Object acquiredAt = requestContext.getProperty(ACQUIRED_AT);
+        if (acquiredAt != null) {
+            requestContext.removeProperty(ACQUIRED_AT);
+            concurrencyLimiter.release(System.nanoTime() - (Long) acquiredAt, dropped);
+        }
+    }
+
+    private String clientKey(final ContainerRequestContext requestContext) {
+        final String apiKey = requestContext.getHeaderString(API_KEY_HEADER);
+        return apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : servletRequest.getRemoteAddr();
+    }
+
+    private TokenBucket clientBucket(final String clientKey, final long now) {
+        TokenBucket bucket = clientBuckets.get(clientKey);
+        if (bucket == null) {
+            if (clientBuckets.size() >= MAX_TRACKED_CLIENTS) {
+                sweep(now);
+            }
+            bucket = new TokenBucket(clientRate, clientBurst);
+            TokenBucket existing = clientBuckets.putIfAbsent(clientKey, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    private TokenBucket routeBucket(final Method method) {
+        TokenBucket bucket = routeBuckets.get(method);
+        if (bucket == null) {
+            bucket = new TokenBucket(routeRate, routeBurst);
+            TokenBucket existing = routeBuckets.putIfAbsent(method, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    // Full buckets carry no state, dropping them bounds memory without forgiving anyone.
+    // At most one sweep per second, by whichever thread wins the CAS.
+    private void sweep(final long now) {
+        final long next = nextSweep.get();
+        if (now - next >= 0 && nextSweep.compareAndSet(next, now + TimeUnit.SECONDS.toNanos(1))) {
+            for (Iterator<Map.Entry<String, TokenBucket>> it = clientBuckets.entrySet().iterator(); it.hasNext(); ) {
+                if (it.next().getValue().isFull(now)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static Response tooManyRequests(final long waitNanos) {
+        final long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999999999L));
+        return Response.status(TOO_MANY_REQUESTS)
+                .header("Retry-After", retryAfterSeconds)
+                .entity("Rate limit exceeded, try again later")
+                .type(MediaType.TEXT_PLAIN)
+                .build();
+    }
+
+    private static StripedCounter rejections(final String reason) {
+        return MetricsRegistry.counter("ratelimit_rejected_total", "Requests rejected by the rate limiter.",
+                MetricsRegistry.labels("reason", reason));
+    }
+}
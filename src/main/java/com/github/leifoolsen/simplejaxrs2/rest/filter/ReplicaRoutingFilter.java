@@ -0,0 +1,71 @@
+package com.github.leifoolsen.simplejaxrs2.rest.filter;
+
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.github.leifoolsen.simplejaxrs2.replication.Replication;
+import com.github.leifoolsen.simplejaxrs2.replication.ReplicationReplica;
+import com.github.leifoolsen.simplejaxrs2.tenant.Tenants;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+/**
+ * On a replica, sends book requests the replica should not answer to the primary with
+ * 307 Temporary Redirect, which keeps the method and the entity:
+ * <ul>
+ *     <li>writes, always</li>
+ *     <li>reads, batch lookups with POST /books/batch-get included, when the replica is more than the configured
+ *     staleness behind the primary</li>
+ * </ul>
+ * Does nothing on a primary or a standalone node. See Replication.
+ */
+@PreMatching
+@Priority(Priorities.AUTHENTICATION - 200)  // before rate limiting, the primary limits what it serves
+public class ReplicaRoutingFilter implements ContainerRequestFilter {
+    private static final String ROUTED_PATH = "books";
+    private static final String BATCH_GET_PATH = "books/batch-get";  // a POST that only reads
+
+    private final StripedCounter routedWrites = routed("write");
+    private final StripedCounter routedReads = routed("stale-read");
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        final ReplicationReplica replica = Replication.replica();
+        // Only the default tenant's catalog is replicated, see Tenants
+        if (replica == null || !Tenants.current().isDefault()) {
+            return;
+        }
+        final String path = requestContext.getUriInfo().getPath(false);
+        if (!path.startsWith(ROUTED_PATH)) {
+            return;
+        }
+        final String method = requestContext.getMethod();
+        if (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) || HttpMethod.OPTIONS.equals(method)
+                || HttpMethod.POST.equals(method) && BATCH_GET_PATH.equals(path)) {
+            if (replica.isFresh()) {
+                return;
+            }
+            routedReads.increment();
+        }
+        else {
+            routedWrites.increment();
+        }
+        requestContext.abortWith(Response
+                .temporaryRedirect(UriBuilder.fromUri(replica.getPrimaryUri())
+                        .path(path)
+                        .replaceQuery(requestContext.getUriInfo().getRequestUri().getRawQuery())
+                        .build())
+                .build());
+    }
+
+    private static StripedCounter routed(final String reason) {
+        return MetricsRegistry.counter("replication_routed_total", "Requests redirected to the primary.",
+                MetricsRegistry.labels("reason", reason));
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.leifoolsen.simplejaxrs2.rest.filter;
+
+import com.github.leifoolsen.simplejaxrs2.tenant.Tenant;
+import com.github.leifoolsen.simplejaxrs2.tenant.Tenants;
+import com.google.common.collect.ImmutableSet;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Picks the tenant of a request, see Tenants: the X-Tenant header, or a tenants/{tenant}/ path prefix, which is
+ * moved into the base URI so the request matches the same resources as without it. The tenant is current on
+ * the request thread until the resource method returns.
+ *
+ * Book requests hold a slot of the tenant's budget of requests in flight until there is a response, and are
+ * answered 429 Too Many Requests when the budget is used up. The slot is given back by the response filter, or,
+ * for a request that failed without one, when Jersey finishes it. The change feed and imports are not budgeted: they
+ * may stream for as long as the connection lasts, and must never lock the tenant out of everything else. Imports
+ * have a budget of their own instead, see Tenant.tryAcquireImport.
+ * An unknown tenant is 404 Not Found.
+ */
+@PreMatching
+@Priority(Priorities.AUTHENTICATION - 400)  // first, routing and rate limiting depend on the tenant
+public class TenantFilter implements ContainerRequestFilter, ContainerResponseFilter, ApplicationEventListener {
+    public static final String TENANT_HEADER = "X-Tenant";
+
+    private static final String TENANTS_PATH = "tenants/";
+    private static final String BUDGETED_PATH = "books";  // and every path below it
+    private static final Set<String> STREAMING_PATHS = ImmutableSet.of("books/changes", "books/import");
+    private static final String SLOT = TenantFilter.class.getName() + ".slot";
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final RequestEventListener requestListener = new RequestEventListener() {
+        @Override
+        public void onEvent(final RequestEvent event) {
+            switch (event.getType()) {
+                case RESOURCE_METHOD_FINISHED:
+                    // An async response finishes on another thread, leave nothing behind on this one
+                    Tenants.clearCurrent();
+                    break;
+                case FINISHED:
+                    release(event.getContainerRequest());  // if no response filter ran
+                    Tenants.clearCurrent();
+                    break;
+                default:
+                    break;
+            }
+        }
+    };
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        String id = requestContext.getHeaderString(TENANT_HEADER);
+        String path = requestContext.getUriInfo().getPath(false);
+
+        final int end = path.indexOf('/', TENANTS_PATH.length());
+        if (path.startsWith(TENANTS_PATH) && end > 0) {
+            final String fromPath = path.substring(TENANTS_PATH.length(), end);
+            if (id != null && !id.equals(fromPath)) {
+                requestContext.abortWith(text(Response.Status.BAD_REQUEST,
+                        TENANT_HEADER + " " + id + " does not match tenant " + fromPath + " in the path"));
+                return;
+            }
+            id = fromPath;
+            path = path.substring(end + 1);
+
+            // The prefix goes into the base URI, so resources match as without it and URIs they make keep it
+            final URI baseUri = requestContext.getUriInfo().getBaseUri();
+            requestContext.setRequestUri(URI.create(baseUri + TENANTS_PATH + id + "/"),
+                    requestContext.getUriInfo().getRequestUri());
+        }
+
+        final Tenant tenant = id != null ? Tenants.get(id) : Tenants.getDefault();
+        if (tenant == null) {
+            requestContext.abortWith(text(Response.Status.NOT_FOUND, "No such tenant: " + id));
+            return;
+        }
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if ((path.equals(BUDGETED_PATH) || path.startsWith(BUDGETED_PATH + "/")) && !STREAMING_PATHS.contains(path)) {
+            if (!tenant.tryAcquire()) {
+                requestContext.abortWith(Response.status(TOO_MANY_REQUESTS)
+                        .header("Retry-After", 1)
+                        .entity("Tenant " + tenant.getId() + " has too many requests in flight")
+                        .type(MediaType.TEXT_PLAIN)
+                        .build());
+                return;
+            }
+            requestContext.setProperty(SLOT, new Slot(tenant));
+        }
+        Tenants.setCurrent(tenant);
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext) {
+        release(requestContext);
+    }
+
+    @Override
+    public void onEvent(final ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(final RequestEvent requestEvent) {
+        return requestListener;
+    }
+
+    private static void release(final ContainerRequestContext requestContext) {
+        final Slot slot = (Slot) requestContext.getProperty(SLOT);
+        if (slot != null) {
+            slot.release();
+        }
+    }
+
+    // The response filter and the FINISHED event may run on different threads, only the first gives it back
+    private static class Slot {
+        final Tenant tenant;
+        final long acquiredAt = System.nanoTime();
+        final AtomicBoolean released = new AtomicBoolean();
+
+        Slot(final Tenant tenant) {
+            this.tenant = tenant;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                tenant.release(System.nanoTime() - acquiredAt);
+            }
+        }
+    }
+
+    private static Response text(final Response.Status status, final String message) {
+        return Response.status(status).entity(message).type(MediaType.TEXT_PLAIN).build();
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.leifoolsen.simplejaxrs2.rest.filter;
+
+import com.github.leifoolsen.simplejaxrs2.tracing.Tracer;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import java.lang.reflect.Method;
+
+/**
+ * Records Jersey's phases of traced requests as spans, see Tracer:
+ * <ul>
+ *     <li>jersey.matching: pre-matching filters and finding the resource method</li>
+ *     <li>jersey.request-filters</li>
+ *     <li>the resource method, e.g. BookResource.byIsbn</li>
+ *     <li>jersey.response-filters</li>
+ *     <li>jersey.write: writer interceptors and the message body writer, e.g. MOXy</li>
+ * </ul>
+ * Requests that are not traced get no listener, and so no events.
+ */
+public class TracingEventListener implements ApplicationEventListener {
+
+    @Override
+    public void onEvent(final ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(final RequestEvent requestEvent) {
+        final Tracer.Trace trace = Tracer.currentTrace();
+        return trace != null ? new PhaseListener(trace) : null;
+    }
+
+    private static class PhaseListener implements RequestEventListener {
+        private final Tracer.Trace trace;
+        private long phaseStart = System.nanoTime();
+
+        PhaseListener(final Tracer.Trace trace) {
+            this.trace = trace;
+        }
+
+        @Override
+        public void onEvent(final RequestEvent event) {
+            switch (event.getType()) {
+                case REQUEST_MATCHED:
+                    phase("jersey.matching");
+                    break;
+                case REQUEST_FILTERED:
+                    phase("jersey.request-filters");
+                    break;
+                case RESOURCE_METHOD_START:
+                    phaseStart = System.nanoTime();
+                    break;
+                case RESOURCE_METHOD_FINISHED:
+                    phase(resourceMethod(event));
+                    break;
+                case RESP_FILTERS_START:
+                    phaseStart = System.nanoTime();
+                    break;
+                case RESP_FILTERS_FINISHED:
+                    phase("jersey.response-filters");
+                    break;
+                case FINISHED:
+                    phase("jersey.write");
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private static String resourceMethod(final RequestEvent event) {
+            final ResourceMethod resourceMethod = event.getUriInfo().getMatchedResourceMethod();
+            if (resourceMethod == null) {
+                return "resource";
+            }
+            final Method method = resourceMethod.getInvocable().getHandlingMethod();
+            return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        }
+
+        private void phase(final String name) {
+            final long now = System.nanoTime();
+            trace.record(name, phaseStart, now - phaseStart);
+            phaseStart = now;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.leifoolsen.simplejaxrs2.rest.provider;
+
+import com.github.leifoolsen.simplejaxrs2.codec.BookJson;
+import com.github.leifoolsen.simplejaxrs2.codec.JsonParseException;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Reads and writes Book as application/json, see BookJson.
+ * Jersey prefers this provider over MOXy because it is declared for Book, not Object.
+ * MOXy still handles every other type, and JSON in charsets other than UTF-8.
+ */
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class BookJsonProvider implements MessageBodyReader<Book>, MessageBodyWriter<Book> {
+
+    static boolean isUtf8(final MediaType mediaType) {
+        final String charset = mediaType.getParameters().get(MediaType.CHARSET_PARAMETER);
+        return charset == null || "UTF-8".equalsIgnoreCase(charset);
+    }
+
+    @Override
+    public boolean isReadable(final Class<?> type, final Type genericType,
+                              final Annotation[] annotations, final MediaType mediaType) {
+        return BookProtobufProvider.isBook(type) && isUtf8(mediaType);
+    }
+
+    @Override
+    public Book readFrom(final Class<Book> type, final Type genericType, final Annotation[] annotations,
+                         final MediaType mediaType, final MultivaluedMap<String, String> httpHeaders,
+                         final InputStream entityStream) throws IOException {
+
+        try {
+            return BookJson.read(entityStream);
+        }
+        catch (JsonParseException e) {
+            throw new BadRequestException(e);  // as MOXy
+        }
+    }
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType,
+                               final Annotation[] annotations, final MediaType mediaType) {
+        return BookProtobufProvider.isBook(type) && isUtf8(mediaType);
+    }
+
+    @Override
+    public long getSize(final Book book, final Class<?> type, final Type genericType,
+                        final Annotation[] annotations, final MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(final Book book, final Class<?> type, final Type genericType, final Annotation[] annotations,
+                        final MediaType mediaType, final MultivaluedMap<String, Object> httpHeaders,
+                        final OutputStream entityStream) throws IOException {
+
+        BookJson.write(book, entityStream);
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.leifoolsen.simplejaxrs2.rest.provider;
+
+import com.github.leifoolsen.simplejaxrs2.codec.BookJson;
+import com.github.leifoolsen.simplejaxrs2.codec.JsonParseException;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Reads and writes List&lt;Book&gt; as an application/json array, see BookJson and BookJsonProvider.
+ */
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class BookListJsonProvider implements MessageBodyReader<List<Book>>, MessageBodyWriter<List<Book>> {
+
+    @Override
+    public boolean isReadable(final Class<?> type, final Type genericType,
+                              final Annotation[] annotations, final MediaType mediaType) {
+        return type == List.class && BookProtobufProvider.isBookList(type, genericType)
+                && BookJsonProvider.isUtf8(mediaType);
+    }
+
+    @Override
+    public List<Book> readFrom(final Class<List<Book>> type, final Type genericType, final Annotation[] annotations,
+                               final MediaType mediaType, final MultivaluedMap<String, String> httpHeaders,
+                               final InputStream entityStream) throws IOException {
+
+        try {
+            return BookJson.readList(entityStream);
+        }
+        catch (JsonParseException e) {
+            throw new BadRequestException(e);  // as MOXy
+        }
+    }
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType,
+                               final Annotation[] annotations, final MediaType mediaType) {
+        return BookProtobufProvider.isBookList(type, genericType) && BookJsonProvider.isUtf8(mediaType);
+    }
+
+    @Override
+    public long getSize(final List<Book> books, final Class<?> type, final Type genericType,
+                        final Annotation[] annotations, final MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(final List<Book> books, final Class<?> type, final Type genericType,
+                        final Annotation[] annotations, final MediaType mediaType,
+                        final MultivaluedMap<String, Object> httpHeaders,
+                        final OutputStream entityStream) throws IOException {
+
+        BookJson.writeList(books, entityStream);
+    }
+}
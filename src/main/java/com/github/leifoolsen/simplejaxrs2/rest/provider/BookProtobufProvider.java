@@ -0,0 +1,78 @@
+package com.github.leifoolsen.simplejaxrs2.rest.provider;
+
+import com.github.leifoolsen.simplejaxrs2.codec.BookProtobuf;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Reads and writes Book and List&lt;Book&gt; as application/x-protobuf, see BookProtobuf.
+ */
+@Produces(BookProtobuf.APPLICATION_PROTOBUF)
+@Consumes(BookProtobuf.APPLICATION_PROTOBUF)
+public class BookProtobufProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+    static boolean isBook(final Class<?> type) {
+        return Book.class == type;
+    }
+
+    static boolean isBookList(final Class<?> type, final Type genericType) {
+        if (!List.class.isAssignableFrom(type) || !(genericType instanceof ParameterizedType)) {
+            return false;
+        }
+        final Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+        return arguments.length == 1 && arguments[0] == Book.class;
+    }
+
+    @Override
+    public boolean isReadable(final Class<?> type, final Type genericType,
+                              final Annotation[] annotations, final MediaType mediaType) {
+        return isBook(type) || (type == List.class && isBookList(type, genericType));
+    }
+
+    @Override
+    public Object readFrom(final Class<Object> type, final Type genericType, final Annotation[] annotations,
+                           final MediaType mediaType, final MultivaluedMap<String, String> httpHeaders,
+                           final InputStream entityStream) throws IOException {
+
+        return isBook(type) ? BookProtobuf.read(entityStream) : BookProtobuf.readList(entityStream);
+    }
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType,
+                               final Annotation[] annotations, final MediaType mediaType) {
+        return isBook(type) || isBookList(type, genericType);
+    }
+
+    @Override
+    public long getSize(final Object o, final Class<?> type, final Type genericType,
+                        final Annotation[] annotations, final MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeTo(final Object o, final Class<?> type, final Type genericType, final Annotation[] annotations,
+                        final MediaType mediaType, final MultivaluedMap<String, Object> httpHeaders,
+                        final OutputStream entityStream) throws IOException {
+
+        if (o instanceof Book) {
+            BookProtobuf.write((Book) o, entityStream);
+        }
+        else {
+            BookProtobuf.writeList((List<Book>) o, entityStream);
+        }
+    }
+}
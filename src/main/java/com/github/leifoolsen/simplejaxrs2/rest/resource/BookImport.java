@@ -0,0 +1,236 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.codec.BookJson;
+import com.github.leifoolsen.simplejaxrs2.codec.JsonOutput;
+import com.github.leifoolsen.simplejaxrs2.codec.JsonParseException;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.github.leifoolsen.simplejaxrs2.repository.Catalog;
+import com.github.leifoolsen.simplejaxrs2.repository.QuotaExceededException;
+import com.github.leifoolsen.simplejaxrs2.tenant.Tenant;
+import org.glassfish.jersey.server.ChunkedOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Imports a stream of newline delimited JSON books, one book per line.
+ *
+ * Driven by servlet non blocking I/O: the container calls onDataAvailable when there is something to read,
+ * and nothing more is read from the socket until the lines already read are inserted. A slow repository
+ * therefore slows the client down through TCP flow control, and memory use is bounded by the longest line,
+ * regardless of the size of the feed.
+ *
+ * Progress is written to a chunked response as newline delimited JSON: one line per rejected book,
+ * a progress line every PROGRESS_INTERVAL lines and a summary line when the feed is done. The import slot of the
+ * tenant, see Tenant.tryAcquireImport, is given back then, or when the import is aborted.
+ */
+class BookImport implements ReadListener {
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // Lines are read on container threads, not the request thread the tenant is current on
+    private final Catalog catalog = BookRepository.catalog();
+    private final ServletInputStream in;
+    private final ChunkedOutput<byte[]> output;
+    private final Tenant tenant;
+    private boolean done;
+    private final byte[] readBuffer = new byte[8192];
+    private byte[] line = new byte[1024];
+    private int lineLength;
+    private boolean lineTooLong;
+
+    private long lines;
+    private long imported;
+    private long failed;
+
+    BookImport(final ServletInputStream in, final ChunkedOutput<byte[]> output, final Tenant tenant) {
+        this.in = in;
+        this.output = output;
+        this.tenant = tenant;
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        int n;
+        while (in.isReady() && (n = in.read(readBuffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                final byte b = readBuffer[i];
+                if (b == '\n') {
+                    endOfLine();
+                }
+                else if (lineLength == MAX_LINE_LENGTH) {
+                    lineTooLong = true;
+                }
+                else {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onAllDataRead() throws IOException {
+        try {
+            if (lineLength > 0 || lineTooLong) {
+                endOfLine();
+            }
+            done();  // before the response ends, a client that sees it end may start its next import
+            write(summary(true, null));
+            output.close();
+            logger.info("Imported {} books from {} lines, {} failed", imported, lines, failed);
+        }
+        finally {
+            done();
+        }
+    }
+
+    @Override
+    public void onError(final Throwable t) {
+        logger.warn("Import aborted after {} lines: {}", lines, t.toString());
+        try {
+            done();
+            write(summary(false, t.toString()));
+            output.close();
+        }
+        catch (IOException e) {
+            // client is gone
+        }
+        finally {
+            done();
+        }
+    }
+
+    // The container calls back one at a time, but may call onError after onAllDataRead failed
+    private void done() {
+        if (!done) {
+            done = true;
+            tenant.releaseImport();
+        }
+    }
+
+    private void endOfLine() throws IOException {
+        lines++;
+        int length = lineLength;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+
+        if (lineTooLong) {
+            lineTooLong = false;
+            rejected(null, "line longer than " + MAX_LINE_LENGTH + " bytes");
+        }
+        else if (!isBlank(line, length)) {
+            insert(length);
+        }
+        if (lines % PROGRESS_INTERVAL == 0) {
+            write(summary(null, null));
+        }
+    }
+
+    private void insert(final int length) throws IOException {
+        final Book book;
+        try {
+            book = BookJson.read(line, 0, length);
+        }
+        catch (JsonParseException e) {
+            rejected(null, e.getMessage());
+            return;
+        }
+        try {
+            Book.validate(book);
+        }
+        catch (ConstraintViolationException e) {
+            rejected(book.getIsbn(), violations(e));
+            return;
+        }
+        try {
+            if (catalog.addBook(book)) {
+                imported++;
+            }
+            else {
+                rejected(book.getIsbn(), "ISBN already in repository");
+            }
+        }
+        catch (QuotaExceededException e) {
+            rejected(book.getIsbn(), e.getMessage());
+        }
+    }
+
+    private void rejected(final String isbn, final String error) throws IOException {
+        failed++;
+        final JsonOutput json = new JsonOutput(128);
+        json.writeByte('{');
+        json.writeName("line", true);
+        json.writeLong(lines);
+        if (isbn != null) {
+            json.writeName("isbn", false);
+            json.writeString(isbn);
+        }
+        json.writeName("error", false);
+        json.writeString(error);
+        json.writeByte('}');
+        write(json);
+    }
+
+    private JsonOutput summary(final Boolean done, final String error) {
+        final JsonOutput json = new JsonOutput(128);
+        json.writeByte('{');
+        json.writeName("lines", true);
+        json.writeLong(lines);
+        json.writeName("imported", false);
+        json.writeLong(imported);
+        json.writeName("failed", false);
+        json.writeLong(failed);
+        if (done != null) {
+            json.writeName("done", false);
+            json.writeBoolean(done);
+        }
+        if (error != null) {
+            json.writeName("error", false);
+            json.writeString(error);
+        }
+        json.writeByte('}');
+        return json;
+    }
+
+    private void write(final JsonOutput json) throws IOException {
+        json.writeByte('\n');
+        output.write(json.toByteArray());
+    }
+
+    private static String violations(final ConstraintViolationException e) {
+        final StringBuilder sb = new StringBuilder();
+        for (ConstraintViolation<?> violation : e.getConstraintViolations()) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(violation.getPropertyPath()).append(": ").append(violation.getMessage());
+        }
+        return sb.length() > 0 ? sb.toString() : e.getMessage();
+    }
+
+    private static boolean isBlank(final byte[] bytes, final int length) {
+        for (int i = 0; i < length; i++) {
+            final byte b = bytes[i];
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
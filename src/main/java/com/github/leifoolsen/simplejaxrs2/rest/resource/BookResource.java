@@ -1,43 +1,93 @@
 package com.github.leifoolsen.simplejaxrs2.rest.resource;
 
+import com.github.leifoolsen.simplejaxrs2.codec.BookJson;
+import com.github.leifoolsen.simplejaxrs2.codec.BookProtobuf;
+import com.github.leifoolsen.simplejaxrs2.codec.JsonOutput;
+import com.github.leifoolsen.simplejaxrs2.codec.JsonParseException;
 import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.repository.BookLookup;
 import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.github.leifoolsen.simplejaxrs2.repository.BookStats;
+import com.github.leifoolsen.simplejaxrs2.repository.Change;
+import com.github.leifoolsen.simplejaxrs2.repository.HistoryPrunedException;
+import com.github.leifoolsen.simplejaxrs2.repository.SuggestIndex;
+import com.github.leifoolsen.simplejaxrs2.repository.Write;
+import com.github.leifoolsen.simplejaxrs2.repository.WritePipeline;
+import com.github.leifoolsen.simplejaxrs2.repository.WritesBackedUpException;
+import com.github.leifoolsen.simplejaxrs2.tenant.Tenant;
+import com.github.leifoolsen.simplejaxrs2.tenant.Tenants;
+import com.github.leifoolsen.simplejaxrs2.tracing.Span;
+import com.github.leifoolsen.simplejaxrs2.tracing.Tracer;
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.glassfish.jersey.server.ChunkedOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Singleton;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @Singleton
 @Path("books")
-@Produces(MediaType.APPLICATION_JSON)
+@Produces({MediaType.APPLICATION_JSON, BookResource.APPLICATION_PROTOBUF_QS})
 public class BookResource {
+    // Lower quality source than JSON, so clients accepting anything get JSON
+    static final String APPLICATION_PROTOBUF_QS = BookProtobuf.APPLICATION_PROTOBUF + ";qs=0.5";
+
+    public static final int MAX_BATCH_SIZE = 1000;
+    static final int MAX_SUGGESTIONS = 100;
+    static final int INSUFFICIENT_STORAGE = 507;
+    static final int TOO_MANY_REQUESTS = 429;
+    static final long RETRY_AFTER_SECONDS = 1;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private UriInfo uriInfo; // actual uri info provided by parent resource (threadsafe)
@@ -62,36 +112,53 @@ public class BookResource {
     }
 
     @POST
-    @Consumes(MediaType.APPLICATION_JSON)
-    public Response create(final Book book) {
-
-        Book.validate(book); // --> Response.Status.BAD_REQUEST if validation fails
-
-        if(BookRepository.findBook(book.getIsbn()) != null) {
-            logger.debug("Can not create book. ISBN: '{}' already in repository", book.getIsbn());
-            throw new WebApplicationException(
-                Response.status(Response.Status.CONFLICT)
-                        .location(uriInfo.getAbsolutePath())
-                        .build()
-            );
-        }
-        BookRepository.addBook(book);
-        logger.debug("Book with isbn: '{}' created", book.getIsbn());
-        return Response.created(uriInfo.getAbsolutePathBuilder().clone().path(book.getIsbn()).build())
-                .entity(book)
-                .build();
+    @Consumes({MediaType.APPLICATION_JSON, BookProtobuf.APPLICATION_PROTOBUF})
+    public void create(final Book book, @Suspended final AsyncResponse response) {
+
+        validate(book); // --> Response.Status.BAD_REQUEST if validation fails
+
+        // Completes when the write pipeline has applied the batch the book is in, see WritePipeline
+        final UriBuilder location = uriInfo.getAbsolutePathBuilder().clone().path(book.getIsbn());
+        final URI conflict = uriInfo.getAbsolutePath();
+        final Write write = Write.add(book);
+        resumeWhenApplied(write, response, new Function<Boolean, Response>() {
+            @Override
+            public Response apply(final Boolean added) {
+                if (write.isOverQuota()) {
+                    throw new WebApplicationException(
+                        Response.status(INSUFFICIENT_STORAGE)
+                                .entity("Catalog " + write.getCatalog().getName() + " is full")
+                                .type(MediaType.TEXT_PLAIN)
+                                .build()
+                    );
+                }
+                if (!added) {
+                    logger.debug("Can not create book. ISBN: '{}' already in repository", book.getIsbn());
+                    throw new WebApplicationException(
+                        Response.status(Response.Status.CONFLICT)
+                                .location(conflict)
+                                .build()
+                    );
+                }
+                logger.debug("Book with isbn: '{}' created", book.getIsbn());
+                return Response.created(location.build())
+                        .entity(book)
+                        .build();
+            }
+        });
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Path("post-with-formparam")
-    public Response postWithFormParam(
+    public void postWithFormParam(
             @FormParam(value = "isbn") String isbn,
             @FormParam(value = "title") String title,
             @FormParam(value = "author") String author,
             @FormParam(value = "published") DateAdapter published,
             @FormParam(value = "translator") String translator,
-            @FormParam(value = "summary") String summary) {
+            @FormParam(value = "summary") String summary,
+            @Suspended final AsyncResponse response) {
 
         logger.debug("@POST with @FormParam");
 
@@ -104,13 +171,13 @@ public class BookResource {
             .summary(summary)
             .build();
 
-        return create(book);
+        create(book, response);
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Path("post-with-beanparam")
-    public Response postWithBeanParam(@BeanParam final BookParams params) {
+    public void postWithBeanParam(@BeanParam final BookParams params, @Suspended final AsyncResponse response) {
         logger.debug("@POST with @BeanParam");
         Book book = Book.with(params.isbn)
                 .title(params.title)
@@ -119,47 +186,140 @@ public class BookResource {
                 .translator(params.translator)
                 .summary(params.summary)
                 .build();
-        return create(book);
+        create(book, response);
     }
 
-    @PUT
-    @Consumes(MediaType.APPLICATION_JSON)
-    public Book update(final Book book) {
+    @POST
+    @Consumes(BookImport.APPLICATION_NDJSON)
+    @Produces(BookImport.APPLICATION_NDJSON)
+    @Path("import")
+    public void importBooks(@Context final HttpServletRequest request, @Suspended final AsyncResponse response)
+            throws IOException {
+
+        // Imports are not in the tenant's budget of requests in flight, they have one of their own
+        final Tenant tenant = Tenants.current();
+        if (!tenant.tryAcquireImport()) {
+            throw new WebApplicationException(Response.status(TOO_MANY_REQUESTS)
+                    .header("Retry-After", 1)
+                    .entity("Tenant " + tenant.getId() + " has too many imports in progress")
+                    .type(MediaType.TEXT_PLAIN)
+                    .build());
+        }
 
-        Book.validate(book);  // ==> Response.Status.BAD_REQUEST if validation fails
+        // The feed is read with non blocking I/O by BookImport, see ReadListener. No thread waits for the client
+        boolean reading = false;
+        try {
+            request.getAsyncContext().setTimeout(0);
+            final ChunkedOutput<byte[]> output = new ChunkedOutput<byte[]>(byte[].class);
+            response.resume(output);
+            request.getInputStream().setReadListener(new BookImport(request.getInputStream(), output, tenant));
+            reading = true;
+        }
+        finally {
+            if (!reading) {
+                tenant.releaseImport();  // else BookImport gives it back
+            }
+        }
+    }
 
-        if(BookRepository.findBook(book.getIsbn()) == null) {
-            logger.debug("Could not update book with isbn: '{}'. Not such book in repository", book.getIsbn());
-            throw new WebApplicationException(
-                    Response.status(Response.Status.NOT_FOUND)
-                            .location(uriInfo.getAbsolutePath())
-                            .build()
-            );
+    @GET
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    @Path("changes")
+    public EventOutput changes(@QueryParam("since") final Long since,
+                               @HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) final Long lastEventId) {
+
+        // Only the default tenant's changes are fed, see Tenants
+        if (!Tenants.current().isDefault()) {
+            throw new NotFoundException();
         }
-        BookRepository.updateBook(book);
-        logger.debug("Book with isbn: '{}' updated", book.getIsbn());
-        return book;  // ==> Response.Status.OK
+        // EventSource sends Last-Event-ID when it reconnects, which takes precedence over the original ?since=
+        return ChangeFeed.subscribe(lastEventId != null ? lastEventId : since);
+    }
+
+    @PUT
+    @Consumes({MediaType.APPLICATION_JSON, BookProtobuf.APPLICATION_PROTOBUF})
+    public void update(final Book book, @Suspended final AsyncResponse response) {
+
+        validate(book);  // ==> Response.Status.BAD_REQUEST if validation fails
+
+        final URI location = uriInfo.getAbsolutePath();
+        resumeWhenApplied(Write.replace(book), response, new Function<Boolean, Response>() {
+            @Override
+            public Response apply(final Boolean updated) {
+                if (!updated) {
+                    logger.debug("Could not update book with isbn: '{}'. Not such book in repository", book.getIsbn());
+                    throw new WebApplicationException(
+                            Response.status(Response.Status.NOT_FOUND)
+                                    .location(location)
+                                    .build()
+                    );
+                }
+                logger.debug("Book with isbn: '{}' updated", book.getIsbn());
+                return Response.ok(book).build();  // ==> Response.Status.OK
+            }
+        });
     }
 
     @DELETE
     @Path("{isbn}")
-    public void delete(@PathParam("isbn") final String isbn) {
-        
-        if(BookRepository.findBook(isbn) != null) {
-            boolean deleted = BookRepository.removeBook(isbn);
-            logger.debug((deleted ? "Book with isbn: '{}' deleted" : "Nothing to delete @ isbn: '{}'"), isbn);
+    public void delete(@PathParam("isbn") final String isbn, @Suspended final AsyncResponse response) {
+
+        final URI location = uriInfo.getAbsolutePath();
+        resumeWhenApplied(Write.remove(isbn), response, new Function<Boolean, Response>() {
+            @Override
+            public Response apply(final Boolean deleted) {
+                if (!deleted) {
+                    logger.debug(("Book with isbn: '{}' not found"), isbn);
+                    throw new WebApplicationException(
+                            Response.status(Response.Status.NOT_FOUND)
+                                    .location(location)
+                                    .entity("Book with isbn: '" + isbn + "' not found")
+                                    .type(MediaType.TEXT_PLAIN)
+                                    .build()
+                    );
+                }
+                logger.debug("Book with isbn: '{}' deleted", isbn);
+                return Response.noContent().build();
+            }
+        });
+    }
+
+    private static void validate(final Book book) {
+        final Span span = Tracer.start("Book.validate");
+        try {
+            Book.validate(book);
         }
-        else {
-            logger.debug(("Book with isbn: '{}' not found"), isbn);
-            throw new WebApplicationException(
-                    Response.status(Response.Status.NOT_FOUND)
-                            .location(uriInfo.getAbsolutePath())
-                            .entity("Book with isbn: '" + isbn + "' not found")
-                            .type(MediaType.TEXT_PLAIN)
-                            .build()
-            );
+        finally {
+            span.end();
         }
-        //return ==> Response.Status.NO_CONTENT
+    }
+
+    /**
+     * Queues the write and resumes the response with what toResponse makes of its outcome, or with what it throws.
+     * 503 Service Unavailable if the write pipeline is full
+     */
+    private static void resumeWhenApplied(final Write write, final AsyncResponse response,
+                                          final Function<Boolean, Response> toResponse) {
+        Futures.addCallback(WritePipeline.submit(write), new FutureCallback<Boolean>() {
+            @Override
+            public void onSuccess(final Boolean applied) {
+                try {
+                    response.resume(toResponse.apply(applied));
+                }
+                catch (WebApplicationException e) {
+                    response.resume(e);
+                }
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                if (t instanceof WritesBackedUpException) {
+                    response.resume(new ServiceUnavailableException(RETRY_AFTER_SECONDS));
+                    return;
+                }
+                response.resume(t);
+            }
+        });
     }
 
     @GET
@@ -170,7 +330,7 @@ public class BookResource {
             @Pattern(regexp = "\\d+", message = "ISBN must be a valid number")
             @PathParam("isbn") final String isbn) {
 
-        Book result = BookRepository.findBook(isbn);
+        Book result = BookLookup.findBook(isbn);
         if (result == null) {
             logger.debug(("Book with isbn: '{}' not found"), isbn);
             throw new WebApplicationException(
@@ -183,8 +343,66 @@ public class BookResource {
         // return Response.Status.BAD_REQUEST if Bean validation fails
     }
 
+    /**
+     * The versions of the book still kept, newest first, see BookHistory
+     */
     @GET
-    public Response allBooks(@QueryParam("offset") Integer offset, @QueryParam("limit") Integer limit) {
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("{isbn}/history")
+    public Response history(@PathParam("isbn") final String isbn) {
+        final List<Change> versions = BookRepository.getHistory().versions(isbn);
+        if (versions.isEmpty()) {
+            throw new NotFoundException("No history of book with isbn: '" + isbn + "'");
+        }
+        return Response
+                .ok(new StreamingOutput() {
+                    @Override
+                    public void write(final OutputStream output) throws IOException {
+                        writeHistory(versions, output);
+                    }
+                })
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .build();
+    }
+
+    // [{"sequence":..,"type":"updated","book":{...}},...]
+    private static void writeHistory(final List<Change> versions, final OutputStream output) throws IOException {
+        output.write('[');
+        boolean first = true;
+        for (Change version : versions) {
+            final JsonOutput json = new JsonOutput(64);
+            if (!first) {
+                json.writeByte(',');
+            }
+            first = false;
+            json.writeByte('{');
+            json.writeName("sequence", true);
+            json.writeLong(version.getSequence());
+            json.writeName("type", false);
+            json.writeString(version.getType().name().toLowerCase());
+            json.writeName("book", false);
+            json.writeTo(output);
+            BookJson.write(version.getBook(), output);
+            output.write('}');
+        }
+        output.write(']');
+    }
+
+    /**
+     * A page of books by ISBN, as of now or, with asOf, as they were right after the change with that sequence.
+     * Sequences are those of the change feed and of book history. A read as of a sequence history no longer goes
+     * back to is 410 Gone.
+     */
+    @GET
+    public Response allBooks(@QueryParam("offset") Integer offset, @QueryParam("limit") Integer limit,
+                             @QueryParam("asOf") final Long asOf, @QueryParam("isbn") final List<String> isbns) {
+        if (!isbns.isEmpty()) {
+            if (isbns.size() > MAX_BATCH_SIZE) {
+                throw new BadRequestException("More than " + MAX_BATCH_SIZE + " ISBNs");
+            }
+            return batch(isbns);
+        }
+
         UriBuilder uriBuilder = uriInfo.getAbsolutePathBuilder().clone();
         if(offset != null) {
             uriBuilder.queryParam("offset", offset);
@@ -192,8 +410,11 @@ public class BookResource {
         if(limit != null) {
             uriBuilder.queryParam("limit", limit);
         }
+        if(asOf != null) {
+            uriBuilder.queryParam("asOf", asOf);
+        }
 
-        List<Book> books = BookRepository.getAllBooks(offset, limit);
+        List<Book> books = asOf != null ? allBooksAsOf(asOf, offset, limit) : BookLookup.getAllBooks(offset, limit);
         if(books.size()< 1) {
             return Response
                     .noContent()
@@ -211,12 +432,133 @@ public class BookResource {
             .build();
     }
 
+    private static List<Book> allBooksAsOf(final long asOf, final Integer offset, final Integer limit) {
+        try {
+            return BookRepository.getAllBooksAsOf(asOf, offset, limit);
+        }
+        catch (HistoryPrunedException e) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.GONE)
+                            .entity(e.getMessage())
+                            .type(MediaType.TEXT_PLAIN)
+                            .build()
+            );
+        }
+        catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("batch-get")
+    public Response batchGet(final InputStream entity) throws IOException {
+        try {
+            return batch(BookJson.readStrings(entity, MAX_BATCH_SIZE));
+        }
+        catch (JsonParseException e) {
+            throw new BadRequestException(e);
+        }
+    }
+
+    /**
+     * Many books in one request and one pass over the repository, see BookJson.writeBatch.
+     * Books are written in the order asked for, duplicates only once.
+     */
+    private Response batch(final List<String> isbns) {
+        final List<String> unique = Lists.newArrayList(
+                Sets.newLinkedHashSet(Iterables.filter(isbns, Predicates.notNull())));
+        final List<Book> books = BookRepository.findBooks(unique);
+        return Response
+                .ok(new StreamingOutput() {
+                    @Override
+                    public void write(final OutputStream output) throws IOException {
+                        BookJson.writeBatch(unique, books, output);
+                    }
+                })
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .build();
+    }
+
+    /**
+     * Typeahead: titles and authors starting with the prefix, see SuggestIndex.
+     * In a partitioned cluster the suggestions are those of the node answering.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("suggest")
+    public Response suggest(@QueryParam("prefix") final String prefix, @QueryParam("limit") final Integer limit) {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            throw new BadRequestException("prefix is missing");
+        }
+        final int n = Math.max(0, Math.min(MoreObjects.firstNonNull(limit, 10), MAX_SUGGESTIONS));
+
+        final JsonOutput json = new JsonOutput(1024);
+        json.writeByte('[');
+        boolean first = true;
+        for (SuggestIndex.Suggestion suggestion : BookRepository.suggest(prefix, n)) {
+            if (!first) {
+                json.writeByte(',');
+            }
+            first = false;
+            json.writeByte('{');
+            json.writeName("text", true);
+            json.writeString(suggestion.getText());
+            json.writeName("field", false);
+            json.writeString(suggestion.getField().name().toLowerCase(Locale.ROOT));
+            if (suggestion.getIsbn() != null) {
+                json.writeName("isbn", false);
+                json.writeString(suggestion.getIsbn());
+            }
+            json.writeByte('}');
+        }
+        json.writeByte(']');
+        return Response.ok(json.toByteArray(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    /**
+     * Number of books, and books per publisher, author and year, see BookStats.
+     * In a partitioned cluster the counts are those of the node answering.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("stats")
+    public Response stats() {
+        final BookStats stats = BookRepository.getStats();
+        final JsonOutput json = new JsonOutput(4096);
+        json.writeByte('{');
+        json.writeName("books", true);
+        json.writeLong(stats.getBooks());
+        writeCounts("publishers", stats.getPublishers(), json);
+        writeCounts("authors", stats.getAuthors(), json);
+        writeCounts("years", stats.getYears(), json);
+        json.writeByte('}');
+        return Response.ok(json.toByteArray(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    private static void writeCounts(final String name, final Map<?, Integer> counts, final JsonOutput json) {
+        json.writeName(name, false);
+        json.writeByte('{');
+        boolean first = true;
+        for (Map.Entry<?, Integer> count : counts.entrySet()) {
+            if (!first) {
+                json.writeByte(',');
+            }
+            first = false;
+            json.writeString(count.getKey().toString());  // author names need escaping, writeName does none
+            json.writeByte(':');
+            json.writeLong(count.getValue());
+        }
+        json.writeByte('}');
+    }
+
     @GET
     @Path("publisher/{name}")
     public Response booksByPublisher(@PathParam("name") final String name) {
         UriBuilder uriBuilder = uriInfo.getAbsolutePathBuilder().clone();
 
-        List<Book> books = BookRepository.getBooksByPublisher(name);
+        List<Book> books = BookLookup.getBooksByPublisher(name);
         if(books.size()< 1) {
             return Response
                     .noContent()
@@ -236,7 +578,9 @@ public class BookResource {
     @Path("unhandeled-exception")
     public Response unhandledExceptionWillReturn_INTERNAL_SERVER_ERROR() {
         UriBuilder uriBuilder = uriInfo.getAbsolutePathBuilder().clone();
-        logger.debug("Throwing IllegalStateException @: {}", uriBuilder.build());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Throwing IllegalStateException @: {}", uriBuilder.build());
+        }
         throw new IllegalStateException("Illegal state exception thrown");
     }
     
@@ -0,0 +1,344 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.codec.BookJson;
+import com.github.leifoolsen.simplejaxrs2.codec.JsonOutput;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Lifecycle;
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepositoryListener;
+import com.github.leifoolsen.simplejaxrs2.repository.Change;
+import com.github.leifoolsen.simplejaxrs2.repository.ChangeLog;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.ServiceUnavailableException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes the BookRepository change log to Server-Sent Events subscribers.
+ *
+ * Writers only append to the ChangeLog; they never wait for subscribers. Each subscriber keeps a cursor into
+ * the log and is drained on a small pool when there are new changes. A subscriber that is behind gets the
+ * backlog coalesced, only the latest change per ISBN. One that falls more than the log capacity behind gets
+ * a "reset" event, should reload the books, and continues from the oldest change still in the log. So does one
+ * resuming from a sequence the log has not reached, say one from before a restart, from the latest change.
+ *
+ * Event ids are change sequence numbers, so clients resume with ?since=id or the Last-Event-ID header.
+ *
+ * Writes to a subscriber block while its socket buffer is full. A write that takes longer than WRITE_TIMEOUT_MS
+ * is interrupted by a watchdog and the subscriber is dropped, so a client that stops reading holds a thread of
+ * the pool for that long at most, not for as long as it keeps the connection open. It resumes from its last
+ * event id when it reconnects.
+ */
+class ChangeFeed {
+    static final String WRITE_TIMEOUT_MS = "simplejaxrs2.changes.write-timeout-ms";
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeed.class);
+
+    private static final int BATCH_SIZE = 256;
+    private static final int THREADS = 8;
+    private static final long HEARTBEAT_SECONDS = 15;
+    private static final long RETRY_AFTER_SECONDS = 1;
+    private static final long WATCHDOG_INTERVAL_MS = 1000;
+
+    private static final Set<Subscriber> subscribers = Sets.newConcurrentHashSet();
+
+    private static final ExecutorService executor;
+    private static final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("change-feed-heartbeat").setDaemon(true).build());
+
+    private static final StripedCounter coalesced = MetricsRegistry.counter("changes_coalesced_total",
+            "Changes not sent because a later change to the same book was sent instead.", "");
+    private static final StripedCounter resets = MetricsRegistry.counter("changes_resets_total",
+            "Subscribers that fell behind the change log capacity.", "");
+    private static final StripedCounter stalled = MetricsRegistry.counter("changes_stalled_total",
+            "Subscribers dropped because a write to them took longer than the write timeout.", "");
+
+    static {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("change-feed-%d").setDaemon(true).build());
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+
+        BookRepository.addListener(new BookRepositoryListener() {
+            @Override
+            public void bookAdded(final Book book) {
+                changed();
+            }
+
+            @Override
+            public void bookUpdated(final Book previous, final Book book) {
+                changed();
+            }
+
+            @Override
+            public void bookRemoved(final Book book) {
+                changed();
+            }
+        });
+
+        // Subscriptions never complete by themselves, end them so the server can drain
+        Lifecycle.onDrain(new Runnable() {
+            @Override
+            public void run() {
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.close();
+                }
+            }
+        });
+
+        heartbeat.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.heartbeatDue = true;
+                    subscriber.schedule();
+                }
+            }
+        }, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+
+        heartbeat.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                final long timeout = TimeUnit.MILLISECONDS.toNanos(Long.getLong(WRITE_TIMEOUT_MS, 10000));
+                final long now = System.nanoTime();
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.interruptIfStalled(now, timeout);
+                }
+            }
+        }, WATCHDOG_INTERVAL_MS, WATCHDOG_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        MetricsRegistry.gauge("changes_subscribers", "Open change feed subscriptions.", "", new Gauge() {
+            @Override
+            public double value() {
+                return subscribers.size();
+            }
+        });
+        MetricsRegistry.gauge("changes_last_sequence", "Sequence number of the latest change.", "", new Gauge() {
+            @Override
+            public double value() {
+                return BookRepository.getChanges().lastSequence();
+            }
+        });
+    }
+
+    private ChangeFeed() {}
+
+    /**
+     * @param since last sequence the client has seen, or null for changes from now on
+     * @throws ServiceUnavailableException while the server is draining, the client should subscribe elsewhere
+     */
+    static EventOutput subscribe(final Long since) {
+        return subscribe(since, new EventOutput());
+    }
+
+    // The output is the one the response is resumed with, or, in tests, one that stands in for a client
+    static EventOutput subscribe(final Long since, final EventOutput output) {
+        final long cursor = since != null ? since : BookRepository.getChanges().lastSequence();
+        final Subscriber subscriber = new Subscriber(output, cursor);
+        subscribers.add(subscriber);
+        // After adding, so a subscriber the drain listener did not see to close is turned away here
+        if (Lifecycle.isDraining()) {
+            subscribers.remove(subscriber);
+            throw new ServiceUnavailableException(RETRY_AFTER_SECONDS);
+        }
+        subscriber.schedule();
+        return output;
+    }
+
+    private static void changed() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.schedule();
+        }
+    }
+
+    static Collection<Change> coalesce(final List<Change> changes) {
+        if (changes.size() < 2) {
+            return changes;
+        }
+        // Keep the last change per ISBN, in the order of those last changes
+        final Map<String, Change> latest = Maps.newLinkedHashMap();
+        for (Change change : changes) {
+            latest.remove(change.getBook().getIsbn());
+            latest.put(change.getBook().getIsbn(), change);
+        }
+        return latest.values();
+    }
+
+    private static class Subscriber implements Runnable {
+        private final EventOutput output;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private long cursor;  // only touched by the draining thread, which scheduled hands over
+        private volatile boolean heartbeatDue;
+
+        // The thread blocked in a write and since when, guarded by this, so the watchdog never interrupts
+        // a thread that has moved on
+        private Thread writer;
+        private long writingSince;
+        private boolean interrupted;
+
+        Subscriber(final EventOutput output, final long cursor) {
+            this.output = output;
+            this.cursor = cursor;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                drain();
+            }
+            catch (IOException e) {
+                close();
+            }
+            catch (RuntimeException e) {
+                logger.warn("Change feed subscriber failed", e);
+                close();
+            }
+            finally {
+                scheduled.set(false);
+            }
+            // A change appended after the last read found scheduled set, and skipped scheduling
+            if (!output.isClosed() && BookRepository.getChanges().lastSequence() > cursor) {
+                schedule();
+            }
+        }
+
+        private void drain() throws IOException {
+            if (output.isClosed()) {
+                close();
+                return;
+            }
+            final ChangeLog changes = BookRepository.getChanges();
+            boolean wrote = false;
+            final long last = changes.lastSequence();
+            if (cursor > last) {
+                write(reset(cursor, last + 1));
+                resets.increment();
+                cursor = last;
+                wrote = true;
+            }
+            while (cursor < changes.lastSequence()) {
+                final long first = changes.firstSequence();
+                if (cursor + 1 < first) {
+                    write(reset(cursor, first));
+                    resets.increment();
+                    cursor = first - 1;
+                }
+                final List<Change> batch = changes.since(cursor, BATCH_SIZE);
+                if (batch.isEmpty()) {
+                    continue;  // overwritten while reading, reset on the next round
+                }
+                final Collection<Change> coalescedBatch = coalesce(batch);
+                coalesced.add(batch.size() - coalescedBatch.size());
+                for (Change change : coalescedBatch) {
+                    write(event(change));
+                }
+                cursor = batch.get(batch.size() - 1).getSequence();
+                wrote = true;
+            }
+            if (heartbeatDue) {
+                heartbeatDue = false;
+                if (!wrote) {
+                    write(new OutboundEvent.Builder().comment("heartbeat").build());
+                }
+            }
+        }
+
+        private void write(final OutboundEvent event) throws IOException {
+            synchronized (this) {
+                if (interrupted) {
+                    throw new InterruptedIOException("Dropped for not taking writes");
+                }
+                writer = Thread.currentThread();
+                writingSince = System.nanoTime();
+            }
+            try {
+                output.write(event);
+            }
+            finally {
+                synchronized (this) {
+                    writer = null;
+                    if (interrupted) {
+                        Thread.interrupted();  // the pool thread goes on to other subscribers
+                    }
+                }
+            }
+        }
+
+        // On the watchdog thread. Jetty's blocking write then fails with InterruptedIOException, and run closes
+        synchronized void interruptIfStalled(final long now, final long timeoutNanos) {
+            if (writer != null && !interrupted && now - writingSince > timeoutNanos) {
+                logger.info("Dropping a change feed subscriber that has not taken a write for {} ms",
+                        TimeUnit.NANOSECONDS.toMillis(now - writingSince));
+                interrupted = true;
+                stalled.increment();
+                subscribers.remove(this);
+                writer.interrupt();
+            }
+        }
+
+        private void close() {
+            subscribers.remove(this);
+            try {
+                output.close();
+            }
+            catch (IOException e) {
+                // already gone
+            }
+        }
+
+        private static OutboundEvent event(final Change change) throws IOException {
+            final ByteArrayOutputStream json = new ByteArrayOutputStream(512);
+            BookJson.write(change.getBook(), json);
+            return new OutboundEvent.Builder()
+                    .id(Long.toString(change.getSequence()))
+                    .name(change.getType().name().toLowerCase())
+                    .data(String.class, json.toString("UTF-8"))
+                    .build();
+        }
+
+        private static OutboundEvent reset(final long since, final long first) {
+            final JsonOutput json = new JsonOutput(64);
+            json.writeByte('{');
+            json.writeName("since", true);
+            json.writeLong(since);
+            json.writeName("first", false);
+            json.writeLong(first);
+            json.writeByte('}');
+            return new OutboundEvent.Builder()
+                    .id(Long.toString(first - 1))
+                    .name("reset")
+                    .data(String.class, new String(json.toByteArray(), Charsets.UTF_8))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.cluster.Cluster;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import javax.inject.Singleton;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Membership and node local book access for a partitioned cluster, see Cluster.
+ * Everything answers 404 on a standalone node. Joins, member lists and hand overs answer 403 unless they come
+ * from a node of the cluster, with Cluster.INTERNAL_HEADER.
+ */
+@Singleton
+@Path("cluster")
+public class ClusterResource {
+
+    @GET
+    @Path("nodes")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String nodes() {
+        checkClustered();
+        return Joiner.on('\n').join(Cluster.getNodes());
+    }
+
+    /**
+     * A node joins, entity is the base URI of its API
+     */
+    @POST
+    @Path("nodes")
+    @Consumes(MediaType.TEXT_PLAIN)
+    public void join(@HeaderParam(Cluster.INTERNAL_HEADER) final String internal, final String node) {
+        checkMember(internal);
+        Cluster.join(URI.create(node.trim()));
+    }
+
+    /**
+     * The new member list from the node a node joined through, one base URI per line
+     */
+    @PUT
+    @Path("nodes")
+    @Consumes(MediaType.TEXT_PLAIN)
+    public void members(@HeaderParam(Cluster.INTERNAL_HEADER) final String internal, final String members) {
+        checkMember(internal);
+        Cluster.setNodes(Cluster.parseNodes(members));
+    }
+
+    /**
+     * This node's books, by ISBN, for scatter-gather queries. With isbn parameters, those of them this node has
+     */
+    @GET
+    @Path("local/books")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response localBooks(@QueryParam("publisher") final String publisher,
+                               @QueryParam("limit") final Integer limit,
+                               @QueryParam("isbn") final List<String> isbns) {
+        checkClustered();
+        final List<Book> books = !isbns.isEmpty()
+                ? Lists.newArrayList(Iterables.filter(BookRepository.findBooks(isbns), Predicates.notNull()))
+                : Cluster.localBooks(publisher, MoreObjects.firstNonNull(limit, Integer.MAX_VALUE));
+        return Response.ok(new GenericEntity<List<Book>>(books) {}).build();
+    }
+
+    /**
+     * Stores a book handed over by its previous owner, see Cluster.receive. A stale copy is dropped, which is
+     * still a successful hand over
+     */
+    @PUT
+    @Path("local/books")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void handOver(@HeaderParam(Cluster.INTERNAL_HEADER) final String internal, final Book book) {
+        checkMember(internal);
+        Cluster.receive(book);
+    }
+
+    private static void checkClustered() {
+        if (!Cluster.isClustered()) {
+            throw new NotFoundException();
+        }
+    }
+
+    private static void checkMember(final String internalHeader) {
+        checkClustered();
+        if (!Cluster.isMember(internalHeader)) {
+            throw new ForbiddenException();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.codec.JsonOutput;
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Readiness;
+
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+/**
+ * Probes for load balancers and orchestrators. Not rate limited, see RateLimitFilter:
+ * an overloaded node must still answer them.
+ * <ul>
+ *     <li>live: 200 as long as the application answers requests at all. Restart the node if it does not.</li>
+ *     <li>ready: 200 if the node should take traffic, otherwise 503 with the reasons, see Readiness.</li>
+ * </ul>
+ */
+@Singleton
+@Path("health")
+public class HealthResource {
+    private static final CacheControl NO_CACHE = CacheControl.valueOf("no-cache");
+
+    @GET
+    @Path("live")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response live() {
+        return Response.ok("{\"live\":true}").cacheControl(NO_CACHE).build();
+    }
+
+    @GET
+    @Path("ready")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response ready() {
+        final Map<String, String> problems = Readiness.problems();
+
+        final JsonOutput json = new JsonOutput(128);
+        json.writeByte('{');
+        json.writeName("ready", true);
+        json.writeBoolean(problems.isEmpty());
+        if (!problems.isEmpty()) {
+            json.writeName("problems", false);
+            json.writeByte('{');
+            boolean first = true;
+            for (Map.Entry<String, String> problem : problems.entrySet()) {
+                json.writeName(problem.getKey(), first);
+                json.writeString(problem.getValue());
+                first = false;
+            }
+            json.writeByte('}');
+        }
+        json.writeByte('}');
+
+        return Response.status(problems.isEmpty() ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE)
+                .entity(json.toByteArray())
+                .cacheControl(NO_CACHE)
+                .build();
+    }
+}
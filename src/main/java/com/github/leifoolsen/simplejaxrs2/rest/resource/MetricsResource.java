@@ -0,0 +1,21 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+@Singleton
+@Path("metrics")
+public class MetricsResource {
+    // Prometheus text exposition format
+    public static final String TEXT_PLAIN_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+    @GET
+    @Produces(TEXT_PLAIN_PROMETHEUS)
+    public String metrics() {
+        return MetricsRegistry.scrape();
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.codec.JsonOutput;
+import com.github.leifoolsen.simplejaxrs2.repository.PublisherRegistry;
+
+import javax.inject.Singleton;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.Map;
+
+/**
+ * The publisher registry, see PublisherRegistry. Publishers are identified by their ISBN-13 prefix.
+ */
+@Singleton
+@Path("publishers")
+@Produces(MediaType.APPLICATION_JSON)
+public class PublisherResource {
+
+    @GET
+    public Response all() {
+        final JsonOutput json = new JsonOutput(1024);
+        json.writeByte('[');
+        boolean first = true;
+        for (Map.Entry<String, String> publisher : PublisherRegistry.getAll().entrySet()) {
+            if (!first) {
+                json.writeByte(',');
+            }
+            first = false;
+            writePublisher(publisher.getKey(), publisher.getValue(), json);
+        }
+        json.writeByte(']');
+        return Response.ok(json.toByteArray()).build();
+    }
+
+    @GET
+    @Path("{prefix}")
+    public Response byPrefix(@PathParam("prefix") final String prefix) {
+        return publisher(prefix, PublisherRegistry.get(prefix));
+    }
+
+    /**
+     * The publisher of a book, by the longest registered prefix of its ISBN
+     */
+    @GET
+    @Path("isbn/{isbn}")
+    public Response byIsbn(@PathParam("isbn") final String isbn) {
+        final String prefix = PublisherRegistry.findPrefix(isbn);
+        return publisher(prefix, prefix != null ? PublisherRegistry.get(prefix) : null);
+    }
+
+    /**
+     * Registers or renames the publisher of a prefix, entity is the name
+     */
+    @PUT
+    @Path("{prefix}")
+    @Consumes(MediaType.TEXT_PLAIN)
+    public Response put(@PathParam("prefix") final String prefix, final String name, @Context final UriInfo uriInfo) {
+        final boolean created;
+        try {
+            created = PublisherRegistry.put(prefix, name);
+        }
+        catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+        return created
+                ? Response.created(uriInfo.getAbsolutePath()).build()
+                : Response.noContent().build();
+    }
+
+    @DELETE
+    @Path("{prefix}")
+    public void delete(@PathParam("prefix") final String prefix) {
+        if (!PublisherRegistry.remove(prefix)) {
+            throw new NotFoundException("Publisher with prefix " + prefix + " not found");
+        }
+    }
+
+    private static Response publisher(final String prefix, final String name) {
+        if (name == null) {
+            throw new NotFoundException();
+        }
+        final JsonOutput json = new JsonOutput(128);
+        writePublisher(prefix, name, json);
+        return Response.ok(json.toByteArray()).build();
+    }
+
+    private static void writePublisher(final String prefix, final String name, final JsonOutput json) {
+        json.writeByte('{');
+        json.writeName("prefix", true);
+        json.writeString(prefix);
+        json.writeName("name", false);
+        json.writeString(name);
+        json.writeByte('}');
+    }
+}
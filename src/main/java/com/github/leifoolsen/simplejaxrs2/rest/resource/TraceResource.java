@@ -0,0 +1,32 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.tracing.Tracer;
+
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The most recent spans of sampled requests, in the Trace Event Format. Save and open in chrome://tracing
+ * or https://ui.perfetto.dev. Empty unless tracing is on, see Tracer.
+ */
+@Singleton
+@Path("traces")
+public class TraceResource {
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public StreamingOutput traces() {
+        return new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                Tracer.writeTraceEvents(output);
+            }
+        };
+    }
+}
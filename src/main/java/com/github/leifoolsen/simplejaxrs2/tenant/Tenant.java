@@ -0,0 +1,110 @@
+package com.github.leifoolsen.simplejaxrs2.tenant;
+
+import com.github.leifoolsen.simplejaxrs2.metrics.Gauge;
+import com.github.leifoolsen.simplejaxrs2.metrics.Histogram;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import com.github.leifoolsen.simplejaxrs2.repository.Catalog;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bookstore with a catalog of its own, and a budget of requests in flight, so one tenant's load cannot take
+ * all the threads. Imports stream for as long as the client sends, and have a smaller budget of their own.
+ * Requests, rejections, latency, books and requests in flight are exported per tenant.
+ */
+public class Tenant {
+    private final String id;
+    private final Catalog catalog;
+    private final int maxConcurrent;
+    private final Semaphore slots;
+    private final Semaphore imports;
+
+    private final StripedCounter requests;
+    private final StripedCounter rejected;
+    private final Histogram latency;
+
+    Tenant(final String id, final Catalog catalog, final int maxConcurrent, final int maxImports) {
+        this.id = id;
+        this.catalog = catalog;
+        this.maxConcurrent = maxConcurrent;
+        this.slots = new Semaphore(maxConcurrent);
+        this.imports = new Semaphore(maxImports);
+
+        final String labels = MetricsRegistry.labels("tenant", id);
+        requests = MetricsRegistry.counter("tenant_requests_total", "Requests served per tenant.", labels);
+        rejected = MetricsRegistry.counter("tenant_rejected_total",
+                "Requests rejected because the tenant had its budget of requests in flight.", labels);
+        latency = MetricsRegistry.histogram("tenant_request_duration_seconds", "Request latency per tenant.", labels);
+
+        MetricsRegistry.gauge("tenant_books", "Books in the tenant's catalog.", labels, new Gauge() {
+            @Override
+            public double value() { return catalog.countBooks(); }
+        });
+        MetricsRegistry.gauge("tenant_in_flight", "Requests in flight per tenant.", labels, new Gauge() {
+            @Override
+            public double value() { return getInFlight(); }
+        });
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getInFlight() {
+        return maxConcurrent - slots.availablePermits();
+    }
+
+    public boolean isDefault() {
+        return Tenants.DEFAULT.equals(id);
+    }
+
+    /**
+     * Takes a slot of the tenant's budget of requests in flight.
+     * @return false if the budget is used up, then the request should be rejected
+     */
+    public boolean tryAcquire() {
+        if (!slots.tryAcquire()) {
+            rejected.increment();
+            return false;
+        }
+        requests.increment();
+        return true;
+    }
+
+    /**
+     * Gives back a slot taken by tryAcquire
+     * @param latencyNanos time the request held the slot
+     */
+    public void release(final long latencyNanos) {
+        slots.release();
+        latency.observe(latencyNanos);
+    }
+
+    /**
+     * Takes a slot of the tenant's budget of imports in progress.
+     * @return false if the budget is used up, then the import should be rejected
+     */
+    public boolean tryAcquireImport() {
+        if (!imports.tryAcquire()) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back a slot taken by tryAcquireImport, when the import is done or aborted
+     */
+    public void releaseImport() {
+        imports.release();
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.leifoolsen.simplejaxrs2.tenant;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.github.leifoolsen.simplejaxrs2.repository.Catalog;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * The tenants of this node. A request picks its tenant with the X-Tenant header or a tenants/{tenant}/ path
+ * prefix, see TenantFilter, and is served by the default tenant without either. The tenant is then current
+ * on the request's thread, and BookRepository serves its catalog.
+ *
+ * The default catalog is the one that is cached, replicated, partitioned across a cluster and fed to change
+ * subscribers. The catalogs of other tenants are local to the node.
+ *
+ * Configured with system properties, e.g.
+ * <pre>
+ * -Dsimplejaxrs2.tenants=oslo,bergen
+ * -Dsimplejaxrs2.tenant.max-books=100000
+ * -Dsimplejaxrs2.tenant.max-concurrent=50
+ * -Dsimplejaxrs2.tenant.max-imports=1
+ * -Dsimplejaxrs2.tenant.oslo.max-books=500000
+ * </pre>
+ * The book quota does not apply to the default tenant, the concurrency budget does.
+ */
+public class Tenants {
+    public static final String DEFAULT = "default";
+
+    public static final String TENANTS = "simplejaxrs2.tenants";
+    public static final String MAX_BOOKS = "simplejaxrs2.tenant.max-books";
+    public static final String MAX_CONCURRENT = "simplejaxrs2.tenant.max-concurrent";
+    public static final String MAX_IMPORTS = "simplejaxrs2.tenant.max-imports";
+    public static final String CHANGE_LOG_CAPACITY = "simplejaxrs2.tenant.changes.capacity";
+
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final String PER_TENANT = "simplejaxrs2.tenant.";
+
+    private static final ConcurrentMap<String, Tenant> tenants = new ConcurrentSkipListMap<String, Tenant>();
+    private static final ThreadLocal<Tenant> current = new ThreadLocal<Tenant>();
+    private static final Tenant defaultTenant = new Tenant(DEFAULT, BookRepository.defaultCatalog(),
+            setting(DEFAULT, "max-concurrent", MAX_CONCURRENT, 100),
+            setting(DEFAULT, "max-imports", MAX_IMPORTS, 1));
+
+    static {
+        tenants.put(DEFAULT, defaultTenant);
+        for (String id : Splitter.on(',').trimResults().omitEmptyStrings().split(System.getProperty(TENANTS, ""))) {
+            add(id);
+        }
+    }
+
+    private Tenants() {}
+
+    /**
+     * Adds a tenant with an empty catalog, quotas as configured
+     * @return the tenant, the one already added if there is one with the id
+     */
+    public static Tenant add(final String id) {
+        Preconditions.checkArgument(isValidId(id), "Not a valid tenant id: %s", id);
+        Tenant tenant = tenants.get(id);
+        if (tenant == null) {
+            synchronized (tenants) {
+                tenant = tenants.get(id);
+                if (tenant == null) {
+                    tenant = new Tenant(id,
+                            new Catalog(id, setting(id, "max-books", MAX_BOOKS, 100000),
+                                    Integer.getInteger(CHANGE_LOG_CAPACITY, 1024), Collections.<Book>emptyList()),
+                            setting(id, "max-concurrent", MAX_CONCURRENT, 100),
+                            setting(id, "max-imports", MAX_IMPORTS, 1));
+                    tenants.put(id, tenant);
+                }
+            }
+        }
+        return tenant;
+    }
+
+    /**
+     * Drops a tenant and its catalog, requests already serving it may still finish
+     * @return false if there is no such tenant, or it is the default tenant, which is never dropped
+     */
+    public static boolean remove(final String id) {
+        if (DEFAULT.equals(id)) {
+            return false;
+        }
+        final Tenant tenant = tenants.remove(id);
+        if (tenant == null) {
+            return false;
+        }
+        tenant.getCatalog().close();
+        return true;
+    }
+
+    /**
+     * @return the tenant, null if there is none with the id
+     */
+    public static Tenant get(final String id) {
+        return tenants.get(id);
+    }
+
+    public static Collection<Tenant> all() {
+        return Collections.unmodifiableCollection(tenants.values());
+    }
+
+    public static List<Catalog> catalogs() {
+        final List<Catalog> catalogs = Lists.newArrayList();
+        for (Tenant tenant : tenants.values()) {
+            catalogs.add(tenant.getCatalog());
+        }
+        return catalogs;
+    }
+
+    public static Tenant getDefault() {
+        return defaultTenant;
+    }
+
+    /**
+     * @return the tenant of the request this thread serves, the default tenant on any other thread
+     */
+    public static Tenant current() {
+        final Tenant tenant = current.get();
+        return tenant != null ? tenant : defaultTenant;
+    }
+
+    /**
+     * Makes the tenant current on this thread, until clearCurrent
+     */
+    public static void setCurrent(final Tenant tenant) {
+        current.set(tenant);
+    }
+
+    public static void clearCurrent() {
+        current.remove();
+    }
+
+    public static boolean isValidId(final String id) {
+        return id != null && VALID_ID.matcher(id).matches();
+    }
+
+    // simplejaxrs2.tenant.<id>.<name>, or the setting for all tenants
+    private static int setting(final String id, final String name, final String all, final int otherwise) {
+        return Integer.getInteger(PER_TENANT + id + "." + name, Integer.getInteger(all, otherwise));
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.leifoolsen.simplejaxrs2.tracing;
+
+/**
+ * A timed section of a traced request, see Tracer.start. End it in a finally block.
+ */
+public class Span {
+    // What Tracer.start returns when the request is not traced
+    static final Span NOOP = new Span(null, 0, 0, null) {
+        @Override
+        public void end() {}
+    };
+
+    private final Tracer.Trace trace;
+    private final long id;
+    private final long parentId;
+    private final String name;
+    private final long start = System.nanoTime();
+
+    Span(final Tracer.Trace trace, final long id, final long parentId, final String name) {
+        this.trace = trace;
+        this.id = id;
+        this.parentId = parentId;
+        this.name = name;
+    }
+
+    long id() {
+        return id;
+    }
+
+    public void end() {
+        trace.currentSpan = parentId;
+        Tracer.record(trace.id, id, parentId, name, start, System.nanoTime() - start);
+    }
+}
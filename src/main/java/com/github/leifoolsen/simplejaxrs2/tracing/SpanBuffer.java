@@ -0,0 +1,125 @@
+package com.github.leifoolsen.simplejaxrs2.tracing;
+
+import com.github.leifoolsen.simplejaxrs2.codec.JsonOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The most recent spans, in preallocated parallel arrays used as a ring. Recording claims the next slot with
+ * one atomic increment and fills it in place, so it allocates nothing and never blocks.
+ *
+ * Each slot has a sequence, -1 while it is written and the span's number when complete. Readers check it
+ * before and after reading a slot, and skip slots written meanwhile.
+ */
+class SpanBuffer {
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLongArray sequences;
+    private final long[] traceIds;
+    private final long[] spanIds;
+    private final long[] parentIds;
+    private final long[] starts;
+    private final long[] durations;
+    private final long[] threads;
+    private final String[] names;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    SpanBuffer(final int capacity) {
+        final int size = Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, -1);
+        }
+        traceIds = new long[size];
+        spanIds = new long[size];
+        parentIds = new long[size];
+        starts = new long[size];
+        durations = new long[size];
+        threads = new long[size];
+        names = new String[size];
+    }
+
+    void record(final long traceId, final long spanId, final long parentId, final String name,
+                final long startNanos, final long durationNanos) {
+        final long n = next.getAndIncrement();
+        final int i = (int) (n & mask);
+        sequences.set(i, -1);
+        traceIds[i] = traceId;
+        spanIds[i] = spanId;
+        parentIds[i] = parentId;
+        starts[i] = startNanos;
+        durations[i] = durationNanos;
+        threads[i] = Thread.currentThread().getId();
+        names[i] = name;
+        sequences.set(i, n);
+    }
+
+    /**
+     * Writes the spans in the Trace Event Format, as complete ("X") events with microsecond timestamps, which
+     * chrome://tracing and Perfetto load. Timestamps are System.nanoTime() based.
+     */
+    void writeTraceEvents(final OutputStream out) throws IOException {
+        final JsonOutput json = new JsonOutput(64 * 1024);
+        json.writeByte('{');
+        json.writeName("traceEvents", true);
+        json.writeByte('[');
+        final long last = next.get();
+        boolean first = true;
+        for (long n = Math.max(0, last - mask - 1); n < last; n++) {
+            final int i = (int) (n & mask);
+            if (sequences.get(i) != n) {
+                continue;
+            }
+            final long traceId = traceIds[i];
+            final long spanId = spanIds[i];
+            final long parentId = parentIds[i];
+            final long start = starts[i];
+            final long duration = durations[i];
+            final long thread = threads[i];
+            final String name = names[i];
+            if (sequences.get(i) != n) {
+                continue;  // overwritten while we read it
+            }
+            if (!first) {
+                json.writeByte(',');
+            }
+            first = false;
+            json.writeByte('{');
+            json.writeName("name", true);
+            json.writeString(name);
+            json.writeName("ph", false);
+            json.writeString("X");
+            json.writeName("ts", false);
+            json.writeLong(start / 1000);
+            json.writeName("dur", false);
+            json.writeLong(Math.max(1, duration / 1000));
+            json.writeName("pid", false);
+            json.writeLong(1);
+            json.writeName("tid", false);
+            json.writeLong(thread);
+            json.writeName("args", false);
+            json.writeByte('{');
+            json.writeName("trace", true);
+            json.writeLong(traceId);
+            json.writeName("span", false);
+            json.writeLong(spanId);
+            json.writeName("parent", false);
+            json.writeLong(parentId);
+            json.writeByte('}');
+            json.writeByte('}');
+            if (json.size() >= 32 * 1024) {
+                json.writeTo(out);
+                json.reset();
+            }
+        }
+        json.writeByte(']');
+        json.writeByte('}');
+        json.writeTo(out);
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.leifoolsen.simplejaxrs2.tracing;
+
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Lifecycle;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampled tracing of requests, to see where the time of a slow request went. TracingHandler decides per request
+ * whether to trace it, spans are then recorded around Jetty's handling, Jersey's phases, see
+ * TracingEventListener, and the resource and repository code that calls start.
+ *
+ * Spans go to a preallocated ring of the BUFFER_SIZE most recent, served at /api/traces in the Trace Event
+ * Format, and written to FILE, if set, when the server stops.
+ *
+ * Off unless SAMPLE_RATE is above 0. Then start costs a volatile read, and nothing else.
+ * Spans are kept per thread: code a request runs on other threads, such as the write pipeline, is not traced.
+ */
+public class Tracer {
+    public static final String SAMPLE_RATE = "simplejaxrs2.tracing.sample-rate";
+    public static final String BUFFER_SIZE = "simplejaxrs2.tracing.buffer-size";
+    public static final String FILE = "simplejaxrs2.tracing.file";
+
+    private static final Logger logger = LoggerFactory.getLogger(Tracer.class);
+
+    private static final SpanBuffer buffer = new SpanBuffer(Integer.getInteger(BUFFER_SIZE, 16384));
+    private static final AtomicLong ids = new AtomicLong();
+    private static final ThreadLocal<Trace> current = new ThreadLocal<Trace>();
+
+    private static volatile double sampleRate = Double.parseDouble(System.getProperty(SAMPLE_RATE, "0"));
+
+    static {
+        final String file = System.getProperty(FILE);
+        if (file != null) {
+            Lifecycle.onStop(new Runnable() {
+                @Override
+                public void run() {
+                    writeTo(file);
+                }
+            });
+        }
+    }
+
+    private Tracer() {}
+
+    /**
+     * @param rate share of requests to trace, 0 turns tracing off
+     */
+    public static void setSampleRate(final double rate) {
+        Preconditions.checkArgument(rate >= 0 && rate <= 1, "Sample rate must be between 0 and 1, was %s", rate);
+        sampleRate = rate;
+    }
+
+    /**
+     * Decides whether to trace the request this thread starts on, and if so makes it this thread's trace.
+     * @return true if the request is traced, then call endTrace when it is done
+     */
+    public static boolean beginTrace() {
+        final double rate = sampleRate;
+        if (rate <= 0 || rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            return false;
+        }
+        current.set(new Trace(ids.incrementAndGet()));
+        return true;
+    }
+
+    public static void endTrace() {
+        current.remove();
+    }
+
+    /**
+     * @return the trace of this thread's request, null if it is not traced
+     */
+    public static Trace currentTrace() {
+        return sampleRate > 0 ? current.get() : null;
+    }
+
+    /**
+     * Starts a span, a child of the span this thread is in. A no-op if this thread's request is not traced
+     */
+    public static Span start(final String name) {
+        if (sampleRate <= 0) {
+            return Span.NOOP;
+        }
+        final Trace trace = current.get();
+        return trace != null ? trace.start(name) : Span.NOOP;
+    }
+
+    public static void writeTraceEvents(final OutputStream out) throws IOException {
+        buffer.writeTraceEvents(out);
+    }
+
+    static void record(final long traceId, final long spanId, final long parentId, final String name,
+                       final long startNanos, final long durationNanos) {
+        buffer.record(traceId, spanId, parentId, name, startNanos, durationNanos);
+    }
+
+    private static void writeTo(final String file) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeTraceEvents(out);
+            logger.info("Traces written to {}", file);
+        }
+        catch (IOException e) {
+            logger.warn("Could not write traces to {}", file, e);
+        }
+    }
+
+    /**
+     * The spans of one request. Used by one thread at a time
+     */
+    public static class Trace {
+        final long id;
+        long currentSpan;
+
+        Trace(final long id) {
+            this.id = id;
+        }
+
+        Span start(final String name) {
+            final Span span = new Span(this, ids.incrementAndGet(), currentSpan, name);
+            currentSpan = span.id();
+            return span;
+        }
+
+        /**
+         * Records a span already timed, a child of the span this trace is in
+         */
+        public void record(final String name, final long startNanos, final long durationNanos) {
+            Tracer.record(id, ids.incrementAndGet(), currentSpan, name, startNanos, durationNanos);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.leifoolsen.simplejaxrs2.benchmark;
+
+import com.github.leifoolsen.simplejaxrs2.codec.BookJson;
+import com.github.leifoolsen.simplejaxrs2.codec.BookProtobuf;
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.eclipse.persistence.jaxb.MarshallerProperties;
+import org.eclipse.persistence.jaxb.UnmarshallerProperties;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compares encoded size and encode/decode time of the book representations against MOXy JSON,
+ * configured the way Jersey configures it (no root element).
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.github.leifoolsen.simplejaxrs2.benchmark.CodecBenchmark
+ */
+public class CodecBenchmark {
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 50000;
+
+    interface Codec {
+        String name();
+        byte[] encode(List<Book> books) throws Exception;
+        List<Book> decode(byte[] bytes) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final List<Book> books = BookRepository.getAllBooks(null, null);
+        final Codec[] codecs = { moxyJson(), json(), protobuf() };
+
+        System.out.println(String.format("%d books, %d iterations", books.size(), ITERATIONS));
+        System.out.println(String.format("%-12s %12s %16s %16s", "codec", "bytes", "encode ns/list", "decode ns/list"));
+
+        for (Codec codec : codecs) {
+            final byte[] encoded = codec.encode(books);
+            if (codec.decode(encoded).size() != books.size()) {
+                throw new IllegalStateException(codec.name() + " did not round trip");
+            }
+            run(codec, books, encoded, WARMUP_ITERATIONS);
+            long[] nanos = run(codec, books, encoded, ITERATIONS);
+            System.out.println(String.format("%-12s %,12d %,16d %,16d",
+                    codec.name(), encoded.length, nanos[0] / ITERATIONS, nanos[1] / ITERATIONS));
+        }
+    }
+
+    private static long[] run(final Codec codec, final List<Book> books, final byte[] encoded, final int iterations)
+            throws Exception {
+
+        int sink = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.encode(books).length;
+        }
+        long t1 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.decode(encoded).size();
+        }
+        long t2 = System.nanoTime();
+        if (sink == 42) {
+            System.out.println();  // keep the JIT from removing the loops
+        }
+        return new long[] { t1 - t0, t2 - t1 };
+    }
+
+    private static Codec moxyJson() throws Exception {
+        final JAXBContext context = JAXBContextFactory.createContext(new Class[] { Book.class }, null);
+
+        return new Codec() {
+            @Override
+            public String name() {
+                return "moxy-json";
+            }
+
+            @Override
+            public byte[] encode(final List<Book> books) throws Exception {
+                Marshaller marshaller = context.createMarshaller();
+                marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, "application/json");
+                marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                marshaller.marshal(books, out);
+                return out.toByteArray();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Book> decode(final byte[] bytes) throws Exception {
+                Unmarshaller unmarshaller = context.createUnmarshaller();
+                unmarshaller.setProperty(UnmarshallerProperties.MEDIA_TYPE, "application/json");
+                unmarshaller.setProperty(UnmarshallerProperties.JSON_INCLUDE_ROOT, false);
+                JAXBElement<?> element = unmarshaller.unmarshal(
+                        new StreamSource(new ByteArrayInputStream(bytes)), Book.class);
+                return (List<Book>) (Collection<?>) element.getValue();
+            }
+        };
+    }
+
+    private static Codec json() {
+        return new Codec() {
+            @Override
+            public String name() {
+                return "json";
+            }
+
+            @Override
+            public byte[] encode(final List<Book> books) throws Exception {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                BookJson.writeList(books, out);
+                return out.toByteArray();
+            }
+
+            @Override
+            public List<Book> decode(final byte[] bytes) throws Exception {
+                return BookJson.readList(new ByteArrayInputStream(bytes));
+            }
+        };
+    }
+
+    private static Codec protobuf() {
+        return new Codec() {
+            @Override
+            public String name() {
+                return "protobuf";
+            }
+
+            @Override
+            public byte[] encode(final List<Book> books) throws Exception {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                BookProtobuf.writeList(books, out);
+                return out.toByteArray();
+            }
+
+            @Override
+            public List<Book> decode(final byte[] bytes) throws Exception {
+                return BookProtobuf.readList(new ByteArrayInputStream(bytes));
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.leifoolsen.simplejaxrs2.benchmark;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Retained heap per book, for Book against the plain layout it replaced (six Strings and a Date,
+ * every string a separate copy, as when read from a request). The books are copies of the repository
+ * books with distinct ISBNs, so authors and translators repeat the way they do in a catalog.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.github.leifoolsen.simplejaxrs2.benchmark.FootprintBenchmark
+ * and add -Dsimplejaxrs2.book.compress-summaries=true to include compressed summaries.
+ */
+public class FootprintBenchmark {
+    private static final int BOOKS = 200000;
+
+    static class PlainBook {
+        final String isbn;
+        final String title;
+        final String author;
+        final Date published;
+        final String translator;
+        final String summary;
+
+        PlainBook(final Book book, final String isbn) {
+            this.isbn = isbn;
+            this.title = copy(book.getTitle());
+            this.author = copy(book.getAuthor());
+            this.published = book.getPublished();
+            this.translator = copy(book.getTranslator());
+            this.summary = copy(book.getSummary());
+        }
+
+        private static String copy(final String s) {
+            return s != null ? new String(s.toCharArray()) : null;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final List<Book> books = BookRepository.getAllBooks(null, null);
+
+        long before = usedHeap();
+        final Object[] plain = new Object[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            plain[i] = new PlainBook(books.get(i % books.size()), isbn(i));
+        }
+        final long plainBytes = usedHeap() - before;
+
+        before = usedHeap();
+        final Object[] compact = new Object[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            final Book book = books.get(i % books.size());
+            compact[i] = Book.with(isbn(i))
+                    .title(new String(book.getTitle().toCharArray()))
+                    .author(new String(book.getAuthor().toCharArray()))
+                    .published(book.getPublished())
+                    .translator(book.getTranslator() != null ? new String(book.getTranslator().toCharArray()) : null)
+                    .summary(book.getSummary())
+                    .build();
+        }
+        final long compactBytes = usedHeap() - before;
+
+        System.out.println(String.format("%d books, compress summaries: %s", BOOKS,
+                Boolean.getBoolean(Book.COMPRESS_SUMMARIES)));
+        System.out.println(String.format("%-8s %14s %14s", "layout", "bytes", "bytes/book"));
+        System.out.println(String.format("%-8s %,14d %,14d", "plain", plainBytes, plainBytes / BOOKS));
+        System.out.println(String.format("%-8s %,14d %,14d", "compact", compactBytes, compactBytes / BOOKS));
+        if (plain.length + compact.length == 42) {
+            System.out.println();  // keep both arrays reachable until measured
+        }
+    }
+
+    private static String isbn(final int i) {
+        return String.format("978%010d", i);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
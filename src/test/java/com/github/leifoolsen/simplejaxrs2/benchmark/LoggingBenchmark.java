@@ -0,0 +1,120 @@
+package com.github.leifoolsen.simplejaxrs2.benchmark;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures log throughput and the latency a log statement adds to the calling thread, for the
+ * synchronous baseline, the development and the production logback configuration.
+ * Console output is discarded, so the numbers show the cost of the logging path, not of the terminal.
+ * Note that the DuplicateMessageFilter in logback.xml suppresses the repeated benchmark message.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.github.leifoolsen.simplejaxrs2.benchmark.LoggingBenchmark
+ */
+public class LoggingBenchmark {
+    private static final int THREADS = 8;
+    private static final int EVENTS_PER_THREAD = 100000;
+    private static final int SAMPLE_EVERY = 16;
+
+    public static void main(String[] args) throws Exception {
+        final PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        }));
+
+        String[] configurations = args.length > 0 ? args
+                : new String[] { "logback-benchmark-sync.xml", "logback.xml", "logback-production.xml" };
+
+        for (String configuration : configurations) {
+            run(configuration, out);  // warm up
+            run(configuration, out);
+        }
+        System.setOut(out);
+    }
+
+    private static void run(final String configuration, final PrintStream out) throws Exception {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        JoranConfigurator configurator = new JoranConfigurator();
+        configurator.setContext(context);
+        configurator.doConfigure(LoggingBenchmark.class.getClassLoader().getResource(configuration));
+
+        final long asyncBefore = count("ASYNC");
+        final long consoleBefore = count("STDOUT");
+
+        final Logger logger = LoggerFactory.getLogger("com.github.leifoolsen.simplejaxrs2.benchmark");
+        final long[][] samples = new long[THREADS][EVENTS_PER_THREAD / SAMPLE_EVERY];
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+
+        for (int t = 0; t < THREADS; t++) {
+            final long[] threadSamples = samples[t];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                            if (i % SAMPLE_EVERY == 0) {
+                                long t0 = System.nanoTime();
+                                logger.info("Book with isbn: '{}' created", "9781846883668");
+                                threadSamples[i / SAMPLE_EVERY] = System.nanoTime() - t0;
+                            }
+                            else {
+                                logger.info("Book with isbn: '{}' created", "9781846883668");
+                            }
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - t0;
+        context.stop();  // drains the async queue
+
+        long[] all = new long[THREADS * samples[0].length];
+        for (int t = 0; t < THREADS; t++) {
+            System.arraycopy(samples[t], 0, all, t * samples[t].length, samples[t].length);
+        }
+        Arrays.sort(all);
+
+        long events = (long) THREADS * EVENTS_PER_THREAD;
+        long written = count("STDOUT") - consoleBefore;
+        long accepted = count("ASYNC") - asyncBefore;
+        out.println(String.format("%-28s %,12.0f events/s  p50 %,8d ns  p99 %,8d ns  p99.9 %,10d ns  written %,d/%,d%s",
+                configuration,
+                events / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)),
+                all[all.length / 2], all[(int) (all.length * 0.99)], all[(int) (all.length * 0.999)],
+                written, events,
+                accepted > 0 ? String.format("  dropped %,d", accepted - written) : ""));
+    }
+
+    private static long count(final String appender) {
+        return MetricsRegistry.counter("log_events_total", "Log events passed to an appender, by level.",
+                MetricsRegistry.labels("appender", appender, "level", "INFO")).sum();
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.leifoolsen.simplejaxrs2.cluster;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.main.JettyStarterProcess;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.leifoolsen.simplejaxrs2.main.JettyStarterProcess.awaitStatus;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Two nodes, each in a JVM of its own. The second joins through the first, which starts out with every book,
+ * and the second with none.
+ */
+public class ClusterTest {
+    private static final int FIRST_PORT = 8082;
+    private static final int SECOND_PORT = 8083;
+    private static final String SECRET = "cluster-test-secret";
+    private static final GenericType<List<Book>> BOOK_LIST = new GenericType<List<Book>>() {};
+
+    private static final List<JettyStarterProcess> nodes = Lists.newArrayList();
+    private static WebTarget first;
+    private static WebTarget second;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        final Client client = ClientBuilder.newClient();
+        first = client.target(api(FIRST_PORT));
+        second = client.target(api(SECOND_PORT));
+
+        nodes.add(new JettyStarterProcess(FIRST_PORT, Cluster.SELF, api(FIRST_PORT), Cluster.SECRET, SECRET));
+        awaitStatus(first.path("cluster/nodes"), Response.Status.OK, 60);
+
+        nodes.add(new JettyStarterProcess(SECOND_PORT, Cluster.SELF, api(SECOND_PORT), Cluster.SEED, api(FIRST_PORT),
+                Cluster.SECRET, SECRET));
+        awaitStatus(second.path("cluster/nodes"), Response.Status.OK, 60);
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        for (JettyStarterProcess node : nodes) {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void booksShouldBePartitionedAndServedFromAnyNode() throws Exception {
+        final int total = first.path("books").request(MediaType.APPLICATION_JSON_TYPE).get(BOOK_LIST).size();
+
+        // The second node drops its copy of the seed catalog, the first hands over the books the second owns
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        int onFirst = -1;
+        int onSecond = -1;
+        boolean settled;
+        do {
+            Thread.sleep(100);
+            final int previousFirst = onFirst;
+            final int previousSecond = onSecond;
+            onFirst = localBooks(first).size();
+            onSecond = localBooks(second).size();
+            settled = onFirst + onSecond == total && onSecond > 0
+                    && onFirst == previousFirst && onSecond == previousSecond;
+        } while (!settled && System.nanoTime() < deadline);
+        assertEquals(total, onFirst + onSecond);
+        assertThat(onFirst, greaterThan(0));
+        assertThat(onSecond, greaterThan(0));
+
+        // A book handed over left no removal behind in the history of the node it left
+        final String movedIsbn = localBooks(second).get(0).getIsbn();
+        final Response moved = first.path("books").path(movedIsbn).path("history").request()
+                .header(Cluster.INTERNAL_HEADER, SECRET).get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), moved.getStatus());
+        moved.close();
+
+        // Scatter-gather, the same pages from both nodes, ordered by ISBN
+        final List<Book> all = second.path("books").request(MediaType.APPLICATION_JSON_TYPE).get(BOOK_LIST);
+        assertEquals(total, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getIsbn().compareTo(all.get(i).getIsbn()) < 0);
+        }
+        final List<Book> page = first.path("books").queryParam("offset", 5).queryParam("limit", 4)
+                .request(MediaType.APPLICATION_JSON_TYPE).get(BOOK_LIST);
+        assertEquals(isbns(all.subList(5, 9)), isbns(page));
+
+        // Every book from either node, wherever it is
+        for (Book book : all) {
+            assertEquals(book.getTitle(), first.path("books").path(book.getIsbn())
+                    .request(MediaType.APPLICATION_JSON_TYPE).get(Book.class).getTitle());
+            assertEquals(book.getTitle(), second.path("books").path(book.getIsbn())
+                    .request(MediaType.APPLICATION_JSON_TYPE).get(Book.class).getTitle());
+        }
+
+        // Batch lookups ask each owner
+        final Response batch = first.path("books").path("batch-get").request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.json("[\"" + Joiner.on("\",\"").join(isbns(all)) + "\",\"9780000000002\"]"));
+        assertEquals(Response.Status.OK.getStatusCode(), batch.getStatus());
+        final String found = batch.readEntity(String.class);
+        for (Book book : all) {
+            assertTrue(found, found.contains("\"isbn\":\"" + book.getIsbn() + "\""));
+        }
+        assertTrue(found, found.endsWith("\"missing\":[\"9780000000002\"]}"));
+
+        // Imports would store every book on the node receiving them
+        final Response imported = second.path("books").path("import").request()
+                .post(Entity.entity("", "application/x-ndjson"));
+        assertEquals(Response.Status.NOT_IMPLEMENTED.getStatusCode(), imported.getStatus());
+        imported.close();
+
+        // Every node has a change log of its own, there is no cluster wide sequence to read as of
+        final Response asOf = first.path("books").queryParam("asOf", 1).request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.NOT_IMPLEMENTED.getStatusCode(), asOf.getStatus());
+        asOf.close();
+
+        // Writes go to the owner too
+        final Book created = Book.with("9788202289992").title("Partitioned").author("Node, Nina").build();
+        final Response post = first.path("books").request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(created, MediaType.APPLICATION_JSON_TYPE));
+        assertEquals(Response.Status.CREATED.getStatusCode(), post.getStatus());
+        assertEquals(total + 1, localBooks(first).size() + localBooks(second).size());
+
+        // History is kept by the owner
+        for (WebTarget node : Lists.newArrayList(first, second)) {
+            final String history = node.path("books").path(created.getIsbn()).path("history")
+                    .request(MediaType.APPLICATION_JSON_TYPE).get(String.class);
+            assertTrue(history, history.contains("Partitioned"));
+        }
+
+        final Response delete = second.path("books").path(created.getIsbn()).request().delete();
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), delete.getStatus());
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(),
+                first.path("books").path(created.getIsbn()).request().get().getStatus());
+    }
+
+    private static List<Book> localBooks(final WebTarget node) {
+        return node.path("cluster/local/books").request(MediaType.APPLICATION_JSON_TYPE).get(BOOK_LIST);
+    }
+
+    private static List<String> isbns(final List<Book> books) {
+        final List<String> isbns = Lists.newArrayList();
+        for (Book book : books) {
+            isbns.add(book.getIsbn());
+        }
+        return isbns;
+    }
+
+    private static String api(final int port) {
+        return "http://localhost:" + port + "/api";
+    }
+
+    @Test
+    public void onlyMembersShouldChangeTheCluster() {
+        for (String internal : new String[] {null, "true", "not-the-secret"}) {
+            final Response members = first.path("cluster/nodes").request().header(Cluster.INTERNAL_HEADER, internal)
+                    .put(Entity.text("http://localhost:9999/api"));
+            assertEquals(Response.Status.FORBIDDEN.getStatusCode(), members.getStatus());
+            members.close();
+
+            final Response handOver = first.path("cluster/local/books").request()
+                    .header(Cluster.INTERNAL_HEADER, internal)
+                    .put(Entity.json(Book.with("9788202289992").title("Planted").build()));
+            assertEquals(Response.Status.FORBIDDEN.getStatusCode(), handOver.getStatus());
+            handOver.close();
+        }
+        assertEquals(2, first.path("cluster/nodes").request().get(String.class).split("\n").length);
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.leifoolsen.simplejaxrs2.cluster;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class HashRingTest {
+    private static final int KEYS = 30000;
+
+    @Test
+    public void shouldSpreadKeysEvenly() {
+        final List<URI> nodes = nodes(3);
+        final HashRing ring = HashRing.of(nodes);
+        final int[] counts = new int[nodes.size()];
+        for (int i = 0; i < KEYS; i++) {
+            counts[nodes.indexOf(ring.owner(isbn(i)))]++;
+        }
+        for (int count : counts) {
+            assertThat(count, greaterThan(KEYS / 3 * 8 / 10));
+            assertThat(count, lessThan(KEYS / 3 * 12 / 10));
+        }
+    }
+
+    @Test
+    public void joiningNodeShouldOnlyTakeKeysFromOthers() {
+        final HashRing three = HashRing.of(nodes(3));
+        final List<URI> fourNodes = nodes(4);
+        final HashRing four = HashRing.of(fourNodes);
+        final URI joined = fourNodes.get(3);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            final URI before = three.owner(isbn(i));
+            final URI after = four.owner(isbn(i));
+            if (!before.equals(after)) {
+                assertEquals(joined, after);
+                moved++;
+            }
+        }
+        assertThat(moved, greaterThan(KEYS / 4 * 8 / 10));
+        assertThat(moved, lessThan(KEYS / 4 * 12 / 10));
+    }
+
+    private static List<URI> nodes(final int n) {
+        final List<URI> nodes = Lists.newArrayList();
+        for (int i = 0; i < n; i++) {
+            nodes.add(URI.create("http://localhost:" + (8081 + i) + "/api"));
+        }
+        return nodes;
+    }
+
+    private static String isbn(final int i) {
+        return String.format("978%010d", i);
+    }
+}
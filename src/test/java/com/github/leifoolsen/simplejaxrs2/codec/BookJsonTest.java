@@ -0,0 +1,159 @@
+package com.github.leifoolsen.simplejaxrs2.codec;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.eclipse.persistence.jaxb.MarshallerProperties;
+import org.eclipse.persistence.jaxb.UnmarshallerProperties;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class BookJsonTest {
+    private static final JAXBContext moxy;
+
+    static {
+        try {
+            moxy = JAXBContextFactory.createContext(new Class[] { Book.class }, null);
+        }
+        catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Test
+    public void shouldWriteSameBytesAsMoxy() throws Exception {
+        final List<Book> books = BookRepository.getAllBooks(null, null);
+        assertEquals(moxyJson(books), json(books));
+        assertEquals(moxyJson(books.get(0)), json(books.get(0)));
+    }
+
+    @Test
+    public void shouldEscapeLikeMoxy() throws Exception {
+        final StringBuilder title = new StringBuilder("x");
+        for (char c = 0; c < 0x3000; c++) {
+            title.append(c);
+        }
+        title.append("😀   ￿ \ud800 x");
+        final Book book = Book.with("9788202289348").title(title.toString()).author("\"A\\B/C\"").build();
+
+        assertEquals(moxyJson(book), json(book));
+    }
+
+    @Test
+    public void shouldFormatDatesLikeMoxy() throws Exception {
+        final long[] times = { 0L, 1421575872500L, 1421575872050L, 1421575872001L, 1435708800000L,
+                -5000000000000L, 253402300800000L, 1427590800000L };
+        for (long time : times) {
+            final Book book = Book.with("9788202289348").published(new Date(time)).build();
+            assertEquals(moxyJson(book), json(book));
+        }
+    }
+
+    @Test
+    public void shouldReadWhatMoxyReads() throws Exception {
+        final String[] documents = {
+                "{\"isbn\":\"9788202289348\",\"title\":\"Tittel \\u00f8\\/\\\"\",\"author\":\"Forfatter ø\"}",
+                " { \"isbn\" : \"9788202289348\" , \"published\" : \"2015-01-18T11:11:12.5\" } ",
+                "{\"isbn\":\"9788202289348\",\"published\":\"2015-01-18T10:11:12Z\"}",
+                "{\"isbn\":\"9788202289348\",\"published\":\"2015-01-18T11:11:12+01:00\"}",
+                "{\"isbn\":\"9788202289348\",\"published\":\"2015-03-29T02:30:00\"}",
+                "{\"isbn\":\"9788202289348\",\"published\":\"2015-01-18\"}",
+                "{\"isbn\":\"9788202289348\",\"published\":\"abc\"}",
+                "{\"isbn\":\"9788202289348\",\"title\":null,\"author\":123,\"summary\":true}",
+                "{\"isbn\":\"9788202289348\",\"unknown\":{\"a\":[1,{\"b\":null}]},\"title\":\"T\"}",
+        };
+        for (String document : documents) {
+            final Book expected = moxyRead(document);
+            final Book actual = BookJson.read(new ByteArrayInputStream(document.getBytes("UTF-8")));
+            assertEquals(document, expected.getIsbn(), actual.getIsbn());
+            assertEquals(document, expected.getTitle(), actual.getTitle());
+            assertEquals(document, expected.getAuthor(), actual.getAuthor());
+            assertEquals(document, expected.getPublished(), actual.getPublished());
+            assertEquals(document, expected.getSummary(), actual.getSummary());
+        }
+    }
+
+    @Test
+    public void shouldRoundTripList() throws Exception {
+        final List<Book> books = BookRepository.getAllBooks(null, null);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BookJson.writeList(books, out);
+
+        final List<Book> read = BookJson.readList(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(books.size(), read.size());
+        for (int i = 0; i < books.size(); i++) {
+            assertEquals(books.get(i).getTitle(), read.get(i).getTitle());
+            assertEquals(books.get(i).getPublished(), read.get(i).getPublished());
+        }
+    }
+
+    @Test
+    public void shouldRejectMalformedJson() throws Exception {
+        final String[] documents = {
+                "", "[]", "{\"isbn\":\"1\" \"title\":\"x\"}", "{\"isbn\":\"1\"", "{\"isbn\":\"1\"} x", "{\"isbn\":nul}",
+        };
+        for (String document : documents) {
+            try {
+                BookJson.read(new ByteArrayInputStream(document.getBytes("UTF-8")));
+                fail("Expected IOException for: " + document);
+            }
+            catch (IOException expected) {
+                // ok
+            }
+        }
+    }
+
+    @Test
+    public void parseDateShouldGiveNullForTextThatIsNotADateTime() {
+        assertNull(JsonInput.parseDate("2015-01-18"));
+        assertNull(JsonInput.parseDate("2015-13-18T10:11:12"));
+        assertNull(JsonInput.parseDate("2015-01-18T10:11:12."));
+        assertNull(JsonInput.parseDate("2015-01-18T10:11:12+0100"));
+    }
+
+    private static String json(final Object o) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (o instanceof Book) {
+            BookJson.write((Book) o, out);
+        }
+        else {
+            @SuppressWarnings("unchecked")
+            final List<Book> books = (List<Book>) o;
+            BookJson.writeList(books, out);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static String moxyJson(final Object o) throws Exception {
+        final Marshaller marshaller = moxy.createMarshaller();
+        marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, "application/json");
+        marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshaller.marshal(o, out);
+        return out.toString("UTF-8");
+    }
+
+    private static Book moxyRead(final String document) throws Exception {
+        final Unmarshaller unmarshaller = moxy.createUnmarshaller();
+        unmarshaller.setProperty(UnmarshallerProperties.MEDIA_TYPE, "application/json");
+        unmarshaller.setProperty(UnmarshallerProperties.JSON_INCLUDE_ROOT, false);
+        final Book book = unmarshaller.unmarshal(new StreamSource(new StringReader(document)), Book.class).getValue();
+
+        // MOXy goes through the setters, BookJson through the builder, which trims
+        return Book.with(book).build();
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.leifoolsen.simplejaxrs2.domain;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BookTest {
+
+    @Test
+    public void copyShouldKeepEveryField() {
+        final Book book = Book.with("9788202289348")
+                .title("Tittel")
+                .author("Forfatter, Ola")
+                .published(new GregorianCalendar(1920, 0, 31).getTime())
+                .translator("Oversetter, Kari")
+                .summary("Sammendrag")
+                .build();
+
+        final Book copy = Book.with(book).build();
+        assertEquals(book.getTitle(), copy.getTitle());
+        assertEquals(book.getAuthor(), copy.getAuthor());
+        assertEquals(book.getPublished(), copy.getPublished());
+        assertEquals(book.getTranslator(), copy.getTranslator());
+        assertEquals(book.getSummary(), copy.getSummary());
+        assertTrue(book.hasSameContent(copy));
+        assertFalse(book.hasSameContent(Book.with(book).translator(null).build()));
+        assertFalse(book.hasSameContent(Book.with(book).summary("Sammendrag.").build()));
+    }
+
+    @Test
+    public void shouldKeepPublishedInstantAndShareNames() {
+        final Date published = new GregorianCalendar(2015, 2, 29, 23, 59).getTime();
+        final Book book = Book.with("9788202289348").author(new String("Gribbin, John")).published(published).build();
+        final Book other = Book.with("9788202289349").author(new String("Gribbin, John")).build();
+
+        assertEquals(published, book.getPublished());
+        assertSame(book.getAuthor(), other.getAuthor());
+
+        book.getPublished().setTime(0);
+        assertEquals(new GregorianCalendar(2015, 2, 29, 23, 59).getTime(), book.getPublished());
+    }
+}
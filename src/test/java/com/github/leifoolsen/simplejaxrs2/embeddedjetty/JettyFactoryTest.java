@@ -0,0 +1,133 @@
+package com.github.leifoolsen.simplejaxrs2.embeddedjetty;
+
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import org.eclipse.jetty.server.Server;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JettyFactoryTest {
+    private static final int PORT = 8084;
+
+    @Test
+    public void stopShouldRefuseNewConnectionsAndDrainRequestsInFlight() throws Exception {
+        final Server server = new JettyFactory().port(PORT).stopTimeout(10000).build();
+        JettyFactory.start(server);
+
+        final String first = "{\"isbn\":\"9788202289993\",\"title\":\"Drained\",\"author\":\"In, Flight\"}\n";
+        final String second = "{\"isbn\":\"9788202289994\",\"title\":\"Drained\",\"author\":\"In, Flight\"}\n";
+        final byte[] body = (first + second).getBytes(Charsets.UTF_8);
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            final OutputStream out = socket.getOutputStream();
+            out.write(("POST /api/books/import HTTP/1.1\r\n"
+                    + "Host: localhost\r\n"
+                    + "Content-Type: application/x-ndjson\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(Charsets.US_ASCII));
+            out.write(body, 0, first.length());
+            out.flush();
+            Thread.sleep(500);
+
+            final Thread stop = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        JettyFactory.stop(server);
+                    }
+                    catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            stop.start();
+            Thread.sleep(500);
+
+            assertTrue("stop should wait for the import", stop.isAlive());
+            try {
+                new Socket("localhost", PORT).close();
+                fail("Expected new connections to be refused while draining");
+            }
+            catch (ConnectException expected) {
+                // not accepting
+            }
+
+            out.write(body, first.length(), body.length - first.length());
+            out.flush();
+            final String response = new String(ByteStreams.toByteArray(socket.getInputStream()), Charsets.UTF_8);
+            assertThat(response, containsString("\"imported\":2,\"failed\":0,\"done\":true"));
+
+            stop.join(10000);
+            assertFalse(stop.isAlive());
+            assertFalse(server.isRunning());
+        }
+        finally {
+            BookRepository.removeBook("9788202289993");
+            BookRepository.removeBook("9788202289994");
+            if (server.isRunning()) {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void stopShouldReportNotReadyForTheDrainDelayBeforeRefusingConnections() throws Exception {
+        final Server server = new JettyFactory().port(PORT).drainDelay(2000).build();
+        JettyFactory.start(server);
+        try {
+            final Thread stop = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        JettyFactory.stop(server);
+                    }
+                    catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            stop.start();
+            Thread.sleep(500);
+
+            assertEquals(200, status("/api/books/ping", null));
+            assertEquals(503, status("/api/health/ready", null));
+            assertEquals(503, status("/api/books/changes", "text/event-stream"));
+
+            stop.join(10000);
+            assertFalse(stop.isAlive());
+        }
+        finally {
+            if (server.isRunning()) {
+                server.stop();
+            }
+        }
+    }
+
+    private static int status(final String path, final String accept) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + path)
+                .openConnection();
+        if (accept != null) {
+            connection.setRequestProperty("Accept", accept);
+        }
+        try {
+            return connection.getResponseCode();
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+}
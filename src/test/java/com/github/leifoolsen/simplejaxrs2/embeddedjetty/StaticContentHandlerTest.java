@@ -0,0 +1,154 @@
+package com.github.leifoolsen.simplejaxrs2.embeddedjetty;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import org.eclipse.jetty.server.Server;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StaticContentHandlerTest {
+    private static final int PORT = 8085;
+    private static final String CSS = "body { color: black; }";
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Server server;
+    private static WebTarget target;
+    private static String large;
+    private static byte[] gzipped;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        final File dir = folder.getRoot();
+        Files.write(CSS, new File(dir, "style.css"), Charsets.UTF_8);
+        assertTrue(new File(dir, "WEB-INF").mkdir());
+        Files.write("<web-app/>", new File(dir, "WEB-INF/web.xml"), Charsets.UTF_8);
+
+        // Larger than what is read into memory, sent from disk, or memory mapped with a content hash in its name
+        large = Strings.repeat("var x = 1;\n", 10000);
+        Files.write(large, new File(dir, "app.js"), Charsets.UTF_8);
+        Files.write(large, new File(dir, "vendor.3f2a9c1b.js"), Charsets.UTF_8);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(large.getBytes(Charsets.UTF_8));
+        }
+        gzipped = bytes.toByteArray();
+        Files.write(gzipped, new File(dir, "app.js.gz"));
+
+        server = new JettyFactory().port(PORT).staticContent(dir.getPath()).build();
+        JettyFactory.start(server);
+        target = ClientBuilder.newClient().target(server.getURI());
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        JettyFactory.stop(server);
+    }
+
+    @Test
+    public void shouldServeAssetsWithContentHashAsETag() {
+        Response response = target.path("style.css").request().get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("text/css", response.getMediaType().toString());
+        assertEquals("no-cache", response.getHeaderString(HttpHeaders.CACHE_CONTROL));
+        assertEquals(CSS, response.readEntity(String.class));
+        final String etag = response.getHeaderString(HttpHeaders.ETAG);
+        assertTrue(etag, etag.matches("\"[0-9a-f]{16}\""));
+
+        response = target.path("style.css").request().header(HttpHeaders.IF_NONE_MATCH, etag).get();
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        response.close();
+
+        response = target.path("style.css").queryParam("v", etag.substring(1, 17)).request().get();
+        assertEquals("public, max-age=31536000, immutable", response.getHeaderString(HttpHeaders.CACHE_CONTROL));
+        response.close();
+
+        response = target.path("missing.css").request().get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
+    @Test
+    public void shouldNotServePrivateDirectories() throws Exception {
+        for (String path : new String[] {"/WEB-INF/web.xml", "//WEB-INF/web.xml", "/./WEB-INF/web.xml",
+                "/web-inf/web.xml", "/x/../WEB-INF/web.xml"}) {
+            final HttpURLConnection connection =
+                    (HttpURLConnection) new URL("http://localhost:" + PORT + path).openConnection();
+            try {
+                assertEquals(path, HttpURLConnection.HTTP_NOT_FOUND, connection.getResponseCode());
+            }
+            finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    @Test
+    public void shouldServePrecompressedSiblingWhenClientAcceptsGzip() {
+        Response response = target.path("app.js").request().get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertNull(response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaderString(HttpHeaders.VARY));
+        assertEquals(large, response.readEntity(String.class));
+
+        response = target.path("app.js").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate").get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(response.getHeaderString(HttpHeaders.ETAG).endsWith("-gzip\""));
+        assertArrayEquals(gzipped, response.readEntity(byte[].class));
+
+        response = target.path("app.js").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity").get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertNull(response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(large, response.readEntity(String.class));
+    }
+
+    @Test
+    public void shouldServeLargeFilesWithContentHashAsETag() {
+        final Response fromDisk = target.path("app.js").request().get();
+        final Response mapped = target.path("vendor.3f2a9c1b.js").request().get();
+        assertEquals(Response.Status.OK.getStatusCode(), mapped.getStatus());
+        assertEquals(large, mapped.readEntity(String.class));
+        assertEquals(large, fromDisk.readEntity(String.class));
+        assertEquals(fromDisk.getHeaderString(HttpHeaders.ETAG), mapped.getHeaderString(HttpHeaders.ETAG));
+
+        final Response head = target.path("app.js").request().head();
+        assertEquals(large.length(), head.getLength());
+        head.close();
+    }
+
+    @Test
+    public void gzipShouldBeAcceptedOnlyWithAQualityAboveZero() {
+        assertTrue(StaticContentHandler.acceptsGzip("gzip, deflate"));
+        assertTrue(StaticContentHandler.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(StaticContentHandler.acceptsGzip("*"));
+        assertTrue(StaticContentHandler.acceptsGzip("gzip;q=1, *;q=0"));
+        assertFalse(StaticContentHandler.acceptsGzip(null));
+        assertFalse(StaticContentHandler.acceptsGzip("deflate"));
+        assertFalse(StaticContentHandler.acceptsGzip("gzip;q=0"));
+        assertFalse(StaticContentHandler.acceptsGzip("gzip; q=0.0, deflate"));
+        assertFalse(StaticContentHandler.acceptsGzip("*;q=0"));
+        assertFalse(StaticContentHandler.acceptsGzip("gzip;q=0, *"));
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.leifoolsen.simplejaxrs2.embeddedjetty;
+
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Lifecycle;
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import org.eclipse.jetty.server.Server;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class WarmUpTest {
+    private static final int PORT = 8086;
+
+    @Test
+    public void startShouldWarmUpBeforeOpeningThePort() throws Exception {
+        final StripedCounter stats = MetricsRegistry.counter("http_responses_total", "",
+                MetricsRegistry.labels("method", "GET", "route", "/books/stats", "status", "200"));
+        final long statsBefore = stats.sum();
+
+        final Server server = new JettyFactory().port(PORT).warmUp(150).build();
+        JettyFactory.start(server);
+        try {
+            final WarmUp.Result result = server.getBean(WarmUp.class).getResult();
+            assertNotNull(result);
+            assertEquals(0, result.getFailed());
+            assertEquals(0, result.getUnexpected());
+            assertEquals(0, result.getRequests() % 150);
+            assertTrue(result.getWarmP50Nanos() > 0);
+            assertFalse(Lifecycle.isWarmingUp());
+            assertEquals("Warm-up requests are not recorded", statsBefore, stats.sum());
+
+            assertEquals("http://localhost:" + PORT + "/", server.getURI().toString());
+            final Response response = ClientBuilder.newClient().target(server.getURI())
+                    .path("api").path("health").path("ready")
+                    .request(MediaType.APPLICATION_JSON_TYPE)
+                    .get();
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            response.close();
+        }
+        finally {
+            JettyFactory.stop(server);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.leifoolsen.simplejaxrs2.main;
+
+import com.github.leifoolsen.simplejaxrs2.embeddedjetty.JettyFactory;
+import com.google.common.collect.Lists;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+
+/**
+ * JettyStarter in a JVM of its own, for tests with more than one node. The repository is static,
+ * so two nodes can not share a JVM. Output goes to target/jetty-{port}.log.
+ *
+ * It starts without warming up, unless the system properties say otherwise, and is destroyed when the test JVM
+ * exits, so a test that fails before stop does not leave it holding the port for the next run.
+ */
+public class JettyStarterProcess {
+    private final Process process;
+    private final Thread destroyOnExit;
+
+    /**
+     * @param systemProperties name, value, name, value, ...
+     */
+    public JettyStarterProcess(final int port, final String... systemProperties) throws IOException {
+        final List<String> command = Lists.newArrayList(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                "-D" + JettyFactory.WARM_UP_ROUNDS + "=0");
+        for (int i = 0; i + 1 < systemProperties.length; i += 2) {
+            command.add("-D" + systemProperties[i] + "=" + systemProperties[i + 1]);
+        }
+        command.add(JettyStarter.class.getName());
+        command.add(Integer.toString(port));
+
+        process = new ProcessBuilder(command)
+                .directory(new File(System.getProperty("user.dir")))
+                .redirectErrorStream(true)
+                .redirectOutput(new File("target/jetty-" + port + ".log"))
+                .start();
+
+        destroyOnExit = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                process.destroy();
+            }
+        }, "destroy-jetty-" + port);
+        Runtime.getRuntime().addShutdownHook(destroyOnExit);
+    }
+
+    /**
+     * Stops the server the way a user does, by ending its input
+     */
+    public void stop() throws IOException, InterruptedException {
+        process.getOutputStream().close();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            while (System.nanoTime() < deadline) {
+                try {
+                    process.exitValue();
+                    return;
+                }
+                catch (IllegalThreadStateException e) {
+                    Thread.sleep(100);
+                }
+            }
+            process.destroy();
+        }
+        finally {
+            Runtime.getRuntime().removeShutdownHook(destroyOnExit);
+        }
+    }
+
+    /**
+     * Polls with GET until the response has the given status
+     */
+    public static Response awaitStatus(final WebTarget target, final Response.Status status, final int seconds)
+            throws InterruptedException {
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Response response = null;
+        while (System.nanoTime() < deadline) {
+            try {
+                response = target.request().get();
+                response.close();
+                if (response.getStatus() == status.getStatusCode()) {
+                    return response;
+                }
+            }
+            catch (ProcessingException e) {
+                // not started yet
+            }
+            Thread.sleep(100);
+        }
+        fail("Expected " + status + " from " + target.getUri() + ", last was "
+                + (response != null ? response.getStatus() : "no response"));
+        return null;
+    }
+}
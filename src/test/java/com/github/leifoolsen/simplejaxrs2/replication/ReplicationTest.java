@@ -0,0 +1,95 @@
+package com.github.leifoolsen.simplejaxrs2.replication;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.main.JettyStarterProcess;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import org.glassfish.jersey.client.ClientProperties;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static com.github.leifoolsen.simplejaxrs2.main.JettyStarterProcess.awaitStatus;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The replica runs in a JVM of its own on REPLICA_HTTP_PORT, replicating from a primary started in this JVM.
+ */
+public class ReplicationTest {
+    private static final int PRIMARY_PORT = 7071;
+    private static final int REPLICA_HTTP_PORT = 8081;
+    private static final String PRIMARY_URL = "http://localhost:8080/api";
+    private static final String ISBN = "9788202289991";
+
+    private static JettyStarterProcess replica;
+    private static WebTarget replicaTarget;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        Replication.startPrimary(PRIMARY_PORT);
+
+        replica = new JettyStarterProcess(REPLICA_HTTP_PORT,
+                Replication.ROLE, "replica",
+                Replication.PRIMARY, "localhost:" + PRIMARY_PORT,
+                Replication.PRIMARY_URL, PRIMARY_URL,
+                Replication.MAX_STALENESS_MS, "2000");
+
+        replicaTarget = ClientBuilder.newClient()
+                .property(ClientProperties.FOLLOW_REDIRECTS, false)
+                .target("http://localhost:" + REPLICA_HTTP_PORT).path("api").path("books");
+
+        awaitStatus(replicaTarget.path("ping"), Response.Status.OK, 60);
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        BookRepository.removeBook(ISBN);
+        Replication.stop();
+        if (replica != null) {
+            replica.stop();
+        }
+    }
+
+    @Test
+    public void replicaShouldFollowPrimaryAndRouteWritesAndStaleReads() throws Exception {
+        final WebTarget book = replicaTarget.path(ISBN);
+
+        BookRepository.addBook(Book.with(ISBN).title("Replicated").author("Primary, Per").build());
+        awaitStatus(book, Response.Status.OK, 10);
+        assertEquals("Replicated", book.request(MediaType.APPLICATION_JSON_TYPE).get(Book.class).getTitle());
+
+        // The snapshot left books the replica already had as they were alone, they have no version but the first
+        for (Book unchanged : BookRepository.getAllBooks(null, null)) {
+            if (BookRepository.getHistory().versions(unchanged.getIsbn()).size() == 1) {
+                final String history = replicaTarget.path(unchanged.getIsbn()).path("history")
+                        .request(MediaType.APPLICATION_JSON_TYPE).get(String.class);
+                assertEquals(history, 1, history.split("\"sequence\":", -1).length - 1);
+                break;
+            }
+        }
+
+        BookRepository.removeBook(ISBN);
+        awaitStatus(book, Response.Status.NOT_FOUND, 10);
+
+        final Response write = replicaTarget.request().post(Entity.form(new Form("isbn", ISBN)));
+        assertEquals(Response.Status.TEMPORARY_REDIRECT.getStatusCode(), write.getStatus());
+        assertEquals(PRIMARY_URL + "/books", write.getLocation().toString());
+
+        // A batch lookup is a read, served by a replica that is current
+        final Response batch = replicaTarget.path("batch-get").request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.json("[\"" + ISBN + "\"]"));
+        assertEquals(Response.Status.OK.getStatusCode(), batch.getStatus());
+        batch.close();
+
+        // Without the primary the replica goes stale, and sends reads to the primary too
+        Replication.stop();
+        final Response read = awaitStatus(replicaTarget.queryParam("limit", 2), Response.Status.TEMPORARY_REDIRECT, 10);
+        assertEquals(PRIMARY_URL + "/books?limit=2", read.getLocation().toString());
+    }
+}
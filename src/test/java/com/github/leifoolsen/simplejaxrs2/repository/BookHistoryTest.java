@@ -0,0 +1,94 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BookHistoryTest {
+    private static final Book A = Book.with("9788202148683").title("A").build();
+    private static final Book A2 = Book.with("9788202148683").title("A2").build();
+    private static final Book B = Book.with("9788202289331").title("B").build();
+    private static final Book C = Book.with("9788202289348").title("C").build();
+
+    @Test
+    public void readsAsOfSequenceShouldSeeThatPointInTime() {
+        final BookHistory history = new BookHistory("test", 16, 1000);
+        history.record(new Change(1, Change.Type.ADDED, A));
+        history.record(new Change(2, Change.Type.ADDED, B));
+        history.record(new Change(3, Change.Type.UPDATED, A2));
+        history.record(new Change(4, Change.Type.REMOVED, B));
+
+        assertEquals(Collections.<Book>emptyList(), history.asOf(0));
+        assertEquals(Arrays.asList("A", "B"), titles(history.asOf(2)));
+        assertEquals(Arrays.asList("A2", "B"), titles(history.asOf(3)));
+        assertEquals(Collections.singletonList("A2"), titles(history.asOf(4)));
+
+        final List<Change> versions = history.versions(A.getIsbn());
+        assertEquals(2, versions.size());
+        assertEquals(3, versions.get(0).getSequence());
+        assertEquals(1, versions.get(1).getSequence());
+
+        try {
+            history.asOf(5);
+            fail("No change 5 yet");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void collectShouldPruneWhatNoReadNeeds() {
+        final BookHistory history = new BookHistory("test-collect", 2, 1);
+        for (int i = 1; i <= 5; i++) {
+            history.record(new Change(i, Change.Type.UPDATED, Book.with(A).title("A" + i).build()));
+        }
+        history.record(new Change(6, Change.Type.ADDED, B));
+        history.record(new Change(7, Change.Type.REMOVED, B));
+        history.record(new Change(8, Change.Type.ADDED, C));
+
+        history.collect();
+        assertEquals(7, history.horizon());
+        assertEquals(2, history.versions(A.getIsbn()).size());
+        assertTrue(history.versions(B.getIsbn()).isEmpty());
+        assertEquals(Collections.singletonList("A5"), titles(history.asOf(7)));
+        assertEquals(2, history.asOf(8).size());
+
+        try {
+            history.asOf(6);
+            fail("Versions before the horizon are pruned");
+        }
+        catch (HistoryPrunedException expected) {
+        }
+    }
+
+    @Test
+    public void collectShouldKeepEveryVersionReadsAfterTheHorizonNeed() {
+        final BookHistory history = new BookHistory("test-retained", 1, 10);
+        for (int i = 1; i <= 12; i++) {
+            history.record(new Change(i, Change.Type.UPDATED, Book.with(A).title("A" + i).build()));
+        }
+
+        history.collect();
+        assertEquals(2, history.horizon());
+        assertEquals(11, history.versions(A.getIsbn()).size());
+        for (int i = 2; i <= 12; i++) {
+            assertEquals(Collections.singletonList("A" + i), titles(history.asOf(i)));
+        }
+    }
+
+    private static List<String> titles(final List<Book> books) {
+        final List<String> titles = Lists.newArrayList();
+        for (Book book : books) {
+            titles.add(book.getTitle());
+        }
+        return titles;
+    }
+}
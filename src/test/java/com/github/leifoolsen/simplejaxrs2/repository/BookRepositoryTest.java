@@ -0,0 +1,60 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BookRepositoryTest {
+    private static final String ISBN = "9780000000018";  // before every other book
+
+    @Test
+    public void pagesShouldBeSlicesOfAPointInTimeSnapshotByIsbn() {
+        final List<Book> before = BookRepository.getAllBooks(null, null);
+        assertEquals(BookRepository.countBooks(), before.size());
+        for (int i = 1; i < before.size(); i++) {
+            assertTrue(before.get(i - 1).getIsbn().compareTo(before.get(i).getIsbn()) < 0);
+        }
+        assertEquals(before.subList(2, 5), BookRepository.getAllBooks(2, 3));
+        assertEquals(before.subList(before.size() - 1, before.size()), BookRepository.getAllBooks(before.size() - 1, 10));
+        assertTrue(BookRepository.getAllBooks(before.size(), 10).isEmpty());
+
+        BookRepository.addBook(Book.with(ISBN).title("First").build());
+        try {
+            assertFalse(before.get(0).getIsbn().equals(ISBN));
+            assertEquals(ISBN, BookRepository.getAllBooks(0, 1).get(0).getIsbn());
+        }
+        finally {
+            BookRepository.removeBook(ISBN);
+        }
+        assertEquals(before, BookRepository.getAllBooks(null, null));
+    }
+
+    @Test
+    public void writesShouldBeMergedIntoTheSnapshotInIsbnOrder() {
+        final Book a = Book.with("9780000000025").title("A").build();
+        final Book b = Book.with("9780000000032").title("B").build();
+        final Book c = Book.with("9780000000049").title("C").build();
+        final Catalog catalog = new Catalog("merge", 10, 16, Arrays.asList(c, a));
+        try {
+            assertEquals(Arrays.asList(a, c), catalog.getAllBooks(null, null));
+
+            final Book renamed = Book.with("9780000000025").title("A2").build();
+            catalog.apply(Arrays.asList(Write.put(b), Write.put(renamed), Write.remove(c.getIsbn())));
+            final List<Book> after = catalog.getAllBooks(null, null);
+            assertEquals(Arrays.asList(a, b), after);
+            assertEquals("A2", after.get(0).getTitle());
+
+            catalog.addBook(c);
+            assertEquals(Arrays.asList(a, b, c), catalog.getAllBooks(null, null));
+        }
+        finally {
+            catalog.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import org.junit.Test;
+
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BookStatsTest {
+
+    @Test
+    public void updateShouldMoveCountsBetweenPublishersAuthorsAndYears() {
+        final BookStats stats = new BookStats();
+        final Book gyldendal = Book.with("9788205467081").title("Fisken").author("Sandemose, Aksel")
+                .published(new GregorianCalendar(2012, 0, 1).getTime()).build();
+        final Book cappelen = Book.with("9788202167081").title("Fisken").author("Sandemose, Aksel")
+                .published(new GregorianCalendar(2013, 0, 1).getTime()).build();
+
+        stats.added(gyldendal);
+        stats.added(Book.with("9788205400000").title("Unknown author").build());
+        assertEquals(2, stats.getBooks());
+        assertEquals(Integer.valueOf(2), stats.getPublishers().get("Gyldendal"));
+        assertEquals(Integer.valueOf(1), stats.getAuthors().get("Sandemose, Aksel"));
+        assertEquals(Integer.valueOf(1), stats.getYears().get(2012));
+
+        stats.updated(gyldendal, cappelen);
+        assertEquals(2, stats.getBooks());
+        assertEquals(Integer.valueOf(1), stats.getPublishers().get("Gyldendal"));
+        assertEquals(Integer.valueOf(1), stats.getPublishers().get("Cappelen"));
+        assertFalse(stats.getYears().containsKey(2012));
+        assertEquals(Integer.valueOf(1), stats.getYears().get(2013));
+
+        stats.removed(cappelen);
+        assertEquals(1, stats.getBooks());
+        assertFalse(stats.getPublishers().containsKey("Cappelen"));
+        assertFalse(stats.getAuthors().containsKey("Sandemose, Aksel"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeLogTest {
+
+    @Test
+    public void shouldReturnChangesAfterSequenceInOrder() {
+        final ChangeLog log = new ChangeLog(8);
+        for (int i = 0; i < 5; i++) {
+            log.append(Change.Type.ADDED, book(i));
+        }
+
+        final List<Change> changes = log.since(2, 10);
+        assertEquals(3, changes.size());
+        assertEquals(3, changes.get(0).getSequence());
+        assertEquals(5, changes.get(2).getSequence());
+        assertEquals(2, log.since(2, 2).size());
+        assertTrue(log.since(5, 10).isEmpty());
+    }
+
+    @Test
+    public void oldChangesShouldBeOverwrittenWhenFull() {
+        final ChangeLog log = new ChangeLog(6);  // rounded up to 8
+        for (int i = 0; i < 20; i++) {
+            log.append(Change.Type.UPDATED, book(i));
+        }
+
+        assertEquals(20, log.lastSequence());
+        assertEquals(13, log.firstSequence());
+
+        final List<Change> changes = log.since(0, 100);
+        assertEquals(8, changes.size());
+        assertEquals(13, changes.get(0).getSequence());
+    }
+
+    private static Book book(final int i) {
+        return Book.with(String.format("97882021%05d", i)).title("Title " + i).author("Author").build();
+    }
+}
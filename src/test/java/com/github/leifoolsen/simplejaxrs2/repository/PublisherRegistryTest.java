@@ -0,0 +1,50 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PublisherRegistryTest {
+    private static final String UNREGISTERED_ISBN = "9780000000001";
+
+    @Test
+    public void shouldFindPublisherWithLongestPrefix() {
+        assertEquals("Gyldendal", PublisherRegistry.find("9788205478428"));
+        assertEquals("97882054", PublisherRegistry.findPrefix("9788205478428"));
+        assertNull(PublisherRegistry.find(UNREGISTERED_ISBN));
+
+        assertTrue(PublisherRegistry.put("978820547", "Gyldendal Fakta"));
+        try {
+            assertEquals("Gyldendal Fakta", PublisherRegistry.find("9788205478428"));
+            assertEquals("Gyldendal", PublisherRegistry.find("9788205418820"));
+            assertFalse(PublisherRegistry.put("978820547", "Gyldendal Faktabøker"));
+            assertEquals("Gyldendal Faktabøker", PublisherRegistry.find("9788205478428"));
+        }
+        finally {
+            assertTrue(PublisherRegistry.remove("978820547"));
+        }
+        assertEquals("Gyldendal", PublisherRegistry.find("9788205478428"));
+        assertFalse(PublisherRegistry.remove("978820547"));
+    }
+
+    @Test
+    public void booksOfUnregisteredPublishersShouldBeLeftOutOfPublisherQueries() {
+        BookRepository.addBook(Book.with(UNREGISTERED_ISBN).title("No publisher").build());
+        try {
+            assertFalse(BookRepository.getBooksByPublisher("Gyldendal").isEmpty());
+            assertTrue(BookRepository.getBooksByPublisher("No publisher").isEmpty());
+        }
+        finally {
+            BookRepository.removeBook(UNREGISTERED_ISBN);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prefixShouldBeDigits() {
+        PublisherRegistry.put("978-82", "Hyphens");
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.google.common.cache.Weigher;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReadCacheTest {
+    private static final Weigher<String, String> WEIGHER = new Weigher<String, String>() {
+        @Override
+        public int weigh(final String key, final String value) {
+            return value.length();
+        }
+    };
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Callable<String> loader = new Callable<String>() {
+        @Override
+        public String call() {
+            loads.incrementAndGet();
+            return "value";
+        }
+    };
+
+    @Test
+    public void keyShouldBeAdmittedWhenRequestedAgain() {
+        ReadCache<String, String> cache = new ReadCache<String, String>(
+                "test-admission", 1000, 100, 1, TimeUnit.MINUTES, WEIGHER);
+
+        cache.get("key", loader);  // first access, not admitted
+        cache.get("key", loader);  // second access, admitted
+        cache.get("key", loader);
+        cache.get("key", loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void invalidateShouldForceReload() {
+        ReadCache<String, String> cache = new ReadCache<String, String>(
+                "test-invalidate", 1000, 100, 1, TimeUnit.MINUTES, WEIGHER);
+
+        cache.get("key", loader);
+        cache.get("key", loader);
+        cache.get("key", loader);
+        assertEquals(2, loads.get());
+
+        cache.invalidate("key");
+        cache.get("key", loader);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void invalidatingOneKeyShouldNotKeepOthersOut() {
+        final ReadCache<String, String> cache = new ReadCache<String, String>(
+                "test-invalidate-other", 1000, 100, 1, TimeUnit.MINUTES, WEIGHER);
+
+        cache.get("a", loader);
+        // Admitted, though "b" is invalidated while "a" loads
+        cache.get("a", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                cache.invalidate("b");
+                return loader.call();
+            }
+        });
+        cache.get("a", loader);
+        assertEquals(2, loads.get());
+    }
+}
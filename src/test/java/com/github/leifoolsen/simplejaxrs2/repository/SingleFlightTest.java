@@ -0,0 +1,81 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.metrics.MetricsRegistry;
+import com.github.leifoolsen.simplejaxrs2.metrics.StripedCounter;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SingleFlightTest {
+
+    @Test
+    public void concurrentCallsForSameKeyShouldShareOneLoad() throws Exception {
+        final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>("test");
+        final StripedCounter coalesced = MetricsRegistry.counter("singleflight_coalesced_total", "",
+                MetricsRegistry.labels("name", "test"));
+        final long coalescedBefore = coalesced.sum();
+
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Object> loader = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return new Object();
+            }
+        };
+        final Callable<Object> call = new Callable<Object>() {
+            @Override
+            public Object call() {
+                return singleFlight.get("key", loader);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Object> first = executor.submit(call);
+            loading.await();
+            Future<Object> second = executor.submit(call);
+            Future<Object> third = executor.submit(call);
+
+            while (coalesced.sum() - coalescedBefore < 2) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            Object result = first.get(5, TimeUnit.SECONDS);
+            assertSame(result, second.get(5, TimeUnit.SECONDS));
+            assertSame(result, third.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+
+            // Nothing is cached once the call completed
+            singleFlight.get("key", loader);
+            assertEquals(2, loads.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void loaderExceptionShouldPropagate() {
+        new SingleFlight<String, Object>("test-exception").get("key", new Callable<Object>() {
+            @Override
+            public Object call() {
+                throw new IllegalStateException("Failed");
+            }
+        });
+    }
+}
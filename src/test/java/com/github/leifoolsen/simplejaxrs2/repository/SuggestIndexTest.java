@@ -0,0 +1,65 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SuggestIndexTest {
+
+    @Test
+    public void foldShouldIgnoreCaseAccentsAndPunctuation() {
+        assertEquals("gravroys", SuggestIndex.fold("Gravrøys"));
+        assertEquals("blamann blamann", SuggestIndex.fold("  Blåmann,  BLÅMANN!"));
+        assertEquals("faerder dont", SuggestIndex.fold("Færder: don't"));
+    }
+
+    @Test
+    public void shouldSuggestTitlesByAnyWordAndAuthorsOnce() {
+        final Book book = Book.with("9788202148683").title("Kuppet: på innsiden av Norges mektigste mafiafamilie")
+                .author("Aass, Hans Petter; Widerøe, Rolf J.").build();
+        final SuggestIndex index = SuggestIndex.of(Collections.singletonList(book));
+
+        List<SuggestIndex.Suggestion> suggestions = index.suggest("NORGE", 10);
+        assertEquals(1, suggestions.size());
+        assertEquals(book.getTitle(), suggestions.get(0).getText());
+        assertEquals(book.getIsbn(), suggestions.get(0).getIsbn());
+
+        suggestions = index.suggest("wideroe", 10);
+        assertEquals(1, suggestions.size());
+        assertEquals("Widerøe, Rolf J.", suggestions.get(0).getText());
+        assertEquals(SuggestIndex.Field.AUTHOR, suggestions.get(0).getField());
+        assertNull(suggestions.get(0).getIsbn());
+
+        final Book renamed = Book.with(book).title("Klanen").build();
+        index.updated(book, renamed);
+        assertTrue(index.suggest("kupp", 10).isEmpty());
+        assertEquals("Klanen", index.suggest("kla", 10).get(0).getText());
+
+        index.removed(renamed);
+        assertTrue(index.suggest("k", 10).isEmpty());
+        assertTrue(index.suggest("aass", 10).isEmpty());
+    }
+
+    @Test
+    public void authorsShouldBeSuggestedWhileAnyOfTheirBooksIsIndexed() {
+        final Book first = Book.with("9788202148683").title("Kuppet").author("Aass, Hans Petter").build();
+        final Book second = Book.with("9788202289331").title("Klanen").author("Aass, Hans Petter").build();
+        final SuggestIndex index = SuggestIndex.of(Arrays.asList(first, second));
+
+        List<SuggestIndex.Suggestion> suggestions = index.suggest("aass", 10);
+        assertEquals(1, suggestions.size());
+        assertEquals("Aass, Hans Petter", suggestions.get(0).getText());
+
+        index.removed(first);
+        assertEquals(1, index.suggest("aass", 10).size());
+        index.removed(second);
+        assertTrue(index.suggest("aass", 10).isEmpty());
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.leifoolsen.simplejaxrs2.repository;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WritePipelineTest {
+    private static final int THREADS = 8;
+    private static final int WRITES_PER_THREAD = 200;
+
+    @Test
+    public void concurrentWritesShouldCompleteWithTheirOutcome() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<List<Boolean>>> results = Lists.newArrayList();
+        for (int t = 0; t < THREADS; t++) {
+            final String isbn = String.format("97800000%05d", t);
+            results.add(executor.submit(new Callable<List<Boolean>>() {
+                @Override
+                public List<Boolean> call() throws Exception {
+                    final List<ListenableFuture<Boolean>> futures = Lists.newArrayList();
+                    for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                        final Book book = Book.with(isbn).title("Version " + i).build();
+                        futures.add(WritePipeline.submit(i % 2 == 0 ? Write.add(book) : Write.remove(isbn)));
+                    }
+                    return Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+                }
+            }));
+        }
+        for (Future<List<Boolean>> result : results) {
+            // Each thread has its own ISBN and its writes are applied in the order submitted
+            for (Boolean applied : result.get()) {
+                assertTrue(applied);
+            }
+        }
+        executor.shutdown();
+
+        final Book book = Book.with("9780000000001").title("Once").build();
+        assertTrue(WritePipeline.submit(Write.add(book)).get());
+        assertFalse(WritePipeline.submit(Write.add(book)).get());
+        assertTrue(WritePipeline.submit(Write.remove(book.getIsbn())).get());
+        assertFalse(WritePipeline.submit(Write.replace(book)).get());
+        assertNull(BookRepository.findBook(book.getIsbn()));
+    }
+
+    @Test
+    public void failingListenerShouldNotFailAppliedWrites() throws Exception {
+        final Book book = Book.with("9780000000094").title("Heard").build();
+        final BookRepositoryListener failing = new Listener() {
+            @Override
+            public void bookAdded(final Book added) {
+                throw new IllegalStateException("Listener failed");
+            }
+        };
+        BookRepository.addListener(failing);
+        try {
+            assertTrue(WritePipeline.submit(Write.add(book)).get(10, TimeUnit.SECONDS));
+            assertTrue(WritePipeline.submit(Write.remove(book.getIsbn())).get(10, TimeUnit.SECONDS));
+        }
+        finally {
+            BookRepository.removeListener(failing);
+        }
+    }
+
+    @Test
+    public void writesBeyondThePendingLimitShouldBeTurnedAway() throws Exception {
+        final Book blocker = Book.with("9780000000100").title("Blocker").build();
+        final Book missing = Book.with("9780000000117").title("Missing").build();
+        final CountDownLatch release = new CountDownLatch(1);
+        final BookRepositoryListener blocking = new Listener() {
+            @Override
+            public void bookAdded(final Book added) {
+                if (added.getIsbn().equals(blocker.getIsbn())) {
+                    Uninterruptibles.awaitUninterruptibly(release);  // holds up the writer
+                }
+            }
+        };
+        BookRepository.addListener(blocking);
+        final List<ListenableFuture<Boolean>> queued = Lists.newArrayList();
+        ListenableFuture<Boolean> turnedAway = null;
+        try {
+            queued.add(WritePipeline.submit(Write.add(blocker)));
+            for (int i = 0; i < 1000000 && turnedAway == null; i++) {
+                final ListenableFuture<Boolean> future = WritePipeline.submit(Write.replace(missing));
+                if (future.isDone()) {
+                    turnedAway = future;
+                }
+                else {
+                    queued.add(future);
+                }
+            }
+        }
+        finally {
+            release.countDown();
+            BookRepository.removeListener(blocking);
+        }
+
+        assertNotNull(turnedAway);
+        try {
+            turnedAway.get();
+            fail("Expected the write to be turned away");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof WritesBackedUpException);
+        }
+        Futures.allAsList(queued).get(10, TimeUnit.SECONDS);
+        assertTrue(WritePipeline.submit(Write.remove(blocker.getIsbn())).get(10, TimeUnit.SECONDS));
+    }
+
+    private static class Listener implements BookRepositoryListener {
+        @Override
+        public void bookAdded(final Book book) {}
+
+        @Override
+        public void bookUpdated(final Book previous, final Book book) {}
+
+        @Override
+        public void bookRemoved(final Book book) {}
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.leifoolsen.simplejaxrs2.rest.filter;
+
+import com.github.leifoolsen.simplejaxrs2.embeddedjetty.JettyFactory;
+import org.eclipse.jetty.server.Server;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimitFilterTest {
+    private static final int BURST = 5;
+    private static final int CONCURRENCY = 3;
+
+    private static Server server;
+    private static WebTarget target;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        System.setProperty(RateLimitFilter.CLIENT_RATE, "1");
+        System.setProperty(RateLimitFilter.CLIENT_BURST, Integer.toString(BURST));
+        System.setProperty(RateLimitFilter.API_KEYS, "greedy,modest,k0,k1,k2,k3");
+        System.setProperty(RateLimitFilter.CONCURRENCY_INITIAL, Integer.toString(CONCURRENCY));
+        System.setProperty(RateLimitFilter.CONCURRENCY_MIN, "1");
+
+        server = new JettyFactory().build();
+        JettyFactory.start(server);
+        assertTrue(server.isStarted());
+
+        Client c = ClientBuilder.newClient();
+        target = c.target(server.getURI()).path("api");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        JettyFactory.stop(server);
+        System.clearProperty(RateLimitFilter.CLIENT_RATE);
+        System.clearProperty(RateLimitFilter.CLIENT_BURST);
+        System.clearProperty(RateLimitFilter.API_KEYS);
+        System.clearProperty(RateLimitFilter.CONCURRENCY_INITIAL);
+        System.clearProperty(RateLimitFilter.CONCURRENCY_MIN);
+    }
+
+    private Response ping(final String apiKey) {
+        return target
+                .path("books")
+                .path("ping")
+                .request(MediaType.TEXT_PLAIN)
+                .header(RateLimitFilter.API_KEY_HEADER, apiKey)
+                .get();
+    }
+
+    @Test
+    public void clientExceedingBurstShouldReturn_TOO_MANY_REQUESTS() {
+        for (int i = 0; i < BURST; i++) {
+            Response response = ping("greedy");
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            response.close();
+        }
+
+        Response response = ping("greedy");
+        assertEquals(429, response.getStatus());
+        assertNotNull(response.getHeaderString("Retry-After"));
+        response.close();
+
+        // Other clients have their own bucket
+        response = ping("modest");
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
+    @Test
+    public void unknownApiKeysShouldShareTheBucketOfTheRemoteAddress() {
+        for (int i = 0; i < BURST; i++) {
+            Response response = ping("made-up-" + i);
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            response.close();
+        }
+        Response response = ping("made-up-" + BURST);
+        assertEquals(429, response.getStatus());
+        response.close();
+    }
+
+    @Test
+    public void completedRequestsShouldGiveBackTheirConcurrencySlots() {
+        // Sequential, so never more than one in flight, but many more than the limit in all
+        for (int i = 0; i < 4 * CONCURRENCY; i++) {
+            Response response = ping("k" + (i % 4));
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.leifoolsen.simplejaxrs2.rest.filter;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.embeddedjetty.JettyFactory;
+import com.github.leifoolsen.simplejaxrs2.tenant.Tenants;
+import org.eclipse.jetty.server.Server;
+import org.glassfish.jersey.media.sse.EventInput;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TenantFilterTest {
+    private static final String ISBN = "9788202289355";
+
+    private static Server server;
+    private static WebTarget target;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        Tenants.add("oslo");
+        System.setProperty("simplejaxrs2.tenant.tiny.max-books", "1");
+        Tenants.add("tiny");
+
+        server = new JettyFactory().build();
+        JettyFactory.start(server);
+        target = ClientBuilder.newClient().target(server.getURI()).path("api");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        System.clearProperty("simplejaxrs2.tenant.tiny.max-books");
+        JettyFactory.stop(server);
+    }
+
+    @Test
+    public void tenantsShouldHaveCatalogsOfTheirOwn() {
+        Response response = target.path("tenants/oslo/books").request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(book(ISBN), MediaType.APPLICATION_JSON_TYPE));
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertTrue(response.getLocation().toString(),
+                response.getLocation().getPath().endsWith("/api/tenants/oslo/books/" + ISBN));
+        response.close();
+
+        response = target.path("books").path(ISBN).request(MediaType.APPLICATION_JSON_TYPE)
+                .header(TenantFilter.TENANT_HEADER, "oslo").get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(ISBN, response.readEntity(Book.class).getIsbn());
+
+        response = target.path("books").path(ISBN).request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+
+        // A book of the default catalog
+        response = target.path("tenants/oslo/books/9788202148683").request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
+    @Test
+    public void fullCatalogShouldAnswerInsufficientStorage() {
+        Response response = target.path("tenants/tiny/books").request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(book("9788202289362"), MediaType.APPLICATION_JSON_TYPE));
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        response.close();
+
+        response = target.path("tenants/tiny/books").request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(book("9788202289379"), MediaType.APPLICATION_JSON_TYPE));
+        assertEquals(507, response.getStatus());
+        response.close();
+        assertEquals(1, Tenants.get("tiny").getCatalog().countBooks());
+    }
+
+    @Test
+    public void unknownOrConflictingTenantShouldBeRejected() {
+        Response response = target.path("books").request(MediaType.APPLICATION_JSON_TYPE)
+                .header(TenantFilter.TENANT_HEADER, "nowhere").get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+
+        response = target.path("tenants/oslo/books").request(MediaType.APPLICATION_JSON_TYPE)
+                .header(TenantFilter.TENANT_HEADER, "tiny").get();
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
+    @Test
+    public void changeFeedSubscribersShouldNotHoldSlotsOfTheBudget() {
+        final int inFlight = Tenants.getDefault().getInFlight();  // other tests may have left streams open
+        final WebTarget feed = ClientBuilder.newClient().register(SseFeature.class).target(server.getURI());
+        final EventInput events = feed.path("api/books/changes").request(SseFeature.SERVER_SENT_EVENTS)
+                .get(EventInput.class);
+        final EventInput slashed = feed.path("api/books/changes/").request(SseFeature.SERVER_SENT_EVENTS)
+                .get(EventInput.class);
+        try {
+            assertEquals(inFlight, Tenants.getDefault().getInFlight());
+        }
+        finally {
+            events.close();
+            slashed.close();
+        }
+    }
+
+    @Test
+    public void tenantShouldImportOneFeedAtATime() throws Exception {
+        final HttpURLConnection first = (HttpURLConnection)
+                server.getURI().resolve("/api/tenants/oslo/books/import").toURL().openConnection();
+        first.setRequestMethod("POST");
+        first.setRequestProperty("Content-Type", "application/x-ndjson");
+        first.setDoOutput(true);
+        first.setChunkedStreamingMode(0);
+        final OutputStream out = first.getOutputStream();
+        out.write('\n');
+        out.flush();
+
+        // The first import holds the tenant's slot until its feed ends
+        int status = 0;
+        for (int i = 0; i < 50 && status != 429; i++) {
+            status = importEmptyFeed("oslo");
+            Thread.sleep(100);
+        }
+        assertEquals(429, status);
+
+        out.close();
+        assertEquals(Response.Status.OK.getStatusCode(), first.getResponseCode());
+        first.getInputStream().close();
+        assertEquals(Response.Status.OK.getStatusCode(), importEmptyFeed("oslo"));
+    }
+
+    private static int importEmptyFeed(final String tenant) {
+        final Response response = target.path("tenants").path(tenant).path("books/import").request()
+                .post(Entity.entity("", "application/x-ndjson"));
+        response.close();
+        return response.getStatus();
+    }
+
+    @Test
+    public void asyncWritesShouldGiveBackTheirSlots() {
+        final int inFlight = Tenants.get("oslo").getInFlight();
+        for (int i = 0; i < 20; i++) {
+            Response response = target.path("tenants/oslo/books").request(MediaType.APPLICATION_JSON_TYPE)
+                    .post(Entity.entity(book("9788202289386"), MediaType.APPLICATION_JSON_TYPE));
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+            response.close();
+
+            response = target.path("tenants/oslo/books/9788202289386").request().delete();
+            assertEquals(Response.Status.NO_CONTENT.getStatusCode(), response.getStatus());
+            response.close();
+        }
+        assertEquals(inFlight, Tenants.get("oslo").getInFlight());
+    }
+
+    private static Book book(final String isbn) {
+        return Book.with(isbn).title("Tenant book").author("Loe, Erlend").build();
+    }
+}
@@ -1,9 +1,14 @@
 package com.github.leifoolsen.simplejaxrs2.rest.resource;
 
+import com.github.leifoolsen.simplejaxrs2.codec.BookProtobuf;
 import com.github.leifoolsen.simplejaxrs2.domain.Book;
 import com.github.leifoolsen.simplejaxrs2.embeddedjetty.JettyFactory;
 import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.github.leifoolsen.simplejaxrs2.rest.provider.BookProtobufProvider;
 import org.eclipse.jetty.server.Server;
+import org.glassfish.jersey.media.sse.EventInput;
+import org.glassfish.jersey.media.sse.InboundEvent;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.server.validation.ValidationError;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -50,7 +55,7 @@ public class BookResourceTest {
         assertTrue(server.isRunning());
 
         // create the client
-        Client c = ClientBuilder.newClient();
+        Client c = ClientBuilder.newClient().register(BookProtobufProvider.class).register(SseFeature.class);
         target = c.target(server.getURI()).path("api");
     }
 
@@ -110,6 +115,30 @@ public class BookResourceTest {
         assertEquals(book, bookResponse);
     }
 
+    @Test
+    public void createBookAsProtobuf() {
+        Book book = Book
+            .with("9788202289348")
+            .title("Doppler")
+            .author("Loe, Erlend")
+            .published(new GregorianCalendar(2004, 1, 1).getTime())
+            .summary("Doppler bor i skogen. Sammen med en elg.")
+            .build();
+
+        final Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .request(BookProtobuf.APPLICATION_PROTOBUF)
+                .post(Entity.entity(book, BookProtobuf.APPLICATION_PROTOBUF));
+
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertEquals(BookProtobuf.APPLICATION_PROTOBUF, response.getMediaType().toString());
+
+        Book bookResponse = response.readEntity(Book.class);
+        assertEquals(book, bookResponse);
+        assertEquals(book.getSummary(), bookResponse.getSummary());
+        assertEquals(book.getPublished(), bookResponse.getPublished());
+    }
+
     @Test
     public void createBookWithValidationFailureShouldReturn_BAD_REQUEST() {
         final String tooShortISBN = "97882021486";
@@ -131,6 +160,16 @@ public class BookResourceTest {
     }
     
 
+    @Test
+    public void createBookWithMalformedJsonShouldReturn_BAD_REQUEST() {
+        final Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity("{\"isbn\":\"9788202289349\" \"title\":\"x\"}", MediaType.APPLICATION_JSON_TYPE));
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
     @Test
     public void createBookShouldReturn_CONFLICT() {
         Book bookAlreadyInRepository = BookRepository.findBook(TRAVELLING_TO_INFINITY_ISBN);
@@ -144,6 +183,80 @@ public class BookResourceTest {
         assertEquals(Response.Status.CONFLICT.getStatusCode(), response.getStatus());
     }
 
+    @Test
+    public void importBooksShouldReportProgressAndErrors() {
+        final String feed =
+                "{\"isbn\":\"9788202148301\",\"title\":\"Importert\",\"author\":\"Forfatter\"}\n" +
+                "{\"isbn\":\"9788202148302\",\"title\":\n" +
+                "\n" +
+                "{\"isbn\":\"" + FISKEN_ISBN + "\",\"title\":\"Fisken\",\"author\":\"Forfatter\"}\n" +
+                "{\"isbn\":\"123\",\"title\":\"Ugyldig\",\"author\":\"Forfatter\"}";
+
+        final Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .path("import")
+                .request(BookImport.APPLICATION_NDJSON)
+                .post(Entity.entity(feed, BookImport.APPLICATION_NDJSON));
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        final String[] lines = response.readEntity(String.class).split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"line\":2,\"error\":"));
+        assertTrue(lines[1], lines[1].startsWith("{\"line\":4,\"isbn\":\"" + FISKEN_ISBN + "\",\"error\":"));
+        assertTrue(lines[2], lines[2].startsWith("{\"line\":5,\"isbn\":\"123\",\"error\":"));
+        assertEquals("{\"lines\":5,\"imported\":1,\"failed\":3,\"done\":true}", lines[3]);
+
+        assertNotNull(BookRepository.findBook("9788202148301"));
+    }
+
+    @Test
+    public void changesShouldStreamRepositoryMutations() throws Exception {
+        final long since = BookRepository.getChanges().lastSequence();
+        final Book book = Book.with("9788202148303").title("Endringer").author("Forfatter").build();
+        target.path(BOOK_RESOURCE_PATH).request().post(Entity.entity(book, MediaType.APPLICATION_JSON_TYPE));
+
+        final EventInput events = target
+                .path(BOOK_RESOURCE_PATH)
+                .path("changes")
+                .queryParam("since", since)
+                .request(SseFeature.SERVER_SENT_EVENTS)
+                .get(EventInput.class);
+
+        InboundEvent event = events.read();
+        assertEquals("added", event.getName());
+        assertEquals(Long.toString(since + 1), event.getId());
+        assertTrue(event.readData(String.class).contains("\"isbn\":\"9788202148303\""));
+
+        target.path(BOOK_RESOURCE_PATH).path("9788202148303").request().delete();
+        event = events.read();
+        assertEquals("removed", event.getName());
+        assertEquals(Long.toString(since + 2), event.getId());
+        events.close();
+    }
+
+    @Test
+    public void changesShouldResetCursorsAheadOfTheLog() throws Exception {
+        final long last = BookRepository.getChanges().lastSequence();
+        final EventInput events = target
+                .path(BOOK_RESOURCE_PATH)
+                .path("changes")
+                .request(SseFeature.SERVER_SENT_EVENTS)
+                .header(SseFeature.LAST_EVENT_ID_HEADER, last + 1000)
+                .get(EventInput.class);
+
+        InboundEvent event = events.read();
+        assertEquals("reset", event.getName());
+        assertEquals(Long.toString(last), event.getId());
+
+        final Book book = Book.with("9788202148304").title("Fremtiden").author("Forfatter").build();
+        target.path(BOOK_RESOURCE_PATH).request().post(Entity.entity(book, MediaType.APPLICATION_JSON_TYPE));
+        event = events.read();
+        assertEquals("added", event.getName());
+        assertEquals(Long.toString(last + 1), event.getId());
+        events.close();
+    }
+
     @Test
     public void createBookWithFormParam() {
 
@@ -219,6 +332,42 @@ public class BookResourceTest {
         assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
     }
 
+    @Test
+    public void historyAndAsOfShouldShowPastVersions() {
+        final String isbn = "9788202289386";
+        Book book = Book.with(isbn).title("Naiv. Super.").author("Loe, Erlend").build();
+        Response response = target.path(BOOK_RESOURCE_PATH).request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(book, MediaType.APPLICATION_JSON_TYPE));
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        final long created = BookRepository.getHistory().lastSequence();
+
+        response = target.path(BOOK_RESOURCE_PATH).request(MediaType.APPLICATION_JSON_TYPE)
+                .put(Entity.entity(Book.with(book).title("Naiv. Super").build(), MediaType.APPLICATION_JSON_TYPE));
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        response = target.path(BOOK_RESOURCE_PATH).path(isbn).path("history")
+                .request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        final String history = response.readEntity(String.class);
+        assertTrue(history, history.startsWith("[{\"sequence\":"));
+        assertTrue(history, history.indexOf("\"type\":\"updated\"") < history.indexOf("\"type\":\"added\""));
+
+        response = target.path(BOOK_RESOURCE_PATH).queryParam("asOf", created).queryParam("limit", 1000)
+                .request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        boolean found = false;
+        for (Book b : response.readEntity(new GenericType<List<Book>>() {})) {
+            if (isbn.equals(b.getIsbn())) {
+                assertEquals("Naiv. Super.", b.getTitle());
+                found = true;
+            }
+        }
+        assertTrue(found);
+
+        response = target.path(BOOK_RESOURCE_PATH).queryParam("asOf", -1).request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
     @Test
     public void updateNonExistingBookShouldReturn_NOT_FOUND() {
         Book bookToUpdate = Book.with("1234567890123").author("A").title("T").build();
@@ -244,6 +393,35 @@ public class BookResourceTest {
         assertEquals("9781846883668", book.getIsbn());
     }
 
+    @Test
+    public void getBookByIsbnAsProtobufShouldReturn_OK() {
+        final Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .path("9788204094261")
+                .request(BookProtobuf.APPLICATION_PROTOBUF)
+                .get();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        Book book = response.readEntity(Book.class);
+        Book expected = BookRepository.findBook("9788204094261");
+        assertEquals(expected.getTitle(), book.getTitle());
+        assertEquals(expected.getTranslator(), book.getTranslator());
+        assertEquals(expected.getSummary(), book.getSummary());
+    }
+
+    @Test
+    public void getBookByIsbnShouldDefaultToJson() {
+        final Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .path("9781846883668")
+                .request(MediaType.WILDCARD_TYPE)
+                .get();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getMediaType());
+    }
+
     @Test
     public void bookNotFoundShouldReturn_NOT_FOUND() throws Exception {
         final Response response = target
@@ -301,6 +479,90 @@ public class BookResourceTest {
         assertEquals(BookRepository.countBooks(), result.size());
     }
 
+    @Test
+    public void shouldGetAllBooksAsProtobuf() {
+        final Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .request(BookProtobuf.APPLICATION_PROTOBUF)
+                .get();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        final List<Book> result = response.readEntity(new GenericType<List<Book>>() {});
+        assertEquals(BookRepository.countBooks(), result.size());
+    }
+
+    @Test
+    public void batchGetShouldReturnFoundBooksInOrderAndMissingIsbns() {
+        final String isbns = "[\"9788204094261\",\"" + ISBN_NOT_IN_REPOSITORY + "\",\"" +
+                TRAVELLING_TO_INFINITY_ISBN + "\",\"9788204094261\"]";
+
+        final Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .path("batch-get")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(isbns, MediaType.APPLICATION_JSON_TYPE));
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        final String json = response.readEntity(String.class);
+        assertTrue(json, json.startsWith("{\"books\":[{\"isbn\":\"9788204094261\""));
+        assertTrue(json, json.contains("},{\"isbn\":\"" + TRAVELLING_TO_INFINITY_ISBN + "\""));
+        assertTrue(json, json.endsWith("],\"missing\":[\"" + ISBN_NOT_IN_REPOSITORY + "\"]}"));
+    }
+
+    @Test
+    public void statsShouldCountBooksPerPublisherAuthorAndYear() {
+        final Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .path("stats")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        final String json = response.readEntity(String.class);
+        assertTrue(json, json.startsWith("{\"books\":" + BookRepository.countBooks() + ",\"publishers\":{"));
+        assertTrue(json, json.contains("\"Hawking, Jane\":1"));
+        assertTrue(json, json.contains(",\"years\":{"));
+    }
+
+    @Test
+    public void suggestShouldFoldAccentsAndLimitSuggestions() {
+        Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .path("suggest")
+                .queryParam("prefix", "gravroy")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("[{\"text\":\"Gravrøys\",\"field\":\"title\",\"isbn\":\"9788205478428\"}]",
+                response.readEntity(String.class));
+
+        response = target
+                .path(BOOK_RESOURCE_PATH)
+                .path("suggest")
+                .queryParam("prefix", "the")
+                .queryParam("limit", 2)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+        final String json = response.readEntity(String.class);
+        assertEquals(json, 2, json.split("\"text\":").length - 1);
+    }
+
+    @Test
+    public void shouldGetBooksByIsbnQueryParams() {
+        final Response response = target
+                .path(BOOK_RESOURCE_PATH)
+                .queryParam("isbn", TRAVELLING_TO_INFINITY_ISBN, ISBN_NOT_IN_REPOSITORY)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        final String json = response.readEntity(String.class);
+        assertTrue(json, json.startsWith("{\"books\":[{\"isbn\":\"" + TRAVELLING_TO_INFINITY_ISBN + "\""));
+        assertTrue(json, json.endsWith("],\"missing\":[\"" + ISBN_NOT_IN_REPOSITORY + "\"]}"));
+    }
+
     @Test
     public void shouldPaginateTroughAllBooks() {
         Integer offset = 0;
@@ -0,0 +1,104 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.domain.Book;
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Lifecycle;
+import com.github.leifoolsen.simplejaxrs2.repository.BookRepository;
+import com.google.common.collect.Lists;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class ChangeFeedTest {
+    private static final String ISBN = "9780000000124";
+    private static final int POOL_THREADS = 8;
+
+    @Before
+    public void setUp() {
+        Lifecycle.started();  // a server stopped by an earlier test leaves it draining
+        System.setProperty(ChangeFeed.WRITE_TIMEOUT_MS, "100");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ChangeFeed.WRITE_TIMEOUT_MS);
+        BookRepository.removeBook(ISBN);
+    }
+
+    @Test
+    public void stalledSubscribersShouldBeDroppedAndNotHoldUpOthers() throws Exception {
+        // As many clients that stop reading as there are threads to write to subscribers
+        final List<StalledOutput> stalled = Lists.newArrayList();
+        for (int i = 0; i < POOL_THREADS; i++) {
+            final StalledOutput output = new StalledOutput();
+            ChangeFeed.subscribe(null, output);
+            stalled.add(output);
+        }
+        final ReadingOutput reading = new ReadingOutput();
+        ChangeFeed.subscribe(null, reading);
+
+        BookRepository.addBook(Book.with(ISBN).title("Stalled").build());
+
+        assertTrue("A reading subscriber should get the change", reading.received.await(10, TimeUnit.SECONDS));
+        for (StalledOutput output : stalled) {
+            assertTrue("A stalled subscriber should be dropped", output.closed.await(10, TimeUnit.SECONDS));
+        }
+        reading.close();
+    }
+
+    // Blocks in every write, like a write to a client whose socket buffer is full
+    private static class StalledOutput extends EventOutput {
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public void write(final OutboundEvent event) throws IOException {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed.getCount() == 0;
+        }
+    }
+
+    private static class ReadingOutput extends EventOutput {
+        final CountDownLatch received = new CountDownLatch(1);
+        volatile boolean closed;
+
+        @Override
+        public void write(final OutboundEvent event) {
+            if ("added".equals(event.getName())) {
+                received.countDown();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.embeddedjetty.JettyFactory;
+import com.github.leifoolsen.simplejaxrs2.lifecycle.Readiness;
+import com.github.leifoolsen.simplejaxrs2.lifecycle.ReadinessCheck;
+import org.eclipse.jetty.server.Server;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HealthResourceTest {
+    private static Server server;
+    private static WebTarget target;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = new JettyFactory().build();
+        JettyFactory.start(server);
+        assertTrue(server.isStarted());
+
+        Client c = ClientBuilder.newClient();
+        target = c.target(server.getURI()).path("api").path("health");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        JettyFactory.stop(server);
+    }
+
+    @Test
+    public void liveShouldAlwaysAnswer() {
+        Response response = target.path("live").request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("{\"live\":true}", response.readEntity(String.class));
+    }
+
+    @Test
+    public void readyShouldReportFailingChecks() {
+        Response response = target.path("ready").request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("{\"ready\":true}", response.readEntity(String.class));
+
+        Readiness.register("warm-up", new ReadinessCheck() {
+            @Override
+            public String notReady() {
+                return "still warming up";
+            }
+        });
+        try {
+            response = target.path("ready").request(MediaType.APPLICATION_JSON_TYPE).get();
+            assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+            assertEquals("{\"ready\":false,\"problems\":{\"warm-up\":\"still warming up\"}}",
+                    response.readEntity(String.class));
+        }
+        finally {
+            Readiness.unregister("warm-up");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.embeddedjetty.JettyFactory;
+import org.eclipse.jetty.server.Server;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsResourceTest {
+    private static Server server;
+    private static WebTarget target;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = new JettyFactory().build();
+        JettyFactory.start(server);
+        assertTrue(server.isStarted());
+
+        Client c = ClientBuilder.newClient();
+        target = c.target(server.getURI()).path("api");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        JettyFactory.stop(server);
+    }
+
+    @Test
+    public void metricsShouldContainRequestLatencyAndStatusOfPreviousRequests() {
+        Response response = target.path("books").path("9781846883668").request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        response.close();
+
+        response = target.path("books").path("1234567890123").request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+
+        response = target.path("metrics").request(MediaType.TEXT_PLAIN_TYPE).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        String metrics = response.readEntity(String.class);
+        assertThat(metrics, containsString("# TYPE http_request_duration_seconds histogram"));
+        assertThat(metrics, containsString(
+                "http_request_duration_seconds_bucket{method=\"GET\",route=\"/books/{isbn}\",le=\"+Inf\"}"));
+        assertThat(metrics, containsString(
+                "http_responses_total{method=\"GET\",route=\"/books/{isbn}\",status=\"200\"}"));
+        assertThat(metrics, containsString(
+                "http_responses_total{method=\"GET\",route=\"/books/{isbn}\",status=\"404\"}"));
+        assertThat(metrics, containsString("http_requests_in_flight"));
+        assertThat(metrics, containsString("jetty_threads{port=\"8080\"}"));
+        assertThat(metrics, containsString("jetty_connections_open{port=\"8080\"}"));
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.embeddedjetty.JettyFactory;
+import org.eclipse.jetty.server.Server;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PublisherResourceTest {
+    private static final String PREFIX = "978820547";
+    private static final String ISBN = "9788205478428";
+
+    private static Server server;
+    private static WebTarget target;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = new JettyFactory().build();
+        JettyFactory.start(server);
+        assertTrue(server.isStarted());
+
+        Client c = ClientBuilder.newClient();
+        target = c.target(server.getURI()).path("api");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        JettyFactory.stop(server);
+    }
+
+    @Test
+    public void registeredPublisherShouldOwnBooksInItsRange() {
+        Response response = target.path("publishers").path(PREFIX).request()
+                .put(Entity.entity("Gyldendal Fakta", MediaType.TEXT_PLAIN_TYPE));
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+
+        response = target.path("publishers").path("isbn").path(ISBN).request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("{\"prefix\":\"" + PREFIX + "\",\"name\":\"Gyldendal Fakta\"}", response.readEntity(String.class));
+
+        response = target.path("books").path("publisher").path("Gyldendal Fakta")
+                .request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertTrue(response.readEntity(String.class).contains(ISBN));
+
+        response = target.path("publishers").path(PREFIX).request().delete();
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), response.getStatus());
+
+        response = target.path("publishers").path(PREFIX).request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+
+        response = target.path("publishers").path("isbn").path(ISBN).request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals("{\"prefix\":\"97882054\",\"name\":\"Gyldendal\"}", response.readEntity(String.class));
+    }
+
+    @Test
+    public void invalidPrefixShouldBeRejected() {
+        final Response response = target.path("publishers").path("978-82").request()
+                .put(Entity.entity("Hyphens", MediaType.TEXT_PLAIN_TYPE));
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+}
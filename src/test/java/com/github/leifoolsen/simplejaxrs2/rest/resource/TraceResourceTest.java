@@ -0,0 +1,59 @@
+package com.github.leifoolsen.simplejaxrs2.rest.resource;
+
+import com.github.leifoolsen.simplejaxrs2.embeddedjetty.JettyFactory;
+import com.github.leifoolsen.simplejaxrs2.tracing.Tracer;
+import org.eclipse.jetty.server.Server;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceResourceTest {
+    private static Server server;
+    private static WebTarget target;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = new JettyFactory().build();
+        JettyFactory.start(server);
+        assertTrue(server.isStarted());
+
+        Client c = ClientBuilder.newClient();
+        target = c.target(server.getURI()).path("api");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        Tracer.setSampleRate(0);
+        JettyFactory.stop(server);
+    }
+
+    @Test
+    public void tracedRequestShouldShowUpInTraceEvents() {
+        Tracer.setSampleRate(1);
+        try {
+            Response response = target.path("books").path("9788202148683").request(MediaType.APPLICATION_JSON_TYPE).get();
+            response.close();
+        }
+        finally {
+            Tracer.setSampleRate(0);
+        }
+
+        Response response = target.path("traces").request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        final String events = response.readEntity(String.class);
+        assertTrue(events, events.startsWith("{\"traceEvents\":["));
+        assertTrue(events, events.contains("\"name\":\"GET /api/books/9788202148683\""));
+        assertTrue(events, events.contains("\"name\":\"jersey.matching\""));
+        assertTrue(events, events.contains("\"name\":\"BookResource.byIsbn\""));
+        assertTrue(events, events.contains("\"name\":\"BookLookup.findBook\""));
+    }
+}